@@ -0,0 +1,9 @@
+#!/usr/bin/env sh
+# Builds the application and the JMH module, then runs the benchmarks.
+# Results are written to benchmarks/target/jmh-result.json (JMH JSON format); extra arguments go to JMH,
+# e.g. ./run-benchmarks.sh TraceSerialization -p events=1000
+set -e
+cd "$(dirname "$0")"
+mvn -B -q -f ../pom.xml install -DskipTests
+mvn -B -q package
+"${JAVA_HOME:+$JAVA_HOME/bin/}java" -jar target/benchmarks.jar -rf json -rff target/jmh-result.json "$@"
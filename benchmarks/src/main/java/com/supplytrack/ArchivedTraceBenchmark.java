@@ -0,0 +1,92 @@
+package com.supplytrack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Trace lookup in the cold tier while the archive grows 100x: every product has the same 48 events
+// (4 per month over 12 monthly segments), only the number of products changes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchivedTraceBenchmark {
+
+    private static final int MONTHS = 12;
+    private static final int EVENTS_PER_PRODUCT_AND_MONTH = 4;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int totalEvents;
+
+    private Path directory;
+    private EventArchive archive;
+    private long[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("event-archive-bench");
+        EventArchive writerSide = new EventArchive(directory);
+        int products = totalEvents / (MONTHS * EVENTS_PER_PRODUCT_AND_MONTH);
+        YearMonth first = YearMonth.of(2024, 1);
+        long id = 1;
+        for (int m = 0; m < MONTHS; m++) {
+            YearMonth month = first.plusMonths(m);
+            try (EventArchive.SegmentWriter writer = writerSide.newSegment(month)) {
+                for (long product = 1; product <= products; product++) {
+                    for (int e = 0; e < EVENTS_PER_PRODUCT_AND_MONTH; e++) {
+                        writer.add(new Event(id++, product, e == 0 ? "HANDOVER" : "SCANNED", "Scanned at dock " + e,
+                                month.atDay(1 + e).atTime(8, (int) (product % 60)), "Warehouse " + (product % 40),
+                                42L + (product % 7), (long) m * EVENTS_PER_PRODUCT_AND_MONTH + e + 1));
+                    }
+                }
+                writer.publish();
+            }
+        }
+        writerSide.close();
+        archive = new EventArchive(directory); // Opened the way the application finds it after a restart
+
+        SplittableRandom random = new SplittableRandom(42);
+        lookups = new long[4096];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = 1 + random.nextInt(products);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        archive.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Event> findByProductId() {
+        long productId = lookups[next++ & (lookups.length - 1)];
+        return archive.findByProductId(productId);
+    }
+}
@@ -0,0 +1,83 @@
+package com.supplytrack;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Per-request HTTP Basic cost through BasicAuthenticationFilter: full BCrypt check vs. the cached principal.
+// The user lookup is an in-memory stub, so the difference is hashing plus filter overhead, not the database.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AuthenticationBenchmark {
+
+    private static final FilterChain NO_OP = (request, response) -> { };
+
+    private BasicAuthenticationFilter bcryptFilter;
+    private BasicAuthenticationFilter cachedFilter;
+    private String authorization;
+
+    @Setup
+    public void setUp() throws ServletException, IOException {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(); // Same strength (10) as SecurityConfig
+        User user = new User(42L, "farmer1", passwordEncoder.encode("pass123"), "ROLE_FARMER");
+        DaoAuthenticationProvider dao = new DaoAuthenticationProvider(passwordEncoder);
+        dao.setUserDetailsService(username -> user);
+
+        bcryptFilter = filter(dao);
+        cachedFilter = filter(new CachingAuthenticationProvider(dao, new AuthenticatedPrincipalCache(Duration.ofMinutes(5), 10000)));
+        authorization = "Basic " + Base64.getEncoder().encodeToString("farmer1:pass123".getBytes(StandardCharsets.UTF_8));
+        authenticate(cachedFilter); // Warm the principal cache
+    }
+
+    @Benchmark
+    public int bcrypt() throws ServletException, IOException {
+        return authenticate(bcryptFilter);
+    }
+
+    @Benchmark
+    public int cachedPrincipal() throws ServletException, IOException {
+        return authenticate(cachedFilter);
+    }
+
+    private int authenticate(BasicAuthenticationFilter filter) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("Authorization", authorization);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, NO_OP);
+        SecurityContextHolder.clearContext();
+        return response.getStatus();
+    }
+
+    private static BasicAuthenticationFilter filter(AuthenticationProvider provider) throws ServletException {
+        BasicAuthenticationFilter filter = new BasicAuthenticationFilter(new ProviderManager(provider));
+        filter.afterPropertiesSet();
+        return filter;
+    }
+}
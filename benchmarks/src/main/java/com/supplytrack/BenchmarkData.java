@@ -0,0 +1,78 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Shared fixtures: deterministic events/products, and the ObjectMapper configured the way Spring Boot configures it
+final class BenchmarkData {
+
+    static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 8, 0);
+
+    private BenchmarkData() {
+    }
+
+    static ObjectMapper objectMapper() {
+        // Same defaults as Boot's JacksonAutoConfiguration: JavaTimeModule, ISO dates, no FAIL_ON_UNKNOWN_PROPERTIES
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    static Product product(long events) {
+        return new Product(1L, "Organic Apples", "Green Valley Farm", "SHIPPED", "Warehouse 7",
+                START, 42L, events, events);
+    }
+
+    static List<Event> events(int count) {
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(new Event((long) i + 1, 1L, i % 5 == 0 ? "HANDOVER" : "SCANNED",
+                    "Scanned at dock " + (i % 12), START.plusMinutes(i), "Warehouse " + (i % 40),
+                    42L + (i % 7), (long) i + 1));
+        }
+        return events;
+    }
+
+    // Dictionary with the ids used by eventRow() and productRow(), preloaded so no database is needed
+    static NameDictionary dictionary() {
+        NameDictionary.Terms eventTypes = new NameDictionary.Terms("event_types", null, null);
+        eventTypes.remember(1, "HANDOVER");
+        eventTypes.remember(2, "SCANNED");
+        eventTypes.remember(3, "SHIPPED");
+        NameDictionary.Terms locations = new NameDictionary.Terms("locations", null, null);
+        for (int i = 0; i < 40; i++) {
+            locations.remember(i + 1, "Warehouse " + i);
+        }
+        return new NameDictionary(eventTypes, locations);
+    }
+
+    // Single-row ResultSet backed by a map, so the mappers are measured without any driver work
+    static ResultSet resultSet(Map<String, Object> row) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLong" -> ((Number) row.get((String) args[0])).longValue();
+                    case "getInt" -> ((Number) row.get((String) args[0])).intValue();
+                    case "getString" -> (String) row.get((String) args[0]);
+                    case "getTimestamp" -> (Timestamp) row.get((String) args[0]);
+                    case "wasNull" -> false;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static Map<String, Object> eventRow() {
+        return Map.of("id", 1001L, "product_id", 1L, "event_type_id", 2, "event_description", "Scanned at dock 3",
+                "timestamp", Timestamp.valueOf(START), "location_id", 7, "actor_user_id", 42L, "seq", 17L);
+    }
+
+    static Map<String, Object> productRow() {
+        return Map.of("id", 1L, "name", "Organic Apples", "origin", "Green Valley Farm", "current_status_id", 3,
+                "current_location_id", 7, "created_date", Timestamp.valueOf(START), "owner_user_id", 42L,
+                "version", 16L, "last_event_seq", 17L);
+    }
+}
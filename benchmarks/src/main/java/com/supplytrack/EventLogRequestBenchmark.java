@@ -0,0 +1,62 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Request-body parsing for POST /log-event (one EventLogRequest) and POST /events:batch (1000 items)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventLogRequestBenchmark {
+
+    private static final TypeReference<List<ProductController.BatchEventLogRequest>> BATCH = new TypeReference<>() {
+    };
+
+    private ObjectMapper objectMapper;
+    private byte[] single;
+    private byte[] batch;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkData.objectMapper();
+        single = "{\"eventType\":\"SHIPPED\",\"eventDescription\":\"Shipped to warehouse.\",\"location\":\"Warehouse A\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"productId\":").append(i + 1)
+                    .append(",\"eventType\":\"SCANNED\",\"location\":\"Dock ").append(i % 12)
+                    .append("\",\"idempotencyKey\":\"gw-7-").append(i).append("\"}");
+        }
+        batch = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ProductController.EventLogRequest deserializeEventLogRequest() throws IOException {
+        return objectMapper.readValue(single, ProductController.EventLogRequest.class);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<ProductController.BatchEventLogRequest> deserializeBatchOf1000() throws IOException {
+        return objectMapper.readValue(batch, BATCH);
+    }
+}
@@ -0,0 +1,52 @@
+package com.supplytrack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Cost of turning one row into an Event/Product with the hand-written mappers used by the JDBC repositories,
+// including the NameDictionary lookups of event type/status and location
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowMappingBenchmark {
+
+    private ResultSet eventRow;
+    private ResultSet productRow;
+    private RowMapper<Event> eventRowMapper;
+    private RowMapper<Product> productRowMapper;
+
+    @Setup
+    public void setUp() {
+        NameDictionary dictionary = BenchmarkData.dictionary();
+        eventRowMapper = EventJdbcRepository.eventRowMapper(dictionary);
+        productRowMapper = ProductJdbcRepository.productRowMapper(dictionary);
+        eventRow = BenchmarkData.resultSet(BenchmarkData.eventRow());
+        productRow = BenchmarkData.resultSet(BenchmarkData.productRow());
+    }
+
+    @Benchmark
+    public Event mapEvent() throws SQLException {
+        return eventRowMapper.mapRow(eventRow, 0);
+    }
+
+    @Benchmark
+    public Product mapProduct() throws SQLException {
+        return productRowMapper.mapRow(productRow, 0);
+    }
+}
@@ -0,0 +1,45 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of GET /trace responses, written to a discarding stream like a servlet response body
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceSerializationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int events;
+
+    private ObjectMapper objectMapper;
+    private ProductController.ProductTraceResponse trace;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkData.objectMapper();
+        trace = new ProductController.ProductTraceResponse(BenchmarkData.product(events), BenchmarkData.events(events));
+    }
+
+    @Benchmark
+    public void serializeTrace() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), trace);
+    }
+}
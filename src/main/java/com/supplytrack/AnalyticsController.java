@@ -0,0 +1,99 @@
+package com.supplytrack;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+// Dashboard queries, served from the rollup tables only (see AnalyticsService). Figures lag the events by up to
+// supplytrack.analytics.flush-interval. from/to are ISO dates, both inclusive.
+@RestController
+@RequestMapping("/api/analytics")
+@PreAuthorize("hasRole('ADMIN')") // Rollups cover every user's products
+public class AnalyticsController {
+
+    private static final int MAX_RANGE_DAYS = 366;
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsJdbcRepository analyticsJdbcRepository;
+
+    public AnalyticsController(AnalyticsService analyticsService, AnalyticsJdbcRepository analyticsJdbcRepository) {
+        this.analyticsService = analyticsService;
+        this.analyticsJdbcRepository = analyticsJdbcRepository;
+    }
+
+    // Events per actor and day, optionally for one actor or event type
+    @GetMapping("/events-per-day")
+    public ResponseEntity<?> getEventsPerDay(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long actor,
+            @RequestParam(required = false) String eventType
+    ) {
+        String invalid = validateRange(from, to);
+        if (invalid != null) {
+            return new ResponseEntity<>(Map.of("message", invalid), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(analyticsJdbcRepository.findDailyEvents(from, to, actor, eventType), HttpStatus.OK);
+    }
+
+    // Average time products stay at each location before moving on
+    @GetMapping("/dwell")
+    public ResponseEntity<?> getLocationDwell(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String location
+    ) {
+        String invalid = validateRange(from, to);
+        if (invalid != null) {
+            return new ResponseEntity<>(Map.of("message", invalid), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(analyticsJdbcRepository.findLocationDwell(from, to, location), HttpStatus.OK);
+    }
+
+    // Average time between consecutive events, by (fromEventType, toEventType)
+    @GetMapping("/transit")
+    public ResponseEntity<?> getTransitTimes(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String fromEventType,
+            @RequestParam(required = false) String toEventType
+    ) {
+        String invalid = validateRange(from, to);
+        if (invalid != null) {
+            return new ResponseEntity<>(Map.of("message", invalid), HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(analyticsJdbcRepository.findTransitTimes(from, to, fromEventType, toEventType), HttpStatus.OK);
+    }
+
+    // Recovery: recomputes the rollups from the events table; answers when done
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild() {
+        try {
+            return new ResponseEntity<>(analyticsService.rebuild(), HttpStatus.OK);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.CONFLICT);
+        } catch (Exception e) {
+            return new ResponseEntity<>(Map.of("message", "An unexpected error occurred: " + e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static String validateRange(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return "to must not be before from.";
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            return "A range may span at most " + MAX_RANGE_DAYS + " days.";
+        }
+        return null;
+    }
+}
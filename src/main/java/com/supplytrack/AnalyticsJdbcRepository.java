@@ -0,0 +1,212 @@
+package com.supplytrack;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Timed(value = "supplytrack.jdbc.repository", description = "Hand-written JDBC repository calls") // Tagged by class and method
+@Repository // Rollup tables of AnalyticsService (V8) and the event reads that feed them
+public class AnalyticsJdbcRepository {
+
+    // A rollup table: key columns (the first is always event_day) and the counters added up per key
+    public enum Rollup {
+        DAILY_EVENTS("rollup_daily_events", List.of("event_day", "actor_user_id", "event_type"), List.of("event_count")),
+        LOCATION_DWELL("rollup_location_dwell", List.of("event_day", "location"), List.of("stays", "dwell_millis")),
+        TRANSIT("rollup_transit", List.of("event_day", "from_event_type", "to_event_type"), List.of("transitions", "transit_millis"));
+
+        private final String table;
+        private final List<String> keyColumns;
+        private final List<String> valueColumns;
+
+        Rollup(String table, List<String> keyColumns, List<String> valueColumns) {
+            this.table = table;
+            this.keyColumns = keyColumns;
+            this.valueColumns = valueColumns;
+        }
+
+        public int valueCount() {
+            return valueColumns.size();
+        }
+    }
+
+    public record DailyEvents(LocalDate day, Long actorUserId, long events) {
+    }
+
+    // Averages are null when nothing was counted
+    public record LocationDwell(String location, long stays, Double averageDwellSeconds) {
+    }
+
+    public record TransitTime(String fromEventType, String toEventType, long transitions, Double averageTransitSeconds) {
+    }
+
+    // What a rebuild has to cover: product ids, the last event id, and the day of the oldest event in the table
+    public record EventBounds(long minProductId, long maxProductId, long maxEventId, LocalDate firstDay) {
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate; // Bounded fetch size for the rebuild scans
+    private final RowMapper<Event> eventRowMapper;
+
+    public AnalyticsJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource, NameDictionary dictionary,
+                                   @Value("${supplytrack.events.stream.fetch-size:500}") int streamFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(streamFetchSize);
+        this.eventRowMapper = EventJdbcRepository.eventRowMapper(dictionary);
+    }
+
+    // Adds the deltas to their rows: one batched UPDATE, then one batched INSERT for the keys that had no row.
+    // Keys are (day, other key columns...) in Rollup order; values line up with the value columns.
+    // Two instances inserting the same new key at once make one flush fail with a duplicate key; its caller
+    // keeps the deltas and the next flush finds the row.
+    public void add(Rollup rollup, Map<List<Object>, long[]> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        String update = "UPDATE " + rollup.table + " SET " +
+                rollup.valueColumns.stream().map(c -> c + " = " + c + " + ?").collect(Collectors.joining(", ")) +
+                " WHERE " + rollup.keyColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(" AND "));
+        String insert = "INSERT INTO " + rollup.table + " (" + String.join(", ", rollup.keyColumns) + ", " +
+                String.join(", ", rollup.valueColumns) + ") VALUES (" +
+                "?, ".repeat(rollup.keyColumns.size() + rollup.valueColumns.size() - 1) + "?)";
+
+        List<List<Object>> keys = new ArrayList<>(deltas.keySet());
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        for (List<Object> key : keys) {
+            List<Object> args = new ArrayList<>();
+            for (long value : deltas.get(key)) {
+                args.add(value);
+            }
+            args.addAll(sqlKey(key));
+            updates.add(args.toArray());
+        }
+        int[] updated = jdbcTemplate.getJdbcTemplate().batchUpdate(update, updates);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                List<Object> args = new ArrayList<>(sqlKey(keys.get(i)));
+                for (long value : deltas.get(keys.get(i))) {
+                    args.add(value);
+                }
+                inserts.add(args.toArray());
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(insert, inserts);
+        }
+    }
+
+    // Rebuild: removes every row from the given day on
+    public void deleteFrom(Rollup rollup, LocalDate firstDay) {
+        jdbcTemplate.update("DELETE FROM " + rollup.table + " WHERE event_day >= :firstDay",
+                new MapSqlParameterSource("firstDay", Date.valueOf(firstDay)));
+    }
+
+    public List<DailyEvents> findDailyEvents(LocalDate from, LocalDate to, Long actorUserId, String eventType) {
+        MapSqlParameterSource params = range(from, to);
+        StringBuilder sql = new StringBuilder(
+                "SELECT event_day, actor_user_id, SUM(event_count) AS events FROM rollup_daily_events WHERE event_day >= :from AND event_day <= :to");
+        if (actorUserId != null) {
+            sql.append(" AND actor_user_id = :actorUserId");
+            params.addValue("actorUserId", actorUserId);
+        }
+        if (eventType != null) {
+            sql.append(" AND event_type = :eventType");
+            params.addValue("eventType", eventType);
+        }
+        sql.append(" GROUP BY event_day, actor_user_id ORDER BY event_day, actor_user_id");
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> new DailyEvents(
+                rs.getDate("event_day").toLocalDate(), rs.getLong("actor_user_id"), rs.getLong("events")));
+    }
+
+    public List<LocationDwell> findLocationDwell(LocalDate from, LocalDate to, String location) {
+        MapSqlParameterSource params = range(from, to);
+        StringBuilder sql = new StringBuilder(
+                "SELECT location, SUM(stays) AS stays, SUM(dwell_millis) AS dwell_millis FROM rollup_location_dwell " +
+                "WHERE event_day >= :from AND event_day <= :to");
+        if (location != null) {
+            sql.append(" AND location = :location");
+            params.addValue("location", location);
+        }
+        sql.append(" GROUP BY location ORDER BY location");
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> new LocationDwell(rs.getString("location"),
+                rs.getLong("stays"), average(rs.getLong("dwell_millis"), rs.getLong("stays"))));
+    }
+
+    public List<TransitTime> findTransitTimes(LocalDate from, LocalDate to, String fromEventType, String toEventType) {
+        MapSqlParameterSource params = range(from, to);
+        StringBuilder sql = new StringBuilder(
+                "SELECT from_event_type, to_event_type, SUM(transitions) AS transitions, SUM(transit_millis) AS transit_millis " +
+                "FROM rollup_transit WHERE event_day >= :from AND event_day <= :to");
+        if (fromEventType != null) {
+            sql.append(" AND from_event_type = :fromEventType");
+            params.addValue("fromEventType", fromEventType);
+        }
+        if (toEventType != null) {
+            sql.append(" AND to_event_type = :toEventType");
+            params.addValue("toEventType", toEventType);
+        }
+        sql.append(" GROUP BY from_event_type, to_event_type ORDER BY from_event_type, to_event_type");
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> new TransitTime(rs.getString("from_event_type"),
+                rs.getString("to_event_type"), rs.getLong("transitions"),
+                average(rs.getLong("transit_millis"), rs.getLong("transitions"))));
+    }
+
+    // The events with the given (productId, seq), i.e. the predecessors of newly logged events.
+    // Events already moved to the archive are not found.
+    public List<Event> findBySeq(Collection<Object[]> productSeqs) {
+        if (productSeqs.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("SELECT " + EventJdbcRepository.EVENT_COLUMNS + " FROM events WHERE (product_id, seq) IN (:productSeqs)",
+                new MapSqlParameterSource("productSeqs", productSeqs), eventRowMapper);
+    }
+
+    // Empty when the events table is
+    public Optional<EventBounds> findEventBounds() {
+        return Optional.ofNullable(jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT MIN(product_id) AS min_product, MAX(product_id) AS max_product, MAX(id) AS max_id, MIN(timestamp) AS first_event FROM events",
+                (rs, rowNum) -> rs.getTimestamp("first_event") == null ? null : new EventBounds(rs.getLong("min_product"),
+                        rs.getLong("max_product"), rs.getLong("max_id"), rs.getTimestamp("first_event").toLocalDateTime().toLocalDate())));
+    }
+
+    // Events of products [fromProductId, toProductId) with id <= maxEventId, product by product in seq order.
+    // Must run inside a transaction so PostgreSQL reads through a cursor.
+    public void forEachEventOfProducts(long fromProductId, long toProductId, long maxEventId, Consumer<Event> consumer) {
+        streamingJdbcTemplate.query("SELECT " + EventJdbcRepository.EVENT_COLUMNS + " FROM events " +
+                        "WHERE product_id >= ? AND product_id < ? AND id <= ? ORDER BY product_id, seq",
+                rs -> { consumer.accept(eventRowMapper.mapRow(rs, 0)); },
+                fromProductId, toProductId, maxEventId);
+    }
+
+    private static List<Object> sqlKey(List<Object> key) {
+        List<Object> args = new ArrayList<>(key);
+        args.set(0, Date.valueOf((LocalDate) key.get(0)));
+        return args;
+    }
+
+    private static MapSqlParameterSource range(LocalDate from, LocalDate to) {
+        return new MapSqlParameterSource()
+                .addValue("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+    }
+
+    private static Double average(long totalMillis, long count) {
+        return count == 0 ? null : totalMillis / 1000.0 / count;
+    }
+}
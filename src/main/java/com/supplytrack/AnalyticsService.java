@@ -0,0 +1,298 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+// Dashboard rollups (V8) maintained incrementally instead of aggregating events on every request:
+//  - committed events bump striped in-memory counters (LongAdder per rollup key), so concurrent writers never
+//    contend on a shared row or lock;
+//  - events that continue a product's history (seq > 1) are queued, and the flusher pairs each with the
+//    product's previous event to add dwell and transit time;
+//  - every flush-interval the counters are drained and added to the rollup rows in one transaction.
+// rebuild() recomputes the rollups of every day still in the events table from scratch, in parallel.
+@Service
+public class AnalyticsService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsService.class);
+
+    private static final int IN_CHUNK = 500; // (product_id, seq) pairs per predecessor lookup
+
+    // One rollup row: key is (day, other key columns...) as in AnalyticsJdbcRepository.Rollup
+    private record RollupKey(AnalyticsJdbcRepository.Rollup rollup, List<Object> key) {
+    }
+
+    public record RebuildResult(long events, int rows, long durationMillis) {
+    }
+
+    private record ProductSeq(Long productId, Long seq) {
+    }
+
+    private final AnalyticsJdbcRepository analyticsJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int rebuildThreads;
+    private final Map<RollupKey, LongAdder[]> counters = new ConcurrentHashMap<>();
+    private final BlockingQueue<Event> pendingPairs;
+    private final Counter droppedPairs;
+    private final ReentrantLock flushLock = new ReentrantLock(); // Flushes and rebuilds never overlap
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    public AnalyticsService(AnalyticsJdbcRepository analyticsJdbcRepository, PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${supplytrack.analytics.max-pending:100000}") int maxPending,
+                            @Value("${supplytrack.analytics.rebuild-threads:4}") int rebuildThreads) {
+        this.analyticsJdbcRepository = analyticsJdbcRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rebuildThreads = rebuildThreads;
+        this.pendingPairs = new ArrayBlockingQueue<>(maxPending);
+        this.droppedPairs = Counter.builder("supplytrack.analytics.dropped")
+                .description("Events left out of dwell/transit rollups because the flusher fell behind")
+                .register(meterRegistry);
+    }
+
+    // After commit, so rolled-back events are never counted
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        for (Event event : loggedEvent.events()) {
+            increment(counters, dailyEventsKey(event), 1);
+            if (event.getSeq() != null && event.getSeq() > 1 && !pendingPairs.offer(event)) {
+                droppedPairs.increment(); // A rebuild recovers them
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${supplytrack.analytics.flush-interval:PT10S}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            pairPendingEvents();
+            Map<AnalyticsJdbcRepository.Rollup, Map<List<Object>, long[]>> deltas = drainCounters();
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> deltas.forEach(analyticsJdbcRepository::add));
+            } catch (RuntimeException e) {
+                // Nothing was written: keep the deltas for the next flush
+                log.warn("Could not flush analytics rollups, retrying on the next flush", e);
+                deltas.forEach((rollup, rows) -> rows.forEach((key, values) -> add(counters, new RollupKey(rollup, key), values)));
+            }
+            evictPastDays();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    // Replaces the rollups of every day from the oldest event in the table on (older days were computed while
+    // their events were hot and are kept). Products are split into rebuildThreads id ranges, each read through
+    // its own cursor in (product_id, seq) order. Events committed while the rebuild starts may be counted twice
+    // or not at all, so run it when writes are quiet. Throws IllegalStateException while another rebuild runs.
+    public RebuildResult rebuild() throws Exception {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new IllegalStateException("An analytics rebuild is already running.");
+        }
+        long started = System.nanoTime();
+        flushLock.lock();
+        try {
+            pendingPairs.clear();
+            counters.clear();
+            AnalyticsJdbcRepository.EventBounds bounds = analyticsJdbcRepository.findEventBounds().orElse(null);
+            if (bounds == null) {
+                return new RebuildResult(0, 0, 0);
+            }
+
+            long span = bounds.maxProductId() - bounds.minProductId() + 1;
+            long step = (span + rebuildThreads - 1) / rebuildThreads;
+            List<Future<Map<RollupKey, long[]>>> parts = new ArrayList<>();
+            long[] events = new long[rebuildThreads];
+            try (ExecutorService workers = Executors.newFixedThreadPool(rebuildThreads)) {
+                for (int worker = 0; worker < rebuildThreads; worker++) {
+                    long fromProductId = bounds.minProductId() + worker * step;
+                    long toProductId = Math.min(fromProductId + step, bounds.maxProductId() + 1);
+                    int slot = worker;
+                    parts.add(workers.submit(() -> {
+                        Map<RollupKey, long[]> totals = new HashMap<>();
+                        Event[] previous = new Event[1];
+                        readOnlyTransaction.executeWithoutResult(status -> analyticsJdbcRepository.forEachEventOfProducts(
+                                fromProductId, toProductId, bounds.maxEventId(), event -> {
+                                    events[slot]++;
+                                    sum(totals, dailyEventsKey(event), 1);
+                                    Event before = previous[0];
+                                    if (before != null && before.getProductId().equals(event.getProductId())
+                                            && before.getSeq() == event.getSeq() - 1) {
+                                        addPair(before, event, (key, values) -> sum(totals, key, values));
+                                    }
+                                    previous[0] = event;
+                                }));
+                        return totals;
+                    }));
+                }
+            }
+            Map<AnalyticsJdbcRepository.Rollup, Map<List<Object>, long[]>> rows = new EnumMap<>(AnalyticsJdbcRepository.Rollup.class);
+            for (Future<Map<RollupKey, long[]>> part : parts) {
+                part.get().forEach((key, values) -> rows.computeIfAbsent(key.rollup(), r -> new HashMap<>())
+                        .merge(key.key(), values, AnalyticsService::plus));
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                for (AnalyticsJdbcRepository.Rollup rollup : AnalyticsJdbcRepository.Rollup.values()) {
+                    analyticsJdbcRepository.deleteFrom(rollup, bounds.firstDay());
+                    analyticsJdbcRepository.add(rollup, rows.getOrDefault(rollup, Map.of()));
+                }
+            });
+            long total = 0;
+            for (long count : events) {
+                total += count;
+            }
+            int rowCount = rows.values().stream().mapToInt(Map::size).sum();
+            long millis = Duration.ofNanos(System.nanoTime() - started).toMillis();
+            log.info("Rebuilt analytics rollups from {}: {} events, {} rows in {} ms", bounds.firstDay(), total, rowCount, millis);
+            return new RebuildResult(total, rowCount, millis);
+        } finally {
+            flushLock.unlock();
+            rebuilding.set(false);
+        }
+    }
+
+    // Pairs the queued events with their predecessors: from the same drain when both are queued, else from the table
+    private void pairPendingEvents() {
+        List<Event> events = new ArrayList<>();
+        pendingPairs.drainTo(events);
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<ProductSeq, Event> known = new HashMap<>();
+        for (Event event : events) {
+            known.put(new ProductSeq(event.getProductId(), event.getSeq()), event);
+        }
+        List<Object[]> missing = new ArrayList<>();
+        for (Event event : events) {
+            if (!known.containsKey(new ProductSeq(event.getProductId(), event.getSeq() - 1))) {
+                missing.add(new Object[]{event.getProductId(), event.getSeq() - 1});
+            }
+        }
+        for (int start = 0; start < missing.size(); start += IN_CHUNK) {
+            for (Event event : analyticsJdbcRepository.findBySeq(missing.subList(start, Math.min(start + IN_CHUNK, missing.size())))) {
+                known.put(new ProductSeq(event.getProductId(), event.getSeq()), event);
+            }
+        }
+        for (Event event : events) {
+            Event previous = known.get(new ProductSeq(event.getProductId(), event.getSeq() - 1));
+            if (previous != null) { // Absent when the previous event is already archived
+                addPair(previous, event, (key, values) -> add(counters, key, values));
+            }
+        }
+    }
+
+    // Dwell at the previous event's location and transit between the two event types, on the later event's day
+    private static void addPair(Event previous, Event next, BiConsumer<RollupKey, long[]> sink) {
+        LocalDate day = next.getTimestamp().toLocalDate();
+        long gapMillis = Math.max(0, Duration.between(previous.getTimestamp(), next.getTimestamp()).toMillis());
+        boolean left = !previous.getLocation().equals(next.getLocation());
+        sink.accept(new RollupKey(AnalyticsJdbcRepository.Rollup.LOCATION_DWELL, List.of(day, previous.getLocation())),
+                new long[]{left ? 1 : 0, gapMillis});
+        sink.accept(new RollupKey(AnalyticsJdbcRepository.Rollup.TRANSIT, List.of(day, previous.getEventType(), next.getEventType())),
+                new long[]{1, gapMillis});
+    }
+
+    private static RollupKey dailyEventsKey(Event event) {
+        return new RollupKey(AnalyticsJdbcRepository.Rollup.DAILY_EVENTS,
+                List.of(event.getTimestamp().toLocalDate(), event.getActorUserId(), event.getEventType()));
+    }
+
+    // sumThenReset takes each cell atomically, so an increment racing with the drain lands in this flush or the next
+    private Map<AnalyticsJdbcRepository.Rollup, Map<List<Object>, long[]>> drainCounters() {
+        Map<AnalyticsJdbcRepository.Rollup, Map<List<Object>, long[]>> deltas = new EnumMap<>(AnalyticsJdbcRepository.Rollup.class);
+        counters.forEach((key, adders) -> {
+            long[] values = new long[adders.length];
+            boolean any = false;
+            for (int i = 0; i < adders.length; i++) {
+                values[i] = adders[i].sumThenReset();
+                any |= values[i] != 0;
+            }
+            if (any) {
+                deltas.computeIfAbsent(key.rollup(), r -> new HashMap<>()).put(key.key(), values);
+            }
+        });
+        return deltas;
+    }
+
+    // Events are logged with the current time, so keys of past days stop receiving increments; drop the drained
+    // ones so the map holds about two days of keys. A late increment to a dropped key is lost.
+    private void evictPastDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        counters.entrySet().removeIf(entry -> ((LocalDate) entry.getKey().key().get(0)).isBefore(yesterday)
+                && Arrays.stream(entry.getValue()).allMatch(adder -> adder.sum() == 0));
+    }
+
+    private static void increment(Map<RollupKey, LongAdder[]> counters, RollupKey key, long value) {
+        adders(counters, key)[0].add(value);
+    }
+
+    private static void add(Map<RollupKey, LongAdder[]> counters, RollupKey key, long[] values) {
+        LongAdder[] adders = adders(counters, key);
+        for (int i = 0; i < values.length; i++) {
+            adders[i].add(values[i]);
+        }
+    }
+
+    private static LongAdder[] adders(Map<RollupKey, LongAdder[]> counters, RollupKey key) {
+        return counters.computeIfAbsent(key, k -> {
+            LongAdder[] adders = new LongAdder[k.rollup().valueCount()];
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        });
+    }
+
+    private static void sum(Map<RollupKey, long[]> totals, RollupKey key, long value) {
+        sum(totals, key, new long[]{value});
+    }
+
+    private static void sum(Map<RollupKey, long[]> totals, RollupKey key, long[] values) {
+        totals.merge(key, values.clone(), AnalyticsService::plus);
+    }
+
+    private static long[] plus(long[] a, long[] b) {
+        long[] result = a.clone();
+        for (int i = 0; i < b.length; i++) {
+            result[i] += b[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package com.supplytrack;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+@Component // Bounded, TTL-evicting cache of principals whose HTTP Basic credentials were already verified by BCrypt
+public class AuthenticatedPrincipalCache {
+
+    private final BoundedTtlMap<String, Entry> entries;
+    private final byte[] salt = new byte[32]; // Per-process salt, so cached digests are useless outside this JVM
+
+    public AuthenticatedPrincipalCache(
+            @Value("${supplytrack.security.principal-cache.ttl:PT5M}") Duration ttl,
+            @Value("${supplytrack.security.principal-cache.max-size:10000}") int maxSize
+    ) {
+        this.entries = new BoundedTtlMap<>(ttl.toNanos(), maxSize);
+        new SecureRandom().nextBytes(salt);
+    }
+
+    // Returns the cached principal only if the presented password matches the one verified earlier
+    public User get(String username, String presentedPassword) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+        // Constant-time comparison
+        return MessageDigest.isEqual(entry.credentialDigest, digest(presentedPassword)) ? entry.user : null;
+    }
+
+    public void put(String username, String verifiedPassword, User user) {
+        entries.put(username, new Entry(user, digest(verifiedPassword)));
+    }
+
+    // Called whenever a user's password or role may have changed
+    public void invalidate(String username) {
+        entries.remove(username);
+    }
+
+    // Entries are keyed by the username that logged in, which a rename leaves behind; this finds them by id
+    public void invalidateUser(Long userId) {
+        entries.removeIf(entry -> userId.equals(entry.user.getId()));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private byte[] digest(String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(salt);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(User user, byte[] credentialDigest) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Runs just before HTTP Basic authentication (see SecurityConfig). A client address with too many recent failed logins
+// for a username, or far too many for all usernames together, gets 429 with Retry-After without its credentials being
+// looked up or hashed; other addresses are unaffected. Every 401 answered to a request that carried credentials
+// counts as a failed login. Not a bean, like RateLimitFilter.
+class AuthenticationThrottleFilter extends OncePerRequestFilter {
+
+    private final RequestRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    AuthenticationThrottleFilter(RequestRateLimiter rateLimiter, ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        return authorization == null || !authorization.regionMatches(true, 0, "Basic ", 0, 6);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String remoteAddress = request.getRemoteAddr();
+        String username = basicUsername(request.getHeader(HttpHeaders.AUTHORIZATION));
+        long retryAfterNanos = rateLimiter.checkFailedAuthentications(remoteAddress, username);
+        if (retryAfterNanos > 0) {
+            RateLimitFilter.reject(objectMapper, response, HttpStatus.TOO_MANY_REQUESTS,
+                    RateLimitFilter.toRetryAfterSeconds(retryAfterNanos), "Too many failed logins, retry later.");
+            return;
+        }
+        chain.doFilter(request, response);
+        if (response.getStatus() == HttpStatus.UNAUTHORIZED.value()) {
+            rateLimiter.recordFailedAuthentication(remoteAddress, username);
+        }
+    }
+
+    // Username of an HTTP Basic header, or null when it can't be decoded (BasicAuthenticationFilter then rejects it)
+    private static String basicUsername(String authorization) {
+        try {
+            String token = new String(Base64.getDecoder().decode(authorization.substring(6).trim()), StandardCharsets.UTF_8);
+            int colon = token.indexOf(':');
+            return colon < 0 ? null : token.substring(0, colon);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.supplytrack;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// Small thread-safe map with a size bound and a fixed time-to-live per entry.
+// Insertion-ordered, so the eldest entry is always the first one to expire.
+class BoundedTtlMap<K, V> {
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+
+    BoundedTtlMap(long ttlNanos, int maxSize) {
+        this.ttlNanos = ttlNanos;
+        this.maxSize = maxSize;
+    }
+
+    synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAtNanos > 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void put(K key, V value) {
+        entries.remove(key); // Re-insert at the tail so insertion order keeps matching expiry order
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<V> eldest = it.next().getValue();
+            if (entries.size() > maxSize || now - eldest.expiresAtNanos > 0) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    // Full scan; for the rare removal by something other than the key
+    synchronized void removeIf(Predicate<V> predicate) {
+        entries.values().removeIf(entry -> predicate.test(entry.value));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+}
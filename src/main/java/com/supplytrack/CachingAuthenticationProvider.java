@@ -0,0 +1,50 @@
+package com.supplytrack;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+// Wraps the BCrypt-backed DaoAuthenticationProvider so repeat HTTP Basic calls skip the DB lookup and hashing
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final DaoAuthenticationProvider delegate;
+    private final AuthenticatedPrincipalCache principalCache;
+
+    public CachingAuthenticationProvider(DaoAuthenticationProvider delegate, AuthenticatedPrincipalCache principalCache) {
+        this.delegate = delegate;
+        this.principalCache = principalCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+        if (username == null || credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+        String presentedPassword = credentials.toString();
+
+        // 1. Cache hit: the same username/password pair was verified recently
+        User cachedUser = principalCache.get(username, presentedPassword);
+        if (cachedUser != null) {
+            UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                    cachedUser, presentedPassword, cachedUser.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+
+        // 2. Cache miss: full check (user lookup + BCrypt), then remember the verified principal
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof User user) {
+            principalCache.put(username, presentedPassword, user);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
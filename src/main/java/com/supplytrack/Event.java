@@ -1,24 +1,21 @@
 package com.supplytrack;
 
-import org.springframework.data.annotation.Id;
-import org.springframework.data.relational.core.mapping.Table;
-
 import java.time.LocalDateTime;
 
-@Table("events") // Maps this entity to a database table named 'events'
+// A row of the 'events' table (see EventJdbcRepository)
 public class Event {
 
-    @Id // Primary key for the event
-    private Long id;
+    private Long id; // Primary key for the event
     private Long productId; // Foreign key to the Product this event relates to
     private String eventType; // Type of event (e.g., "HARVESTED", "SHIPPED", "RECEIVED", "QUALITY_CHECK")
     private String eventDescription; // Detailed description of the event
     private LocalDateTime timestamp; // When the event occurred
     private String location; // Where the event occurred
     private Long actorUserId; // ID of the user who performed this event
+    private Long seq; // Position in the product's history (1, 2, 3, ... without gaps)
 
-    // Constructor for Spring Data JDBC to use when loading from database
-    public Event(Long id, Long productId, String eventType, String eventDescription, LocalDateTime timestamp, String location, Long actorUserId) {
+    // Constructor used by EventJdbcRepository when loading from database
+    public Event(Long id, Long productId, String eventType, String eventDescription, LocalDateTime timestamp, String location, Long actorUserId, Long seq) {
         this.id = id;
         this.productId = productId;
         this.eventType = eventType;
@@ -26,11 +23,12 @@ public class Event {
         this.timestamp = timestamp;
         this.location = location;
         this.actorUserId = actorUserId;
+        this.seq = seq;
     }
 
     // Static factory method for creating NEW Event objects (ID will be generated by DB)
-    public static Event createNewEvent(Long productId, String eventType, String eventDescription, String location, Long actorUserId) {
-        return new Event(null, productId, eventType, eventDescription, LocalDateTime.now(), location, actorUserId);
+    public static Event createNewEvent(Long productId, String eventType, String eventDescription, String location, Long actorUserId, Long seq) {
+        return new Event(null, productId, eventType, eventDescription, LocalDateTime.now(), location, actorUserId, seq);
     }
 
     // --- Getters and Setters ---
@@ -89,4 +87,12 @@ public class Event {
     public void setActorUserId(Long actorUserId) {
         this.actorUserId = actorUserId;
     }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
 }
@@ -0,0 +1,481 @@
+package com.supplytrack;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Cold tier of the event history: one immutable segment file per archived month (events-YYYYMM.seg) in a directory
+// that every instance shares.
+// Rows are grouped per product and stored column by column (ids, timestamps and sequence numbers delta-encoded,
+// strings dictionary-encoded), and each product's block is deflate-compressed. A footer index maps product id to
+// block, so looking up a product costs one binary search and one positional read per segment, however many
+// events the archive holds. Segments are written by EventPartitionMaintenance on the instance holding the archiver
+// lease; the others pick them up with refresh().
+@Component
+public class EventArchive {
+
+    private static final int MAGIC = 0x53545631; // "STV1"
+    private static final DateTimeFormatter FILE_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final int INDEX_ENTRY_BYTES = 8 + 8 + 4; // product id, block offset, block length
+
+    private final Path directory;
+    private volatile List<Segment> segments; // Oldest month first; replaced (never mutated) when a segment is published
+
+    public EventArchive(@Value("${supplytrack.events.archive.dir:data/archive}") Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.segments = List.of();
+        refresh();
+    }
+
+    // Loads the segments published since the last call, by this instance or another one
+    public synchronized void refresh() throws IOException {
+        List<Segment> updated = new ArrayList<>(segments);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "events-*.seg")) {
+            for (Path file : files) {
+                if (updated.stream().noneMatch(segment -> segmentFile(segment.month()).equals(file))) {
+                    updated.add(Segment.open(file));
+                }
+            }
+        }
+        updated.sort(Comparator.comparing(Segment::month));
+        segments = List.copyOf(updated);
+    }
+
+    // Segments whose writer stopped before publishing; they are rewritten. Only the lease holder may call this:
+    // another instance's .tmp file may still be in progress.
+    void deleteAbandonedSegments() throws IOException {
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*.tmp")) {
+            for (Path file : leftovers) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    public boolean contains(YearMonth month) {
+        return segments.stream().anyMatch(segment -> segment.month().equals(month));
+    }
+
+    // Everything before the start of the month after this one lives in the archive, not in the events table
+    public Optional<YearMonth> lastArchivedMonth() {
+        List<Segment> current = segments;
+        return current.isEmpty() ? Optional.empty() : Optional.of(current.get(current.size() - 1).month());
+    }
+
+    public long archivedEventCount() {
+        return segments.stream().mapToLong(Segment::rowCount).sum();
+    }
+
+    // Every archived event of the product, in (timestamp, id) order
+    public List<Event> findByProductId(Long productId) {
+        List<Event> events = new ArrayList<>();
+        try {
+            for (Segment segment : segments) {
+                segment.read(productId, events);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the event archive in " + directory, e);
+        }
+        return events;
+    }
+
+    // Archived events of the product in the months from..through (from null: since the oldest segment), in
+    // (timestamp, id) order. Segments before from are not read, one block is decoded at a time, and reading
+    // stops as soon as the consumer returns false.
+    public void forEachByProductId(Long productId, YearMonth from, YearMonth through, Predicate<Event> consumer) {
+        List<Event> block = new ArrayList<>();
+        try {
+            for (Segment segment : segments) {
+                if ((from != null && segment.month().isBefore(from)) || segment.month().isAfter(through)) {
+                    continue;
+                }
+                block.clear();
+                segment.read(productId, block);
+                for (Event event : block) {
+                    if (!consumer.test(event)) {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the event archive in " + directory, e);
+        }
+    }
+
+    // Archived events of the months first..last, segment by segment and product by product. Only one product
+    // block is decoded at a time, so bulk exports use the same memory whatever the size of the archive.
+    public void forEachInMonths(YearMonth first, YearMonth last, LongPredicate productFilter, Consumer<Event> consumer) {
+        List<Event> block = new ArrayList<>();
+        try {
+            for (Segment segment : segments) {
+                if (segment.month().isBefore(first) || segment.month().isAfter(last)) {
+                    continue;
+                }
+                for (int i = 0; i < segment.productIds().length; i++) {
+                    if (productFilter.test(segment.productIds()[i])) {
+                        block.clear();
+                        segment.readBlock(i, block);
+                        block.forEach(consumer);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the event archive in " + directory, e);
+        }
+    }
+
+    // Starts the segment of one month; nothing is visible to readers before publish()
+    SegmentWriter newSegment(YearMonth month) throws IOException {
+        if (contains(month)) {
+            throw new IllegalStateException("Events of " + month + " are already archived.");
+        }
+        return new SegmentWriter(month);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel().close();
+        }
+    }
+
+    private Path segmentFile(YearMonth month) {
+        return directory.resolve("events-" + FILE_MONTH.format(month) + ".seg");
+    }
+
+    // Rows must arrive grouped by product with ascending product ids, each product's rows in (timestamp, id) order
+    final class SegmentWriter implements Closeable {
+
+        private final YearMonth month;
+        private final Path tmpFile;
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater();
+        private final List<Event> block = new ArrayList<>();
+        private long[] productIds = new long[1024];
+        private long[] offsets = new long[1024];
+        private int[] lengths = new int[1024];
+        private int blocks;
+        private long rowCount;
+        private long position;
+        private boolean published;
+
+        private SegmentWriter(YearMonth month) throws IOException {
+            this.month = month;
+            // Unique name: a writer whose lease ran out may still be busy with the same month
+            this.tmpFile = Files.createTempFile(directory, "events-" + FILE_MONTH.format(month) + "-", ".seg.tmp");
+            this.channel = FileChannel.open(tmpFile, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putInt(month.getYear()).putInt(month.getMonthValue());
+            write(header.flip());
+        }
+
+        void add(Event event) throws IOException {
+            if (!block.isEmpty() && !block.get(0).getProductId().equals(event.getProductId())) {
+                if (event.getProductId() < block.get(0).getProductId()) {
+                    throw new IllegalStateException("Archive rows must be ordered by product id.");
+                }
+                flushBlock();
+            }
+            block.add(event);
+        }
+
+        // Writes the index, forces the file to disk and makes the segment visible to findByProductId
+        void publish() throws IOException {
+            flushBlock();
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate(4 + blocks * INDEX_ENTRY_BYTES + 8 + 8 + 4);
+            index.putInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                index.putLong(productIds[i]).putLong(offsets[i]).putInt(lengths[i]);
+            }
+            index.putLong(rowCount).putLong(indexOffset).putInt(MAGIC);
+            write(index.flip());
+            channel.force(true);
+            channel.close();
+            Path target = segmentFile(month);
+            Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+            published = true;
+            refresh();
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!published) {
+                channel.close();
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.isEmpty()) {
+                return;
+            }
+            byte[] raw = encodeBlock(block);
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 16);
+            new DataOutputStream(compressed).writeInt(raw.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            if (blocks == productIds.length) {
+                productIds = Arrays.copyOf(productIds, blocks * 2);
+                offsets = Arrays.copyOf(offsets, blocks * 2);
+                lengths = Arrays.copyOf(lengths, blocks * 2);
+            }
+            productIds[blocks] = block.get(0).getProductId();
+            offsets[blocks] = position;
+            lengths[blocks] = compressed.size();
+            blocks++;
+            rowCount += block.size();
+            write(ByteBuffer.wrap(compressed.toByteArray()));
+            block.clear();
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+    }
+
+    private record Segment(YearMonth month, FileChannel channel, long[] productIds, long[] offsets, int[] lengths,
+                           long rowCount) {
+
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = readFully(channel, 0, 12);
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(file + " is not an event archive segment.");
+                }
+                YearMonth month = YearMonth.of(header.getInt(), header.getInt());
+                ByteBuffer footer = readFully(channel, channel.size() - 20, 20);
+                long rowCount = footer.getLong();
+                long indexOffset = footer.getLong();
+                if (footer.getInt() != MAGIC) {
+                    throw new IOException(file + " is truncated.");
+                }
+                ByteBuffer index = readFully(channel, indexOffset, (int) (channel.size() - 20 - indexOffset));
+                int blocks = index.getInt();
+                long[] productIds = new long[blocks];
+                long[] offsets = new long[blocks];
+                int[] lengths = new int[blocks];
+                for (int i = 0; i < blocks; i++) {
+                    productIds[i] = index.getLong();
+                    offsets[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                }
+                return new Segment(month, channel, productIds, offsets, lengths, rowCount);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        void read(long productId, List<Event> into) throws IOException {
+            int i = Arrays.binarySearch(productIds, productId);
+            if (i >= 0) {
+                readBlock(i, into);
+            }
+        }
+
+        void readBlock(int i, List<Event> into) throws IOException {
+            long productId = productIds[i];
+            ByteBuffer block = readFully(channel, offsets[i], lengths[i]);
+            byte[] raw = new byte[block.getInt()];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(block);
+                int n = 0;
+                while (n < raw.length) {
+                    int inflated = inflater.inflate(raw, n, raw.length - n);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new DataFormatException("block is shorter than its header says");
+                    }
+                    n += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block for product " + productId + " in the archive of " + month, e);
+            } finally {
+                inflater.end();
+            }
+            decodeBlock(productId, raw, into);
+        }
+
+        private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of archive segment.");
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
+    // Column layout of a block: row count, then ids, timestamps (epoch micros), seqs, actors, event types,
+    // descriptions, locations. Numbers are zigzag deltas from the previous row as varints.
+    static byte[] encodeBlock(List<Event> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 16 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarLong(out, rows.size());
+        long previous = 0;
+        for (Event row : rows) {
+            previous = writeDelta(out, row.getId(), previous);
+        }
+        previous = 0;
+        for (Event row : rows) {
+            previous = writeDelta(out, toEpochMicros(row.getTimestamp()), previous);
+        }
+        previous = 0;
+        for (Event row : rows) {
+            previous = writeDelta(out, row.getSeq(), previous);
+        }
+        previous = 0;
+        for (Event row : rows) {
+            previous = writeDelta(out, row.getActorUserId(), previous);
+        }
+        List<String> column = new ArrayList<>(rows.size());
+        rows.forEach(row -> column.add(row.getEventType()));
+        writeStrings(out, column);
+        column.clear();
+        rows.forEach(row -> column.add(row.getEventDescription()));
+        writeStrings(out, column);
+        column.clear();
+        rows.forEach(row -> column.add(row.getLocation()));
+        writeStrings(out, column);
+        return bytes.toByteArray();
+    }
+
+    static void decodeBlock(long productId, byte[] raw, List<Event> into) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        int n = (int) readVarLong(in);
+        long[] ids = readDeltas(in, n);
+        long[] micros = readDeltas(in, n);
+        long[] seqs = readDeltas(in, n);
+        long[] actors = readDeltas(in, n);
+        String[] eventTypes = readStrings(in, n);
+        String[] descriptions = readStrings(in, n);
+        String[] locations = readStrings(in, n);
+        for (int i = 0; i < n; i++) {
+            into.add(new Event(ids[i], productId, eventTypes[i], descriptions[i], fromEpochMicros(micros[i]),
+                    locations[i], actors[i], seqs[i]));
+        }
+    }
+
+    // Distinct values once (index 0 is null), then one varint index per row
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        int[] indexes = new int[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value != null) {
+                indexes[i] = dictionary.computeIfAbsent(value, key -> {
+                    distinct.add(key);
+                    return distinct.size();
+                });
+            }
+        }
+        writeVarLong(out, distinct.size());
+        for (String value : distinct) {
+            out.writeUTF(value);
+        }
+        for (int index : indexes) {
+            writeVarLong(out, index);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in, int n) throws IOException {
+        String[] dictionary = new String[(int) readVarLong(in) + 1];
+        for (int i = 1; i < dictionary.length; i++) {
+            dictionary[i] = in.readUTF();
+        }
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = dictionary[(int) readVarLong(in)];
+        }
+        return values;
+    }
+
+    private static long writeDelta(DataOutputStream out, long value, long previous) throws IOException {
+        long delta = value - previous;
+        writeVarLong(out, (delta << 1) ^ (delta >> 63));
+        return value;
+    }
+
+    private static long[] readDeltas(DataInputStream in, int n) throws IOException {
+        long[] values = new long[n];
+        long previous = 0;
+        for (int i = 0; i < n; i++) {
+            long zigzag = readVarLong(in);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long toEpochMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,298 @@
+package com.supplytrack;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@Timed(value = "supplytrack.jdbc.repository", description = "Hand-written JDBC repository calls") // Tagged by class and method
+@Repository // All event reads and writes; event types and locations are stored as NameDictionary ids
+public class EventJdbcRepository {
+
+    private static final String INSERT_EVENT =
+            "INSERT INTO events (product_id, event_type_id, event_description, timestamp, location_id, actor_user_id, seq) " +
+            "VALUES (:productId, :eventTypeId, :eventDescription, :timestamp, :locationId, :actorUserId, :seq)";
+
+    // Callers hold the row lock (see ProductJdbcRepository.lockAllById), so the version is just bumped
+    private static final String UPDATE_PRODUCT_STATE =
+            "UPDATE products SET current_status_id = :currentStatusId, current_location_id = :currentLocationId, " +
+            "owner_user_id = :ownerUserId, last_event_seq = :lastEventSeq, version = version + 1 WHERE id = :id";
+
+    // Compare-and-set on the version: changes nothing if another writer got there first
+    private static final String UPDATE_PRODUCT_STATE_IF_VERSION =
+            "UPDATE products SET current_status_id = :currentStatusId, current_location_id = :currentLocationId, " +
+            "owner_user_id = :ownerUserId, last_event_seq = last_event_seq + 1, version = version + 1 " +
+            "WHERE id = :id AND version = :expectedVersion";
+
+    // Product version/sequence and actor existence in a single round trip
+    private static final String SELECT_EVENT_PRECONDITIONS =
+            "SELECT p.version, p.last_event_seq, p.owner_user_id, (SELECT COUNT(*) FROM users u WHERE u.id = :actorUserId) AS actor_count " +
+            "FROM products p WHERE p.id = :productId";
+
+    private static final String INSERT_IDEMPOTENCY_KEY =
+            "INSERT INTO event_idempotency_keys (product_id, actor_user_id, idempotency_key, event_id, created_at) " +
+            "VALUES (:productId, :actorUserId, :idempotencyKey, :eventId, :createdAt)";
+
+    // Event types and locations are NameDictionary ids (V9); eventRowMapper turns them back into names
+    static final String EVENT_COLUMNS =
+            "id, product_id, event_type_id, event_description, timestamp, location_id, actor_user_id, seq";
+
+    // The trace and actor-resume statements are package-private so SchemaIndexTests can check their plans.
+    // product_id leads the ORDER BY although it is fixed: H2 only credits an index whose leading columns match the
+    // sort, and without it picks ux_events_product_seq and sorts. PostgreSQL drops the constant key either way.
+    static final String SELECT_TRACE_FIRST_PAGE =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE product_id = :productId " +
+            "ORDER BY product_id, timestamp, id LIMIT :limit";
+
+    static final String SELECT_TRACE_PAGE_AFTER =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE product_id = :productId " +
+            "AND (timestamp, id) > (:timestamp, :id) ORDER BY product_id, timestamp, id LIMIT :limit";
+
+    static final String SELECT_TRACE =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE product_id = ? ORDER BY product_id, timestamp, id";
+
+    private static final String SELECT_TRACES =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE product_id IN (:productIds) ORDER BY product_id, timestamp, id";
+
+    private static final String SELECT_TRACE_AFTER_SEQ =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE product_id = :productId AND seq > :seq ORDER BY seq LIMIT :limit";
+
+    static final String SELECT_ACTOR_EVENTS_AFTER_ID =
+            "SELECT " + EVENT_COLUMNS + " FROM events WHERE actor_user_id = :actorUserId AND id > :id ORDER BY id LIMIT :limit";
+
+    // Names are shared instances from the dictionary, so mapping a row allocates no strings for them
+    static RowMapper<Event> eventRowMapper(NameDictionary dictionary) {
+        NameDictionary.Terms eventTypes = dictionary.eventTypes();
+        NameDictionary.Terms locations = dictionary.locations();
+        return (rs, rowNum) -> new Event(
+                rs.getLong("id"),
+                rs.getLong("product_id"),
+                eventTypes.name(rs.getInt("event_type_id")),
+                rs.getString("event_description"),
+                rs.getTimestamp("timestamp").toLocalDateTime(),
+                locations.name(rs.getInt("location_id")),
+                rs.getLong("actor_user_id"),
+                rs.getLong("seq")
+        );
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate; // Bounded fetch size so long histories are read through a cursor
+    private final NameDictionary dictionary;
+    private final RowMapper<Event> eventRowMapper;
+
+    public EventJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource, NameDictionary dictionary,
+                               @Value("${supplytrack.events.stream.fetch-size:500}") int streamFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(streamFetchSize);
+        this.dictionary = dictionary;
+        this.eventRowMapper = eventRowMapper(dictionary);
+    }
+
+    // A product's history in timestamp order
+    public List<Event> findByProductId(Long productId) {
+        return jdbcTemplate.getJdbcTemplate().query(SELECT_TRACE, eventRowMapper, productId);
+    }
+
+    // Histories of several products in one query, grouped by product in timestamp order. Products without
+    // events are absent. The order matches idx_events_product_timestamp, so each product is one index range.
+    public Map<Long, List<Event>> findByProductIds(Collection<Long> productIds) {
+        Map<Long, List<Event>> histories = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return histories;
+        }
+        jdbcTemplate.query(SELECT_TRACES, new MapSqlParameterSource("productIds", productIds), rs -> {
+            Event event = eventRowMapper.mapRow(rs, 0);
+            histories.computeIfAbsent(event.getProductId(), id -> new ArrayList<>()).add(event);
+        });
+        return histories;
+    }
+
+    // Last-Event-ID resume of a product's live stream (unique (product_id, seq) index; one per partition on PostgreSQL)
+    public List<Event> findByProductIdAfterSeq(Long productId, long seq, int limit) {
+        return jdbcTemplate.query(SELECT_TRACE_AFTER_SEQ, new MapSqlParameterSource()
+                .addValue("productId", productId)
+                .addValue("seq", seq)
+                .addValue("limit", limit), eventRowMapper);
+    }
+
+    // Last-Event-ID resume of an owner's live stream (idx_events_actor_id); the actor of an event is the owner after it
+    public List<Event> findByActorUserIdAfterId(Long actorUserId, long id, int limit) {
+        return jdbcTemplate.query(SELECT_ACTOR_EVENTS_AFTER_ID, new MapSqlParameterSource()
+                .addValue("actorUserId", actorUserId)
+                .addValue("id", id)
+                .addValue("limit", limit), eventRowMapper);
+    }
+
+    public long count() {
+        return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM events", Long.class);
+    }
+
+    // Keyset page of a product's history: rows strictly after the cursor, in (timestamp, id) order
+    public List<Event> findPageForProduct(Long productId, KeysetCursor after, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("productId", productId)
+                .addValue("limit", limit);
+        if (after == null) {
+            return jdbcTemplate.query(SELECT_TRACE_FIRST_PAGE, params, eventRowMapper);
+        }
+        params.addValue("timestamp", Timestamp.valueOf(after.timestamp()))
+                .addValue("id", after.id());
+        return jdbcTemplate.query(SELECT_TRACE_PAGE_AFTER, params, eventRowMapper);
+    }
+
+    // Hands every event of a product to the consumer without materializing the history.
+    // Must run inside a transaction: PostgreSQL only uses a server-side cursor when autocommit is off.
+    public void streamForProduct(Long productId, Consumer<Event> consumer) {
+        streamingJdbcTemplate.query(SELECT_TRACE,
+                rs -> { consumer.accept(eventRowMapper.mapRow(rs, 0)); },
+                productId);
+    }
+
+    // Idempotency keys are scoped to a product and the event's actor (V16), so users picking the same key don't collide
+    public record IdempotencyKey(Long productId, Long actorUserId, String key) {
+    }
+
+    // What logEvent needs to know before writing: the product's current version and whether the actor exists
+    public record EventPreconditions(long productVersion, long lastEventSeq, long ownerUserId, boolean actorExists) {
+    }
+
+    // With lock, the product row stays locked until commit, so a version read that way cannot go stale
+    public Optional<EventPreconditions> findEventPreconditions(Long productId, Long actorUserId, boolean lock) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("productId", productId)
+                .addValue("actorUserId", actorUserId);
+        List<EventPreconditions> rows = jdbcTemplate.query(SELECT_EVENT_PRECONDITIONS + (lock ? " FOR UPDATE" : ""), params,
+                (rs, rowNum) -> new EventPreconditions(rs.getLong("version"), rs.getLong("last_event_seq"),
+                        rs.getLong("owner_user_id"), rs.getLong("actor_count") > 0));
+        return rows.stream().findFirst();
+    }
+
+    // Returns false when the product's version no longer matches expectedVersion
+    public boolean updateProductStateIfVersion(Long productId, long expectedVersion, String currentStatus,
+                                               String currentLocation, Long ownerUserId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("currentStatusId", dictionary.eventTypes().idOf(currentStatus))
+                .addValue("currentLocationId", dictionary.locations().idOf(currentLocation))
+                .addValue("ownerUserId", ownerUserId)
+                .addValue("id", productId)
+                .addValue("expectedVersion", expectedVersion);
+        return jdbcTemplate.update(UPDATE_PRODUCT_STATE_IF_VERSION, params) == 1;
+    }
+
+    public void insert(Event event) {
+        insertAll(List.of(event));
+    }
+
+    // Event previously produced by this Idempotency-Key for this product and actor, if any
+    public Optional<Event> findByIdempotencyKey(IdempotencyKey key) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("productId", key.productId())
+                .addValue("actorUserId", key.actorUserId())
+                .addValue("idempotencyKey", key.key());
+        List<Event> rows = jdbcTemplate.query(
+                "SELECT e.id, e.product_id, e.event_type_id, e.event_description, e.timestamp, e.location_id, e.actor_user_id, e.seq " +
+                "FROM event_idempotency_keys k JOIN events e ON e.id = k.event_id " +
+                "WHERE k.product_id = :productId AND k.actor_user_id = :actorUserId AND k.idempotency_key = :idempotencyKey",
+                params, eventRowMapper);
+        return rows.stream().findFirst();
+    }
+
+    // Set-based variant for batches: every already-applied key among the given ones, keyed by product, actor and key
+    public Map<IdempotencyKey, Event> findByIdempotencyKeys(Collection<String> idempotencyKeys) {
+        Map<IdempotencyKey, Event> found = new HashMap<>();
+        if (idempotencyKeys.isEmpty()) {
+            return found;
+        }
+        jdbcTemplate.query(
+                "SELECT k.idempotency_key, e.id, e.product_id, e.event_type_id, e.event_description, e.timestamp, e.location_id, e.actor_user_id, e.seq " +
+                "FROM event_idempotency_keys k JOIN events e ON e.id = k.event_id " +
+                "WHERE k.idempotency_key IN (:keys)",
+                new MapSqlParameterSource("keys", idempotencyKeys),
+                rs -> {
+                    Event event = eventRowMapper.mapRow(rs, 0);
+                    found.put(new IdempotencyKey(event.getProductId(), event.getActorUserId(), rs.getString("idempotency_key")), event);
+                });
+        return found;
+    }
+
+    // Records which event each key produced; a duplicate key fails the surrounding transaction
+    public void insertIdempotencyKeys(Map<IdempotencyKey, Event> applied) {
+        if (applied.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        SqlParameterSource[] batch = applied.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("productId", entry.getKey().productId())
+                        .addValue("actorUserId", entry.getKey().actorUserId())
+                        .addValue("idempotencyKey", entry.getKey().key())
+                        .addValue("eventId", entry.getValue().getId())
+                        .addValue("createdAt", now))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY, batch);
+    }
+
+    // Inserts all events as one JDBC batch and copies the generated ids back onto them
+    public void insertAll(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("productId", event.getProductId())
+                    .addValue("eventTypeId", dictionary.eventTypes().idOf(event.getEventType()))
+                    .addValue("eventDescription", event.getEventDescription())
+                    .addValue("timestamp", Timestamp.valueOf(event.getTimestamp()))
+                    .addValue("locationId", dictionary.locations().idOf(event.getLocation()))
+                    .addValue("actorUserId", event.getActorUserId())
+                    .addValue("seq", event.getSeq());
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(INSERT_EVENT, batch, keyHolder, new String[]{"id"});
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < events.size(); i++) {
+            // Only "id" was requested, so each key map holds exactly one value (label case varies by driver)
+            events.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    // Writes the final status/location/owner of each product as one JDBC batch
+    public void updateProductStates(List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("currentStatusId", dictionary.eventTypes().idOf(product.getCurrentStatus()))
+                    .addValue("currentLocationId", dictionary.locations().idOf(product.getCurrentLocation()))
+                    .addValue("ownerUserId", product.getOwnerUserId())
+                    .addValue("lastEventSeq", product.getLastEventSeq())
+                    .addValue("id", product.getId());
+        }
+        jdbcTemplate.batchUpdate(UPDATE_PRODUCT_STATE, batch);
+    }
+}
@@ -0,0 +1,69 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Meters tagged by event type, so dashboards show which event types drive write load:
+//   supplytrack.events.log        log-event latency (excluding commit) by event_type and outcome
+//   supplytrack.events.committed  committed events by event_type, from single, batch and async ingestion alike
+//   supplytrack.events.batch.size items per logEvents call
+// event_type is one of supplytrack.metrics.event-types or OTHER, so client input cannot add time series.
+@Component
+public class EventMetrics {
+
+    static final String OTHER = "OTHER";
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> knownEventTypes;
+    private final DistributionSummary batchSize;
+    private final Map<String, Counter> committed = new ConcurrentHashMap<>();
+    private final Map<List<String>, Timer> logTimers = new ConcurrentHashMap<>();
+
+    public EventMetrics(MeterRegistry meterRegistry,
+                        @Value("${supplytrack.metrics.event-types:HARVESTED,HANDOVER}") Set<String> knownEventTypes) {
+        this.meterRegistry = meterRegistry;
+        this.knownEventTypes = Set.copyOf(knownEventTypes);
+        this.batchSize = DistributionSummary.builder("supplytrack.events.batch.size").register(meterRegistry);
+    }
+
+    String eventTypeTag(String eventType) {
+        return eventType != null && knownEventTypes.contains(eventType) ? eventType : OTHER;
+    }
+
+    Timer.Sample startLogEvent() {
+        return Timer.start(meterRegistry);
+    }
+
+    void stopLogEvent(Timer.Sample sample, String eventType, String outcome) {
+        String tag = eventTypeTag(eventType);
+        sample.stop(logTimers.computeIfAbsent(List.of(tag, outcome), key -> Timer.builder("supplytrack.events.log")
+                .tag("event_type", tag)
+                .tag("outcome", outcome)
+                .register(meterRegistry)));
+    }
+
+    void recordBatchSize(int size) {
+        batchSize.record(size);
+    }
+
+    // Counts after commit; fallbackExecution covers callers without a surrounding transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        for (Event event : loggedEvent.events()) {
+            String tag = eventTypeTag(event.getEventType());
+            committed.computeIfAbsent(tag, key -> Counter.builder("supplytrack.events.committed")
+                    .tag("event_type", tag)
+                    .register(meterRegistry)).increment();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.supplytrack;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Keeps the events table small: on PostgreSQL (monthly range partitions, see db/vendor/postgresql/V6) it creates the
+// partitions of the coming months, and on every database it moves months older than the hot window into the
+// EventArchive. A month is written to a segment first and only then detached and dropped (partition) or deleted
+// (unpartitioned), so a crash in between leaves the rows in both tiers, which EventService de-duplicates.
+// With several instances the archive directory is shared storage. Only the holder of the archiver lease writes
+// segments, and a month is removed from the database only once every live instance (event_archive_nodes, V12)
+// reports that it has loaded the month's segment; an instance registers before it loads anything.
+@Component
+@DependsOnDatabaseInitialization
+public class EventPartitionMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(EventPartitionMaintenance.class);
+
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String SELECT_MONTH =
+            "SELECT " + EventJdbcRepository.EVENT_COLUMNS + " FROM events " +
+            "WHERE timestamp >= ? AND timestamp < ? ORDER BY product_id, timestamp, id";
+
+    // Attached partitions, and tables left detached by a run that stopped before dropping them
+    private static final String SELECT_PARTITIONS =
+            "SELECT c.relname FROM pg_class c WHERE c.relkind = 'r' AND c.relnamespace = " +
+            "(SELECT p.relnamespace FROM pg_class p WHERE p.relname = 'events' AND p.relkind = 'p')";
+
+    // No row: detached already. PostgreSQL 14+ marks a partition whose concurrent detach was interrupted.
+    private static final String SELECT_DETACH_PENDING =
+            "SELECT i.inhdetachpending FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'events' AND c.relname = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final EventArchive eventArchive;
+    private final RowMapper<Event> eventRowMapper;
+    private final int hotMonths;
+    private final int monthsAhead;
+    private final Duration leaseDuration;
+    private final Duration nodeTimeout;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile Boolean partitioned; // Detected on the first run
+
+    public EventPartitionMaintenance(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                     EventArchive eventArchive, NameDictionary dictionary,
+                                     @Value("${supplytrack.events.stream.fetch-size:500}") int fetchSize,
+                                     @Value("${supplytrack.events.archive.hot-months:12}") int hotMonths,
+                                     @Value("${supplytrack.events.partitions.months-ahead:3}") int monthsAhead,
+                                     @Value("${supplytrack.events.archive.lease:PT30M}") Duration leaseDuration,
+                                     @Value("${supplytrack.events.archive.node-timeout:PT3H}") Duration nodeTimeout) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize); // A month is read through a cursor, not materialized
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.eventArchive = eventArchive;
+        this.eventRowMapper = EventJdbcRepository.eventRowMapper(dictionary);
+        this.hotMonths = hotMonths;
+        this.monthsAhead = monthsAhead;
+        this.leaseDuration = leaseDuration;
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    // Registered with nothing loaded first, so no month can be removed while this instance is still reading the
+    // directory; then reports what it found
+    @PostConstruct
+    void join() {
+        reportLoadedSegments(null);
+        refreshArchive();
+        reportLoadedSegments(eventArchive.lastArchivedMonth().orElse(null));
+        log.info("Event archive node {} joined with segments through {}", nodeId, eventArchive.lastArchivedMonth().orElse(null));
+    }
+
+    @Scheduled(initialDelayString = "${supplytrack.events.partitions.initial-delay:PT1M}",
+            fixedDelayString = "${supplytrack.events.partitions.check-interval:PT1H}")
+    public void maintain() {
+        refreshArchive();
+        reportLoadedSegments(eventArchive.lastArchivedMonth().orElse(null));
+        if (isPartitioned()) {
+            createUpcomingPartitions(YearMonth.now());
+        }
+        archiveClosedMonths(YearMonth.now());
+    }
+
+    // Partitions for the current month and the next monthsAhead months; inserts fail without one
+    void createUpcomingPartitions(YearMonth current) {
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF events " +
+                    "FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+            // Unique per partition only: events cannot have a unique index without the partition key (V14)
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS ux_" + partitionName(month) + "_product_seq ON " +
+                    partitionName(month) + " (product_id, seq)");
+        }
+    }
+
+    // Every month before (current - hotMonths) leaves the events table, oldest first, as long as this instance
+    // holds the archiver lease. Stops at the first month some live instance has not loaded yet; a later run
+    // continues there. Returns the months that were removed from the database.
+    List<YearMonth> archiveClosedMonths(YearMonth current) {
+        if (!acquireLease()) {
+            return List.of();
+        }
+        try {
+            refreshArchive();
+            deleteAbandonedSegments();
+            YearMonth firstHotMonth = current.minusMonths(hotMonths);
+            List<YearMonth> archived = new ArrayList<>();
+            if (isPartitioned()) {
+                for (YearMonth month : partitionMonthsBefore(firstHotMonth)) {
+                    if (!acquireLease() || !archiveMonth(month)) {
+                        break;
+                    }
+                    archived.add(month);
+                }
+                return archived;
+            }
+            // Unpartitioned: only months that still have rows, oldest first
+            for (YearMonth month = oldestMonthWithEvents(null, firstHotMonth); month != null;
+                 month = oldestMonthWithEvents(month.plusMonths(1), firstHotMonth)) {
+                if (!acquireLease() || !archiveMonth(month)) {
+                    break;
+                }
+                archived.add(month);
+            }
+            return archived;
+        } finally {
+            releaseLease();
+        }
+    }
+
+    private List<YearMonth> partitionMonthsBefore(YearMonth firstHotMonth) {
+        List<YearMonth> months = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class)) {
+            if (!partition.matches("events_p\\d{6}")) {
+                continue; // Not one of ours
+            }
+            YearMonth month = YearMonth.parse(partition.substring("events_p".length()), PARTITION_MONTH);
+            if (month.isBefore(firstHotMonth)) {
+                months.add(month);
+            }
+        }
+        months.sort(null);
+        return months;
+    }
+
+    private YearMonth oldestMonthWithEvents(YearMonth from, YearMonth before) {
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM events WHERE timestamp >= ? AND timestamp < ?",
+                Timestamp.class, from == null ? new Timestamp(0) : Timestamp.valueOf(from.atDay(1).atStartOfDay()),
+                Timestamp.valueOf(before.atDay(1).atStartOfDay()));
+        return oldest == null ? null : YearMonth.from(oldest.toLocalDateTime());
+    }
+
+    // Returns whether the month left the database
+    private boolean archiveMonth(YearMonth month) {
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+
+        // 1. Copy the month into a segment (skipped if an earlier run got that far)
+        if (!eventArchive.contains(month)) {
+            readOnlyTransactionTemplate.executeWithoutResult(status -> {
+                try (EventArchive.SegmentWriter writer = eventArchive.newSegment(month)) {
+                    jdbcTemplate.query(SELECT_MONTH, rs -> {
+                        try {
+                            writer.add(eventRowMapper.mapRow(rs, 0)); // Segments keep names, with their own dictionary
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, from, to);
+                    writer.publish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not archive the events of " + month, e);
+                }
+            });
+        }
+
+        // 2. Wait for every live instance to load the segment; until then they can only read the month from the table
+        reportLoadedSegments(eventArchive.lastArchivedMonth().orElse(null));
+        List<String> behind = nodesWithout(month);
+        if (!behind.isEmpty()) {
+            log.info("Events of {} are archived but stay in the database until instances {} have loaded the segment",
+                    month, behind);
+            return false;
+        }
+
+        // 3. Remove the hot copy. Idempotency keys of archived events, and import keys of the products they
+        // created, go too: a retry months later is not a retry.
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM event_idempotency_keys WHERE event_id IN " +
+                    "(SELECT id FROM events WHERE timestamp >= ? AND timestamp < ?)", from, to);
+            jdbcTemplate.update("DELETE FROM product_import_rows WHERE event_id IN " +
+                    "(SELECT id FROM events WHERE timestamp >= ? AND timestamp < ?)", from, to);
+            if (!isPartitioned()) {
+                jdbcTemplate.update("DELETE FROM events WHERE timestamp >= ? AND timestamp < ?", from, to);
+            }
+        });
+        if (isPartitioned()) {
+            dropPartition(month);
+        }
+        log.info("Archived events of {}; {} events now in the archive", month, eventArchive.archivedEventCount());
+        return true;
+    }
+
+    // Dropping an attached partition takes an ACCESS EXCLUSIVE lock on events and would stall every writer, so it
+    // is detached first. DETACH ... CONCURRENTLY (PostgreSQL 14+) only waits for transactions that may use the
+    // partition; it cannot run inside a transaction, so it goes through an autocommit connection. Then only the
+    // detached table is locked by the DROP.
+    private void dropPartition(YearMonth month) {
+        String partition = partitionName(month);
+        List<Boolean> pending = jdbcTemplate.query(SELECT_DETACH_PENDING, (rs, rowNum) -> rs.getBoolean(1), partition);
+        if (!pending.isEmpty()) {
+            // An earlier run stopped half way through a concurrent detach; FINALIZE completes it
+            jdbcTemplate.execute("ALTER TABLE events DETACH PARTITION " + partition
+                    + (pending.get(0) ? " FINALIZE" : " CONCURRENTLY"));
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+    }
+
+    private void refreshArchive() {
+        try {
+            eventArchive.refresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load new segments of the event archive", e);
+        }
+    }
+
+    private void deleteAbandonedSegments() {
+        try {
+            eventArchive.deleteAbandonedSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not clean up the event archive", e);
+        }
+    }
+
+    // Takes or renews the archiver lease; false while another instance holds an unexpired one
+    private boolean acquireLease() {
+        Timestamp now = databaseTime();
+        boolean acquired = jdbcTemplate.update("UPDATE event_archive_lease SET holder = ?, expires_at = ? " +
+                        "WHERE id = 1 AND (holder IS NULL OR holder = ? OR expires_at < ?)",
+                nodeId, Timestamp.valueOf(now.toLocalDateTime().plus(leaseDuration)), nodeId, now) == 1;
+        if (!acquired) {
+            log.debug("Another instance holds the event archiver lease");
+        }
+        return acquired;
+    }
+
+    private void releaseLease() {
+        jdbcTemplate.update("UPDATE event_archive_lease SET holder = NULL WHERE id = 1 AND holder = ?", nodeId);
+    }
+
+    // Heartbeat of this instance, with the newest month it can read from the archive (null: none)
+    private void reportLoadedSegments(YearMonth loadedThrough) {
+        SqlParameterValue through = new SqlParameterValue(Types.DATE,
+                loadedThrough == null ? null : Date.valueOf(loadedThrough.atDay(1)));
+        Timestamp now = databaseTime();
+        if (jdbcTemplate.update("UPDATE event_archive_nodes SET loaded_through = ?, seen_at = ? WHERE node_id = ?",
+                through, now, nodeId) == 0) {
+            jdbcTemplate.update("INSERT INTO event_archive_nodes (node_id, loaded_through, seen_at) VALUES (?, ?, ?)",
+                    nodeId, through, now);
+        }
+    }
+
+    // Live instances that have not loaded the month's segment yet; instances not seen within node-timeout are
+    // considered gone and their rows are cleaned up
+    private List<String> nodesWithout(YearMonth month) {
+        Timestamp cutoff = Timestamp.valueOf(databaseTime().toLocalDateTime().minus(nodeTimeout));
+        jdbcTemplate.update("DELETE FROM event_archive_nodes WHERE seen_at < ?", cutoff);
+        return jdbcTemplate.queryForList("SELECT node_id FROM event_archive_nodes " +
+                "WHERE loaded_through IS NULL OR loaded_through < ?", String.class, Date.valueOf(month.atDay(1)));
+    }
+
+    // Lease and heartbeats are compared against the database clock, not the clocks of the instances
+    private Timestamp databaseTime() {
+        return jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class);
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    private boolean isPartitioned() {
+        Boolean detected = partitioned;
+        if (detected == null) {
+            String database = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            detected = "PostgreSQL".equals(database) && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid " +
+                    "WHERE c.relname = 'events')", Boolean.class));
+            partitioned = detected;
+        }
+        return detected;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "events_p" + PARTITION_MONTH.format(month);
+    }
+}
@@ -1,55 +1,427 @@
 package com.supplytrack;
 
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List; // NEW IMPORT: for List
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @Service // Marks this class as a Spring service component
 public class EventService {
 
-    private final EventRepository eventRepository;
-    private final ProductRepository productRepository;
     private final UserRepository userRepository;
+    private final EventJdbcRepository eventJdbcRepository;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EventMetrics eventMetrics;
+    private final EventArchive eventArchive;
+    private final NameDictionary dictionary;
+    private final int maxUpdateAttempts;
 
-    public EventService(EventRepository eventRepository, ProductRepository productRepository, UserRepository userRepository) {
-        this.eventRepository = eventRepository;
-        this.productRepository = productRepository;
+    public EventService(UserRepository userRepository,
+                        EventJdbcRepository eventJdbcRepository, ProductJdbcRepository productJdbcRepository,
+                        ApplicationEventPublisher eventPublisher, EventMetrics eventMetrics,
+                        EventArchive eventArchive, NameDictionary dictionary,
+                        @Value("${supplytrack.events.max-update-attempts:5}") int maxUpdateAttempts) {
         this.userRepository = userRepository;
+        this.eventJdbcRepository = eventJdbcRepository;
+        this.productJdbcRepository = productJdbcRepository;
+        this.eventPublisher = eventPublisher;
+        this.eventMetrics = eventMetrics;
+        this.eventArchive = eventArchive;
+        this.dictionary = dictionary;
+        this.maxUpdateAttempts = maxUpdateAttempts;
+    }
+
+    // One entry of a batch submission
+    public static class BatchEvent {
+        private final Long productId;
+        private final String eventType;
+        private final String eventDescription;
+        private final String location;
+        private final Long actorUserId;
+        private final String idempotencyKey; // Optional: items whose key was already applied are not written again
+
+        public BatchEvent(Long productId, String eventType, String eventDescription, String location, Long actorUserId,
+                          String idempotencyKey) {
+            this.productId = productId;
+            this.eventType = eventType;
+            this.eventDescription = eventDescription;
+            this.location = location;
+            this.actorUserId = actorUserId;
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        public Long getProductId() { return productId; }
+        public String getEventType() { return eventType; }
+        public String getEventDescription() { return eventDescription; }
+        public String getLocation() { return location; }
+        public Long getActorUserId() { return actorUserId; }
+        public String getIdempotencyKey() { return idempotencyKey; }
+    }
+
+    // Per-item outcome of a batch submission, reported in input order
+    public static class BatchEventResult {
+        public static final String CREATED = "CREATED";
+        public static final String PRODUCT_NOT_FOUND = "PRODUCT_NOT_FOUND";
+        public static final String ACTOR_NOT_FOUND = "ACTOR_NOT_FOUND";
+        public static final String INVALID = "INVALID";
+        public static final String FORBIDDEN = "FORBIDDEN";
+        public static final String DUPLICATE = "DUPLICATE"; // Idempotency-Key seen before; eventId is the original event
+        public static final String KEY_REUSED = "KEY_REUSED"; // Same Idempotency-Key, product and actor, different event
+
+        private final int index;
+        private final Long productId;
+        private final String status;
+        private final Long eventId;
+        private final String message;
+
+        public BatchEventResult(int index, Long productId, String status, Long eventId, String message) {
+            this.index = index;
+            this.productId = productId;
+            this.status = status;
+            this.eventId = eventId;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public Long getProductId() { return productId; }
+        public String getStatus() { return status; }
+        public Long getEventId() { return eventId; }
+        public String getMessage() { return message; }
     }
 
     @Transactional
     public Optional<Event> logEvent(Long productId, String eventType, String eventDescription, String location, Long actorUserId) {
-        // 1. Verify Product exists
-        Optional<Product> productOptional = productRepository.findById(productId);
-        if (productOptional.isEmpty()) {
-            // Product not found, cannot log event
-            return Optional.empty();
+        return logEvent(productId, eventType, eventDescription, location, actorUserId, null);
+    }
+
+    // idempotencyKey (optional) is recorded with the event; reusing it for the same product and actor makes the commit
+    // fail, see IdempotentEventService for the retry-side lookup
+    @Transactional
+    public Optional<Event> logEvent(Long productId, String eventType, String eventDescription, String location, Long actorUserId,
+                                    String idempotencyKey) {
+        Timer.Sample sample = eventMetrics.startLogEvent();
+        String outcome = "error";
+        try {
+            Optional<Event> logged = logEventWithRetry(productId, eventType, eventDescription, location, actorUserId, idempotencyKey);
+            outcome = logged.isPresent() ? "created" : "product_not_found";
+            return logged;
+        } finally {
+            eventMetrics.stopLogEvent(sample, eventType, outcome); // Commit time is in supplytrack.transactions
+        }
+    }
+
+    private Optional<Event> logEventWithRetry(Long productId, String eventType, String eventDescription, String location,
+                                              Long actorUserId, String idempotencyKey) {
+        // Names new to the dictionary are added before the version is read, not between the read and the update
+        if (eventType != null && location != null) {
+            dictionary.eventTypes().idOf(eventType);
+            dictionary.locations().idOf(location);
+        }
+        for (int attempt = 1; ; attempt++) {
+            // 1. Verify Product and Actor User exist, and read the product's version and sequence (one round trip).
+            // The last attempt locks the row, so a product that keeps changing cannot starve this writer.
+            boolean lock = attempt >= maxUpdateAttempts;
+            Optional<EventJdbcRepository.EventPreconditions> preconditions =
+                    eventJdbcRepository.findEventPreconditions(productId, actorUserId, lock);
+            if (preconditions.isEmpty()) {
+                // Product not found, cannot log event
+                return Optional.empty();
+            }
+            if (!preconditions.get().actorExists()) {
+                throw new IllegalArgumentException("Actor user with ID " + actorUserId + " not found.");
+            }
+
+            // 2. Update Product's current status, location and owner only if nobody changed it since step 1.
+            // This is a simplified logic. Real-world might use more complex state machines.
+            // For handover events, the actor becomes the new owner.
+            boolean updated = eventJdbcRepository.updateProductStateIfVersion(
+                    productId, preconditions.get().productVersion(), eventType, location, actorUserId);
+            if (!updated) {
+                if (lock) {
+                    throw new OptimisticLockingFailureException("Product " + productId + " was modified concurrently; gave up after " + attempt + " attempts.");
+                }
+                continue; // Another event won the race; re-read the version and try again
+            }
+
+            // The actor becomes the owner: the event changes its list, and the previous owner's on a handover
+            productJdbcRepository.bumpListVersions(List.of(
+                    ProductJdbcRepository.ListStripe.of(preconditions.get().ownerUserId(), productId),
+                    ProductJdbcRepository.ListStripe.of(actorUserId, productId)));
+
+            // 3. Create the new event. The product row stays locked until commit, so timestamps, ids
+            // and sequence numbers of events for the same product follow the order in which updates committed.
+            long seq = preconditions.get().lastEventSeq() + 1;
+            Event newEvent = Event.createNewEvent(productId, eventType, eventDescription, location, actorUserId, seq);
+            eventJdbcRepository.insert(newEvent);
+            if (idempotencyKey != null) {
+                eventJdbcRepository.insertIdempotencyKeys(Map.of(
+                        new EventJdbcRepository.IdempotencyKey(productId, actorUserId, idempotencyKey), newEvent));
+            }
+            eventPublisher.publishEvent(new EventsLoggedEvent(List.of(newEvent))); // e.g. trace cache invalidation after commit
+            return Optional.of(newEvent);
+        }
+    }
+
+    // Batch variant of logEvent: two set-based lookups, one batched insert, one state update per product
+    @Transactional
+    public List<BatchEventResult> logEvents(List<BatchEvent> batch) {
+        eventMetrics.recordBatchSize(batch.size());
+
+        // 1. Resolve every referenced product and actor with one IN query each
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> actorIds = new HashSet<>();
+        for (BatchEvent item : batch) {
+            if (item.getProductId() != null) productIds.add(item.getProductId());
+            if (item.getActorUserId() != null) actorIds.add(item.getActorUserId());
+        }
+        // Names new to the dictionary are added before any product is locked
+        for (BatchEvent item : batch) {
+            if (!isBlank(item.getEventType()) && !isBlank(item.getLocation())) {
+                dictionary.eventTypes().idOf(item.getEventType());
+                dictionary.locations().idOf(item.getLocation());
+            }
+        }
+        // Products are row-locked so concurrent single logEvent calls see a version change and retry
+        Map<Long, Product> products = productJdbcRepository.lockAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Set<Long> knownActors = StreamSupport.stream(userRepository.findAllById(actorIds).spliterator(), false)
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        Set<String> keys = batch.stream()
+                .map(BatchEvent::getIdempotencyKey)
+                .filter(key -> key != null)
+                .collect(Collectors.toSet());
+        Map<EventJdbcRepository.IdempotencyKey, Event> appliedKeys = eventJdbcRepository.findByIdempotencyKeys(keys);
+
+        // 2. Validate items in order and build the events to insert
+        BatchEventResult[] results = new BatchEventResult[batch.size()];
+        List<Event> newEvents = new ArrayList<>();
+        List<Integer> newEventIndexes = new ArrayList<>();
+        Map<Long, Product> touchedProducts = new LinkedHashMap<>();
+        Set<ProductJdbcRepository.ListStripe> listStripes = new HashSet<>();
+        Map<EventJdbcRepository.IdempotencyKey, Event> newKeys = new LinkedHashMap<>();
+        List<Integer> duplicateIndexes = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            BatchEvent item = batch.get(i);
+            if (item.getProductId() == null || isBlank(item.getEventType()) || isBlank(item.getLocation())) {
+                results[i] = new BatchEventResult(i, item.getProductId(), BatchEventResult.INVALID, null,
+                        "productId, eventType and location are required.");
+                continue;
+            }
+            Product product = products.get(item.getProductId());
+            if (product == null) {
+                results[i] = new BatchEventResult(i, item.getProductId(), BatchEventResult.PRODUCT_NOT_FOUND, null,
+                        "Product with ID " + item.getProductId() + " not found.");
+                continue;
+            }
+            EventJdbcRepository.IdempotencyKey key = item.getIdempotencyKey() != null
+                    ? new EventJdbcRepository.IdempotencyKey(item.getProductId(), item.getActorUserId(), item.getIdempotencyKey()) : null;
+            if (key != null && appliedKeys.containsKey(key)) {
+                Event original = appliedKeys.get(key);
+                results[i] = isSameEvent(original, item.getEventType(), item.getEventDescription(), item.getLocation())
+                        ? new BatchEventResult(i, item.getProductId(), BatchEventResult.DUPLICATE, original.getId(), null)
+                        : keyReused(i, item);
+                continue;
+            }
+            if (key != null && newKeys.containsKey(key)) {
+                if (isSameEvent(newKeys.get(key), item.getEventType(), item.getEventDescription(), item.getLocation())) {
+                    duplicateIndexes.add(i); // Repeated inside this batch; resolved once the first copy has an id
+                } else {
+                    results[i] = keyReused(i, item);
+                }
+                continue;
+            }
+            if (!knownActors.contains(item.getActorUserId())) {
+                results[i] = new BatchEventResult(i, item.getProductId(), BatchEventResult.ACTOR_NOT_FOUND, null,
+                        "Actor user with ID " + item.getActorUserId() + " not found.");
+                continue;
+            }
+
+            product.setLastEventSeq(product.getLastEventSeq() + 1);
+            Event event = Event.createNewEvent(item.getProductId(), item.getEventType(), item.getEventDescription(),
+                    item.getLocation(), item.getActorUserId(), product.getLastEventSeq());
+            newEvents.add(event);
+            newEventIndexes.add(i);
+            if (key != null) {
+                newKeys.put(key, event);
+            }
+
+            // Same state transition as logEvent; only the last event per product reaches the database
+            product.setCurrentStatus(item.getEventType());
+            product.setCurrentLocation(item.getLocation());
+            listStripes.add(ProductJdbcRepository.ListStripe.of(product.getOwnerUserId(), product.getId()));
+            listStripes.add(ProductJdbcRepository.ListStripe.of(item.getActorUserId(), product.getId()));
+            product.setOwnerUserId(item.getActorUserId());
+            touchedProducts.put(product.getId(), product);
+        }
+
+        // 3. One batched insert for all events, one batched update for all touched products
+        eventJdbcRepository.insertAll(newEvents);
+        eventJdbcRepository.updateProductStates(new ArrayList<>(touchedProducts.values()));
+        productJdbcRepository.bumpListVersions(listStripes);
+        eventJdbcRepository.insertIdempotencyKeys(newKeys);
+        if (!newEvents.isEmpty()) {
+            eventPublisher.publishEvent(new EventsLoggedEvent(List.copyOf(newEvents)));
         }
-        Product product = productOptional.get();
 
-        // 2. Verify Actor User exists (optional, but good practice for data integrity)
-        if (userRepository.findById(actorUserId).isEmpty()) {
-            throw new IllegalArgumentException("Actor user with ID " + actorUserId + " not found.");
+        for (int n = 0; n < newEvents.size(); n++) {
+            Event event = newEvents.get(n);
+            int i = newEventIndexes.get(n);
+            results[i] = new BatchEventResult(i, event.getProductId(), BatchEventResult.CREATED, event.getId(), null);
+        }
+        for (int i : duplicateIndexes) {
+            BatchEvent item = batch.get(i);
+            Event original = newKeys.get(new EventJdbcRepository.IdempotencyKey(item.getProductId(), item.getActorUserId(),
+                    item.getIdempotencyKey()));
+            results[i] = new BatchEventResult(i, item.getProductId(), BatchEventResult.DUPLICATE, original.getId(), null);
         }
+        return List.of(results);
+    }
 
-        // 3. Create the new event
-        Event newEvent = Event.createNewEvent(productId, eventType, eventDescription, location, actorUserId);
-        Event savedEvent = eventRepository.save(newEvent);
+    // Whether a request repeating an Idempotency-Key asks for the event the key already produced. The stored event
+    // is the reference, so no hash of the original request needs to be kept.
+    static boolean isSameEvent(Event original, String eventType, String eventDescription, String location) {
+        return Objects.equals(original.getEventType(), eventType)
+                && Objects.equals(original.getEventDescription(), eventDescription)
+                && Objects.equals(original.getLocation(), location);
+    }
 
-        // 4. Update Product's current status and location based on event type
-        // This is a simplified logic. Real-world might use more complex state machines.
-        product.setCurrentStatus(eventType); // Update status to the new event type
-        product.setCurrentLocation(location); // Update product's current location
-        product.setOwnerUserId(actorUserId); // For handover events, the actor becomes the new owner
-        productRepository.save(product); // Save the updated product
+    private static BatchEventResult keyReused(int index, BatchEvent item) {
+        return new BatchEventResult(index, item.getProductId(), BatchEventResult.KEY_REUSED, null,
+                "Idempotency-Key " + item.getIdempotencyKey() + " was already used for a different event.");
+    }
 
-        return Optional.of(savedEvent);
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
     }
 
     // NEW METHOD: Get events for a product (called by ProductController)
+    // Archived months come first: the archive only holds months older than anything left in the events table.
+    @Transactional(readOnly = true) // Read-only transactions may be served by a read replica (ReadReplicaConfig)
     public List<Event> getEventsForProduct(Long productId) {
-        return eventRepository.findByProductIdOrderByTimestampAsc(productId);
+        return withArchived(eventArchive.findByProductId(productId), eventJdbcRepository.findByProductId(productId));
+    }
+
+    // Full histories of several products: one events query for all of them, grouped in memory. Every product
+    // gets an entry; one that does not exist gets an empty history.
+    @Transactional(readOnly = true)
+    public Map<Long, List<Event>> getEventsForProducts(Collection<Long> productIds) {
+        Map<Long, List<Event>> hot = eventJdbcRepository.findByProductIds(productIds);
+        Map<Long, List<Event>> histories = new HashMap<>();
+        for (Long productId : productIds) {
+            histories.put(productId, withArchived(eventArchive.findByProductId(productId), hot.getOrDefault(productId, List.of())));
+        }
+        return histories;
+    }
+
+    // Full traces of several products, read from one snapshot so each product's version matches its history.
+    // Products that do not exist are absent from the map.
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public Map<Long, ProductController.ProductTraceResponse> getTraces(Collection<Long> productIds) {
+        List<Product> products = productJdbcRepository.findAllById(productIds);
+        Map<Long, List<Event>> histories = getEventsForProducts(products.stream().map(Product::getId).toList());
+        Map<Long, ProductController.ProductTraceResponse> traces = new HashMap<>();
+        for (Product product : products) {
+            traces.put(product.getId(), new ProductController.ProductTraceResponse(product, List.copyOf(histories.get(product.getId()))));
+        }
+        return traces;
+    }
+
+    private static List<Event> withArchived(List<Event> archived, List<Event> hot) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<Event> history = new ArrayList<>(archived.size() + hot.size());
+        history.addAll(archived);
+        Set<Long> archivedIds = archivedIds(archived);
+        for (Event event : hot) {
+            if (!archivedIds.contains(event.getId())) { // Month archived but not yet removed from the table
+                history.add(event);
+            }
+        }
+        return history;
+    }
+
+    // One keyset page of a product's history. Returns up to limit + 1 rows: the extra row only
+    // signals that another page exists and is not part of the page itself.
+    @Transactional(readOnly = true)
+    public List<Event> getEventPageForProduct(Long productId, KeysetCursor after, int limit) {
+        Optional<YearMonth> archivedThrough = eventArchive.lastArchivedMonth();
+        if (archivedThrough.isEmpty()) {
+            return eventJdbcRepository.findPageForProduct(productId, after, limit + 1);
+        }
+        // The archive is entered at the cursor's month; earlier segments are not read at all
+        List<Event> page = new ArrayList<>();
+        eventArchive.forEachByProductId(productId, after == null ? null : YearMonth.from(after.timestamp()), archivedThrough.get(),
+                event -> {
+                    if (after == null || isAfter(event, after)) {
+                        page.add(event);
+                    }
+                    return page.size() <= limit;
+                });
+        if (page.size() > limit) {
+            return page;
+        }
+        // Every table row sorts after every archived row, so the table page continues where the archive ends.
+        // Rows of a month that is archived but not yet removed are skipped by the query, not after it.
+        KeysetCursor archiveEnd = new KeysetCursor(archiveEnd(archivedThrough.get()), 0);
+        boolean cursorInArchive = after == null || after.timestamp().isBefore(archiveEnd.timestamp());
+        page.addAll(eventJdbcRepository.findPageForProduct(productId, cursorInArchive ? archiveEnd : after, limit + 1 - page.size()));
+        return page;
+    }
+
+    // Streams a product's full history row by row: archived blocks one at a time, then the table through a JDBC
+    // cursor that the read-only transaction keeps open
+    @Transactional(readOnly = true)
+    public void streamEventsForProduct(Long productId, Consumer<Event> consumer) {
+        Optional<YearMonth> archivedThrough = eventArchive.lastArchivedMonth();
+        if (archivedThrough.isEmpty()) {
+            eventJdbcRepository.streamForProduct(productId, consumer);
+            return;
+        }
+        eventArchive.forEachByProductId(productId, null, archivedThrough.get(), event -> {
+            consumer.accept(event);
+            return true;
+        });
+        LocalDateTime archiveEnd = archiveEnd(archivedThrough.get());
+        eventJdbcRepository.streamForProduct(productId, event -> {
+            if (!event.getTimestamp().isBefore(archiveEnd)) { // Earlier rows were streamed from the archive
+                consumer.accept(event);
+            }
+        });
+    }
+
+    // Start of the first month that is not in the archive
+    private static LocalDateTime archiveEnd(YearMonth lastArchivedMonth) {
+        return lastArchivedMonth.plusMonths(1).atDay(1).atStartOfDay();
+    }
+
+    private static Set<Long> archivedIds(List<Event> archived) {
+        return archived.isEmpty() ? Set.of() : archived.stream().map(Event::getId).collect(Collectors.toSet());
+    }
+
+    private static boolean isAfter(Event event, KeysetCursor cursor) {
+        int byTimestamp = event.getTimestamp().compareTo(cursor.timestamp());
+        return byTimestamp > 0 || (byTimestamp == 0 && event.getId() > cursor.id());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only NDJSON file of events accepted by the write-behind pipeline but not yet committed.
+// Appends are cheap; durability is a separate step (awaitDurable) so concurrent producers share one fsync.
+// Offsets are logical (bytes ever appended), so a truncated file never confuses a waiting producer.
+class EventSpool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventSpool.class);
+
+    // What a previous run left behind; corrupt counts lines that could not be read (a torn last line excluded)
+    record Recovered(List<WriteBehindEventPipeline.SpooledEvent> entries, int corrupt) {
+    }
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private final Object forceLock = new Object();
+    private volatile long written; // Logical end of the spool; updated under the spool's monitor
+    private long durable;          // Logical offset known to be on disk; guarded by forceLock
+
+    EventSpool(Path path, ObjectMapper objectMapper) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size()); // Appends go at the channel position; truncate(0) rewinds it
+        this.written = channel.size();
+        this.durable = written;
+    }
+
+    // Entries left over from a previous run, read a line at a time. A torn last line (crash mid-append) was never
+    // acknowledged and is skipped. Any other line that cannot be read is logged and copied to <spool>.corrupt
+    // before the spool is truncated, so it can still be looked at and resubmitted by hand.
+    Recovered readAll() throws IOException {
+        List<WriteBehindEventPipeline.SpooledEvent> entries = new ArrayList<>();
+        int corrupt = 0;
+        boolean torn = endsTorn();
+        Path corruptFile = path.resolveSibling(path.getFileName() + ".corrupt");
+        BufferedWriter corruptLines = null;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            for (long lineNumber = 1; line != null; lineNumber++) {
+                String next = reader.readLine();
+                if (!line.isBlank()) {
+                    try {
+                        entries.add(objectMapper.readValue(line, WriteBehindEventPipeline.SpooledEvent.class));
+                    } catch (IOException e) {
+                        if (next == null && torn) {
+                            log.info("Skipping the torn last line of the event spool {}", path);
+                        } else {
+                            corrupt++;
+                            log.warn("Unreadable entry on line {} of the event spool {}; copied to {}", lineNumber, path, corruptFile, e);
+                            if (corruptLines == null) {
+                                corruptLines = Files.newBufferedWriter(corruptFile, StandardCharsets.UTF_8,
+                                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                            }
+                            corruptLines.write(line);
+                            corruptLines.newLine();
+                        }
+                    }
+                }
+                line = next;
+            }
+        } finally {
+            if (corruptLines != null) {
+                corruptLines.close();
+            }
+        }
+        return new Recovered(entries, corrupt);
+    }
+
+    // Every complete append ends with a newline, so a spool that doesn't was cut off mid-append
+    private boolean endsTorn() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return false;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        while (last.hasRemaining()) {
+            if (channel.read(last, size - 1) < 0) {
+                return true; // Truncated under us
+            }
+        }
+        return last.get(0) != '\n';
+    }
+
+    // Caller holds the spool's monitor, so lines are never interleaved. Returns the logical end of this entry.
+    long append(WriteBehindEventPipeline.SpooledEvent entry) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(entry);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        written += json.length + 1;
+        return written;
+    }
+
+    // Group fsync: whoever gets forceLock first flushes everything appended so far, and the producers
+    // queued behind it usually find their entry already durable
+    void awaitDurable(long logicalEnd) throws IOException {
+        synchronized (forceLock) {
+            if (durable >= logicalEnd) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            durable = target;
+        }
+    }
+
+    // Caller holds the spool's monitor and has made sure every appended entry is committed to the database
+    void truncate() throws IOException {
+        synchronized (forceLock) {
+            channel.truncate(0);
+            channel.force(false);
+            durable = written;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
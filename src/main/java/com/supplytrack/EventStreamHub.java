@@ -0,0 +1,294 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+// In-process publish/subscribe hub behind the Server-Sent Events endpoints. Connections are async servlet
+// requests, so an idle subscriber costs a socket and a small buffer, not a thread; a few delivery threads
+// write to whichever subscribers have something queued. A subscriber whose buffer overflows is closed:
+// its client reconnects with Last-Event-ID and catches up from the events table. Those catch-up queries run on
+// their own bounded pool, so a wave of reconnects queues up there instead of holding up live delivery.
+@Component
+public class EventStreamHub {
+
+    private final EventJdbcRepository eventJdbcRepository;
+    private final Map<Long, Set<Subscriber>> productSubscribers = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Subscriber>> ownerSubscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService delivery;
+    private final ExecutorService replays;
+    private final ScheduledExecutorService heartbeats;
+    private final Counter dropped;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final int maxReplay;
+    private final Duration timeout;
+
+    public EventStreamHub(EventJdbcRepository eventJdbcRepository, MeterRegistry meterRegistry,
+                          @Value("${supplytrack.sse.buffer-size:256}") int bufferSize,
+                          @Value("${supplytrack.sse.max-subscribers:50000}") int maxSubscribers,
+                          @Value("${supplytrack.sse.max-replay:1000}") int maxReplay,
+                          @Value("${supplytrack.sse.timeout:PT30M}") Duration timeout,
+                          @Value("${supplytrack.sse.heartbeat:PT25S}") Duration heartbeat,
+                          @Value("${supplytrack.sse.delivery-threads:4}") int deliveryThreads,
+                          @Value("${supplytrack.sse.replay-threads:2}") int replayThreads,
+                          @Value("${supplytrack.sse.replay-queue:1000}") int replayQueue,
+                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.eventJdbcRepository = eventJdbcRepository;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.maxReplay = maxReplay;
+        this.timeout = timeout;
+        // With virtual threads a client that stops reading only parks its own drain, so no pool is needed
+        this.delivery = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-delivery-", 0).factory())
+                : Executors.newFixedThreadPool(deliveryThreads, daemon("sse-delivery"));
+        // Bounded in both modes: every replay holds a database connection while it runs
+        this.replays = new ThreadPoolExecutor(replayThreads, replayThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(replayQueue),
+                virtualThreads ? Thread.ofVirtual().name("sse-replay-", 0).factory() : daemon("sse-replay"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(daemon("sse-heartbeat"));
+        // Comment lines keep idle connections open through proxies and detect clients that went away
+        heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("supplytrack.sse.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+        this.dropped = Counter.builder("supplytrack.sse.dropped").description("Subscribers closed because their buffer overflowed")
+                .register(meterRegistry);
+    }
+
+    // SSE ids are the product's event seq, which is assigned in commit order, so resume is exact
+    public SseEmitter subscribeToProduct(Long productId, Long lastSeq) {
+        return subscribe(productSubscribers, productId, Event::getSeq, lastSeq,
+                after -> eventJdbcRepository.findByProductIdAfterSeq(productId, after, maxReplay));
+    }
+
+    // SSE ids are event ids. Ids are allocated at insert, so across different products an event can commit
+    // after one with a higher id; a client that reconnects in that window can miss it.
+    public SseEmitter subscribeToOwner(Long ownerUserId, Long lastEventId) {
+        return subscribe(ownerSubscribers, ownerUserId, Event::getId, lastEventId,
+                after -> eventJdbcRepository.findByActorUserIdAfterId(ownerUserId, after, maxReplay));
+    }
+
+    // Published only after the events are committed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        for (Event event : loggedEvent.events()) {
+            offer(productSubscribers.get(event.getProductId()), event);
+            offer(ownerSubscribers.get(event.getActorUserId()), event); // Every event makes its actor the owner
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        delivery.shutdownNow();
+        replays.shutdownNow();
+        productSubscribers.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+        ownerSubscribers.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+    }
+
+    private SseEmitter subscribe(Map<Long, Set<Subscriber>> registry, Long key, Function<Event, Long> position,
+                                 Long lastEventId, LongFunction<List<Event>> replay) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new RejectedExecutionException("Too many live subscribers; retry later.");
+        }
+        Subscriber subscriber = new Subscriber(registry, key, position, lastEventId, replay);
+        // Registered before the replay query runs, so nothing committed from now on can fall between the two.
+        // Sets are added to and removed from inside compute, so an emptied set is never reused after removal.
+        registry.compute(key, (k, subscribers) -> {
+            Set<Subscriber> set = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            set.add(subscriber);
+            return set;
+        });
+        if (lastEventId == null) {
+            subscriber.schedule();
+        } else {
+            try {
+                replays.execute(subscriber::replay);
+            } catch (RejectedExecutionException e) {
+                subscriber.close();
+                throw new RejectedExecutionException("Too many reconnecting subscribers; retry later.");
+            }
+        }
+        return subscriber.emitter;
+    }
+
+    private void offer(Set<Subscriber> subscribers, Event event) {
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.buffer.offer(event)) {
+                subscriber.schedule();
+            } else {
+                dropped.increment();
+                subscriber.close(); // Slow consumer: close instead of blocking the committing thread or growing memory
+            }
+        }
+    }
+
+    private void heartbeat() {
+        for (Map<Long, Set<Subscriber>> registry : List.of(productSubscribers, ownerSubscribers)) {
+            for (Set<Subscriber> subscribers : registry.values()) {
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.heartbeatDue = true;
+                    subscriber.schedule();
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger n = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + n.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // One open stream. drain() runs on a delivery thread and never concurrently with itself (see scheduled);
+    // replay() runs once on a replay thread and hands the missed events over to drain().
+    private final class Subscriber {
+        private final SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        private final BlockingQueue<Event> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final Map<Long, Set<Subscriber>> registry;
+        private final Long key;
+        private final Function<Event, Long> position;
+        private final LongFunction<List<Event>> replay;
+        private final Long replayFrom; // Last-Event-ID, or null for a fresh subscription
+        private volatile boolean catchingUp; // Live events stay buffered until the replay query has returned
+        private volatile List<Event> replayed; // Missed events not yet sent
+        private long skipUpTo; // Live events at or below this were already sent by the replay
+        private volatile boolean heartbeatDue;
+
+        private Subscriber(Map<Long, Set<Subscriber>> registry, Long key, Function<Event, Long> position,
+                           Long lastEventId, LongFunction<List<Event>> replay) {
+            this.registry = registry;
+            this.key = key;
+            this.position = position;
+            this.replay = replay;
+            this.replayFrom = lastEventId;
+            this.catchingUp = lastEventId != null;
+            this.skipUpTo = lastEventId != null ? lastEventId : Long.MIN_VALUE;
+            emitter.onCompletion(this::unregister);
+            emitter.onTimeout(this::close);
+            emitter.onError(error -> close());
+        }
+
+        private void schedule() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    delivery.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    close(); // Shutting down
+                }
+            }
+        }
+
+        private void replay() {
+            if (closed.get()) {
+                return; // Went away while queued
+            }
+            try {
+                replayed = replay.apply(replayFrom);
+            } catch (RuntimeException e) {
+                close(); // The client reconnects and tries again
+                return;
+            }
+            catchingUp = false;
+            schedule();
+        }
+
+        private void drain() {
+            try {
+                if (catchingUp) {
+                    return; // replay() schedules another drain once the missed events are loaded
+                }
+                List<Event> missed = replayed;
+                if (missed != null) {
+                    replayed = null;
+                    for (Event event : missed) {
+                        send(event);
+                        skipUpTo = Math.max(skipUpTo, position.apply(event));
+                    }
+                    if (missed.size() >= maxReplay) {
+                        close(); // More to catch up on: the client reconnects from the last id it received
+                        return;
+                    }
+                }
+                if (heartbeatDue) {
+                    heartbeatDue = false;
+                    emitter.send(SseEmitter.event().comment("keep-alive"));
+                }
+                Event event;
+                while ((event = buffer.poll()) != null) {
+                    if (position.apply(event) > skipUpTo) {
+                        send(event);
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                close(); // Client went away
+            } finally {
+                scheduled.set(false);
+            }
+            if (!catchingUp && (replayed != null || !buffer.isEmpty() || heartbeatDue)) {
+                schedule(); // Something arrived after the last poll
+            }
+        }
+
+        private void send(Event event) throws IOException {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(position.apply(event)))
+                    .name("event")
+                    .data(event, MediaType.APPLICATION_JSON));
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                unregister();
+                emitter.complete();
+            }
+        }
+
+        private void unregister() {
+            closed.set(true);
+            registry.computeIfPresent(key, (k, subscribers) -> {
+                if (subscribers.remove(this)) {
+                    subscriberCount.decrementAndGet();
+                }
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+}
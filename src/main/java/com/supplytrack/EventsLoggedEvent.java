@@ -0,0 +1,8 @@
+package com.supplytrack;
+
+import java.util.List;
+
+// Published by EventService/ProductService for every write that added events to a product's history.
+// Listeners that must only see committed data use @TransactionalEventListener.
+public record EventsLoggedEvent(List<Event> events) {
+}
@@ -0,0 +1,157 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Full dumps for auditors and regulators, as CSV or NDJSON. Bodies are written while the rows are read (see
+// ExportService); gzip is applied by server.compression when the client sends Accept-Encoding: gzip.
+@RestController
+@RequestMapping("/api/export")
+@PreAuthorize("hasRole('ADMIN')") // Exports cover every user's products
+public class ExportController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+
+    private static final String EVENT_CSV_HEADER = "id,product_id,event_type,event_description,timestamp,location,actor_user_id,seq";
+    private static final String PRODUCT_CSV_HEADER = "id,name,origin,current_status,current_location,created_date,owner_user_id,version,last_event_seq";
+
+    private final ExportService exportService;
+    private final ObjectMapper objectMapper;
+
+    public ExportController(ExportService exportService, ObjectMapper objectMapper) {
+        this.exportService = exportService;
+        this.objectMapper = objectMapper;
+    }
+
+    // Successful responses and errors are both declared as StreamingResponseBody (see ProductController.streamProductTrace)
+    // format=ndjson (default) or csv; owner is the product's current owner; from/to bound the event timestamp
+    @GetMapping("/events")
+    public ResponseEntity<StreamingResponseBody> exportEvents(
+            @RequestParam(required = false) Long owner,
+            @RequestParam(required = false) String eventType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportService.EventExportFilter filter = new ExportService.EventExportFilter(owner, eventType, from, to);
+        return export("events", format, (out, csv) -> exportService.exportEvents(filter, csv
+                ? event -> csvRow(out, event.getId(), event.getProductId(), event.getEventType(), event.getEventDescription(),
+                        event.getTimestamp(), event.getLocation(), event.getActorUserId(), event.getSeq())
+                : event -> jsonRow(out, event)), EVENT_CSV_HEADER);
+    }
+
+    // status matches the product's current status; from/to bound the creation date
+    @GetMapping("/products")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(required = false) Long owner,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportService.ProductExportFilter filter = new ExportService.ProductExportFilter(owner, status, from, to);
+        return export("products", format, (out, csv) -> exportService.exportProducts(filter, csv
+                ? product -> csvRow(out, product.getId(), product.getName(), product.getOrigin(), product.getCurrentStatus(),
+                        product.getCurrentLocation(), product.getCreatedDate(), product.getOwnerUserId(), product.getVersion(),
+                        product.getLastEventSeq())
+                : product -> jsonRow(out, product)), PRODUCT_CSV_HEADER);
+    }
+
+    private interface RowSource {
+        void writeTo(Writer out, boolean csv);
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(String name, String format, RowSource rows, String csvHeader) {
+        if (!format.equals("ndjson") && !format.equals("csv")) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "format must be ndjson or csv.");
+        }
+        ExportService.Slot slot = exportService.tryStart();
+        if (slot == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(messageBody("All export slots are busy, retry later."));
+        }
+        boolean csv = format.equals("csv");
+        StreamingResponseBody body = (OutputStream stream) -> {
+            try (slot) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+                if (csv) {
+                    out.write(csvHeader);
+                    out.write('\n');
+                }
+                rows.writeTo(out, csv); // A client that goes away aborts the query and frees the connection
+                out.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? CSV + ";charset=UTF-8" : NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(name + (csv ? ".csv" : ".ndjson")).build().toString())
+                .body(body);
+    }
+
+    // {"message": ...} error body; the successful response is streamed, so errors go the same way
+    private ResponseEntity<StreamingResponseBody> messageResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(messageBody(message));
+    }
+
+    private StreamingResponseBody messageBody(String message) {
+        return out -> out.write(objectMapper.writeValueAsBytes(Map.of("message", message)));
+    }
+
+    private void jsonRow(Writer out, Object row) {
+        try {
+            out.write(objectMapper.writeValueAsString(row));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // RFC 4180: fields with a comma, quote or line break are quoted, quotes doubled; null is an empty field
+    private static void csvRow(Writer out, Object... fields) {
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (fields[i] != null) {
+                    String value = fields[i].toString();
+                    if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                        out.write('"');
+                        out.write(value.replace("\"", "\"\""));
+                        out.write('"');
+                    } else {
+                        out.write(value);
+                    }
+                }
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
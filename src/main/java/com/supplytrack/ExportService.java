@@ -0,0 +1,186 @@
+package com.supplytrack;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Bulk exports for auditors. Rows go from a server-side cursor (bounded fetch size) straight to the consumer,
+// so memory does not depend on the size of the export. Exports run on their own small connection pool and at
+// most pool-size of them run at once, so a long dump never takes a connection from interactive requests.
+@Service
+public class ExportService {
+
+    // All filters are optional; from/to are [from, to)
+    public record EventExportFilter(Long ownerUserId, String eventType, LocalDateTime from, LocalDateTime to) {
+    }
+
+    public record ProductExportFilter(Long ownerUserId, String status, LocalDateTime createdFrom, LocalDateTime createdTo) {
+    }
+
+    private final HikariDataSource exportDataSource;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final EventArchive eventArchive;
+    private final NameDictionary dictionary;
+    private final RowMapper<Event> eventRowMapper;
+    private final RowMapper<Product> productRowMapper;
+    private final Semaphore slots;
+
+    public ExportService(DataSourceProperties dataSourceProperties, EventArchive eventArchive, NameDictionary dictionary,
+                         @Value("${supplytrack.export.pool-size:2}") int poolSize,
+                         @Value("${supplytrack.export.fetch-size:1000}") int fetchSize) {
+        this.exportDataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.exportDataSource.setPoolName("export");
+        this.exportDataSource.setMaximumPoolSize(poolSize);
+        this.exportDataSource.setMinimumIdle(0); // No connections held while nobody exports
+        this.exportDataSource.setReadOnly(true);
+        JdbcTemplate cursorTemplate = new JdbcTemplate(exportDataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(cursorTemplate);
+        // PostgreSQL only uses a cursor (instead of reading the whole result) when autocommit is off
+        this.readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(exportDataSource));
+        this.readOnlyTransaction.setReadOnly(true);
+        this.eventArchive = eventArchive;
+        this.dictionary = dictionary;
+        this.eventRowMapper = EventJdbcRepository.eventRowMapper(dictionary);
+        this.productRowMapper = ProductJdbcRepository.productRowMapper(dictionary);
+        this.slots = new Semaphore(poolSize);
+    }
+
+    // One running export. Callers get one with tryStart() before committing the response and close it when done.
+    public final class Slot implements AutoCloseable {
+        private boolean closed;
+
+        private Slot() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                slots.release();
+            }
+        }
+    }
+
+    // Null when pool-size exports are already running
+    public Slot tryStart() {
+        return slots.tryAcquire() ? new Slot() : null;
+    }
+
+    // Archived months first (segment, then product order), then the events table in id order
+    public void exportEvents(EventExportFilter filter, Consumer<Event> consumer) {
+        Set<Long> ownedProducts = filter.ownerUserId() != null ? findProductIds(filter.ownerUserId()) : null;
+        YearMonth firstMonth = filter.from() != null ? YearMonth.from(filter.from()) : YearMonth.of(1970, 1);
+        YearMonth lastMonth = filter.to() != null ? YearMonth.from(filter.to().minusNanos(1)) : YearMonth.of(9999, 12);
+        eventArchive.forEachInMonths(firstMonth, lastMonth,
+                productId -> ownedProducts == null || ownedProducts.contains(productId),
+                event -> {
+                    if (matches(filter, event)) {
+                        consumer.accept(event);
+                    }
+                });
+
+        StringBuilder sql = new StringBuilder(
+                "SELECT e.id, e.product_id, e.event_type_id, e.event_description, e.timestamp, e.location_id, e.actor_user_id, e.seq FROM events e");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (filter.ownerUserId() != null) {
+            sql.append(" JOIN products p ON p.id = e.product_id AND p.owner_user_id = :ownerUserId");
+            params.addValue("ownerUserId", filter.ownerUserId());
+        }
+        sql.append(" WHERE 1 = 1");
+        if (filter.eventType() != null) {
+            Integer eventTypeId = dictionary.eventTypes().find(filter.eventType());
+            if (eventTypeId == null) {
+                return; // Never logged, so no row in the table can match
+            }
+            sql.append(" AND e.event_type_id = :eventTypeId");
+            params.addValue("eventTypeId", eventTypeId);
+        }
+        if (filter.from() != null) {
+            sql.append(" AND e.timestamp >= :from");
+            params.addValue("from", Timestamp.valueOf(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND e.timestamp < :to");
+            params.addValue("to", Timestamp.valueOf(filter.to()));
+        }
+        Optional<YearMonth> archivedUntil = eventArchive.lastArchivedMonth();
+        if (archivedUntil.isPresent()) {
+            // Rows of an archived month that maintenance has not removed yet were already exported above
+            sql.append(" AND e.timestamp >= :hotFrom");
+            params.addValue("hotFrom", Timestamp.valueOf(archivedUntil.get().plusMonths(1).atDay(1).atStartOfDay()));
+        }
+        sql.append(" ORDER BY e.id"); // Read along the primary key; no sort of the whole result
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), params,
+                rs -> { consumer.accept(eventRowMapper.mapRow(rs, 0)); }));
+    }
+
+    // Products in id order; status matches the current status (the type of the product's latest event)
+    public void exportProducts(ProductExportFilter filter, Consumer<Product> consumer) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(ProductJdbcRepository.PRODUCT_COLUMNS)
+                .append(" FROM products WHERE 1 = 1");
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (filter.ownerUserId() != null) {
+            sql.append(" AND owner_user_id = :ownerUserId");
+            params.addValue("ownerUserId", filter.ownerUserId());
+        }
+        if (filter.status() != null) {
+            Integer statusId = dictionary.eventTypes().find(filter.status());
+            if (statusId == null) {
+                return; // No product has ever had this status
+            }
+            sql.append(" AND current_status_id = :statusId");
+            params.addValue("statusId", statusId);
+        }
+        if (filter.createdFrom() != null) {
+            sql.append(" AND created_date >= :createdFrom");
+            params.addValue("createdFrom", Timestamp.valueOf(filter.createdFrom()));
+        }
+        if (filter.createdTo() != null) {
+            sql.append(" AND created_date < :createdTo");
+            params.addValue("createdTo", Timestamp.valueOf(filter.createdTo()));
+        }
+        sql.append(" ORDER BY id");
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), params,
+                rs -> { consumer.accept(productRowMapper.mapRow(rs, 0)); }));
+    }
+
+    @PreDestroy
+    void close() {
+        exportDataSource.close();
+    }
+
+    // Only needed to filter the archive by owner; the table side joins products instead
+    private Set<Long> findProductIds(Long ownerUserId) {
+        Set<Long> ids = new HashSet<>();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                "SELECT id FROM products WHERE owner_user_id = :ownerUserId",
+                new MapSqlParameterSource("ownerUserId", ownerUserId),
+                rs -> { ids.add(rs.getLong("id")); }));
+        return ids;
+    }
+
+    private static boolean matches(EventExportFilter filter, Event event) {
+        return (filter.eventType() == null || filter.eventType().equals(event.getEventType()))
+                && (filter.from() == null || !event.getTimestamp().isBefore(filter.from()))
+                && (filter.to() == null || event.getTimestamp().isBefore(filter.to()));
+    }
+}
@@ -0,0 +1,100 @@
+package com.supplytrack;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+@Service // Idempotency-Key handling in front of EventService: a retried submission returns the original event
+public class IdempotentEventService {
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    // A key repeated by the same actor for the same product, but with a different event: answered 422, never DUPLICATE
+    public static class KeyReusedException extends IllegalArgumentException {
+        public KeyReusedException(String idempotencyKey) {
+            super("Idempotency-Key " + idempotencyKey + " was already used for a different event.");
+        }
+    }
+
+    private final EventService eventService;
+    private final EventJdbcRepository eventJdbcRepository;
+    // Recent keys -> the event they produced, so most retries are answered without touching the DB
+    private final BoundedTtlMap<EventJdbcRepository.IdempotencyKey, Event> recentKeys;
+
+    public IdempotentEventService(EventService eventService, EventJdbcRepository eventJdbcRepository,
+                                  @Value("${supplytrack.events.idempotency.window:PT10M}") Duration window,
+                                  @Value("${supplytrack.events.idempotency.max-keys:100000}") int maxKeys) {
+        this.eventService = eventService;
+        this.eventJdbcRepository = eventJdbcRepository;
+        this.recentKeys = new BoundedTtlMap<>(window.toNanos(), maxKeys);
+    }
+
+    public Optional<Event> logEvent(String idempotencyKey, Long productId, String eventType, String eventDescription,
+                                    String location, Long actorUserId) {
+        if (idempotencyKey == null) {
+            return eventService.logEvent(productId, eventType, eventDescription, location, actorUserId);
+        }
+        validateKey(idempotencyKey);
+        EventJdbcRepository.IdempotencyKey key = new EventJdbcRepository.IdempotencyKey(productId, actorUserId, idempotencyKey);
+
+        // 1. Seen recently: in-memory window, then the key table (covers restarts and evicted keys)
+        Optional<Event> previous = findPrevious(key);
+        if (previous.isPresent()) {
+            return Optional.of(requireSameEvent(previous.get(), idempotencyKey, eventType, eventDescription, location));
+        }
+
+        // 2. First time: the key row is written in the same transaction as the event
+        try {
+            Optional<Event> logged = eventService.logEvent(productId, eventType, eventDescription, location, actorUserId, idempotencyKey);
+            logged.ifPresent(event -> recentKeys.put(key, event));
+            return logged;
+        } catch (DuplicateKeyException e) {
+            // A concurrent retry with the same key committed first; our transaction was rolled back
+            Event original = findPrevious(key).orElseThrow(() -> e);
+            return Optional.of(requireSameEvent(original, idempotencyKey, eventType, eventDescription, location));
+        }
+    }
+
+    public List<EventService.BatchEventResult> logEvents(List<EventService.BatchEvent> batch) {
+        for (EventService.BatchEvent item : batch) {
+            if (item.getIdempotencyKey() != null) {
+                validateKey(item.getIdempotencyKey());
+            }
+        }
+        try {
+            return eventService.logEvents(batch);
+        } catch (DuplicateKeyException e) {
+            // A concurrent submission applied some of the keys first; the whole batch was rolled back,
+            // and the second attempt reports those items as DUPLICATE
+            return eventService.logEvents(batch);
+        }
+    }
+
+    private Optional<Event> findPrevious(EventJdbcRepository.IdempotencyKey key) {
+        Event cached = recentKeys.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Event> stored = eventJdbcRepository.findByIdempotencyKey(key);
+        stored.ifPresent(event -> recentKeys.put(key, event));
+        return stored;
+    }
+
+    private static Event requireSameEvent(Event original, String idempotencyKey, String eventType, String eventDescription,
+                                          String location) {
+        if (!EventService.isSameEvent(original, eventType, eventDescription, location)) {
+            throw new KeyReusedException(idempotencyKey);
+        }
+        return original;
+    }
+
+    static void validateKey(String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters.");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.supplytrack;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+
+// Caps how many threads may wait on the connection pool at once. With virtual threads nothing else bounds
+// concurrency, and thousands of requests parked in Hikari for connection-timeout each would only turn a
+// busy database into a pile of timeouts; beyond the cap, getConnection fails immediately instead.
+class JdbcAdmissionGuard extends DelegatingDataSource {
+
+    private final Semaphore waiters;
+
+    JdbcAdmissionGuard(DataSource target, int maxWaiting) {
+        super(target);
+        this.waiters = new Semaphore(maxWaiting);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!waiters.tryAcquire()) {
+            throw new SQLTransientConnectionException("Too many requests waiting for a database connection.");
+        }
+        try {
+            return super.getConnection();
+        } finally {
+            waiters.release();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!waiters.tryAcquire()) {
+            throw new SQLTransientConnectionException("Too many requests waiting for a database connection.");
+        }
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            waiters.release();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Sheds requests while the connection pool is congested. Every sample-interval the mean connection wait of the last
+// interval (hikaricp.connections.acquire over all pools but the export pool) is folded into a moving average. Above
+// pool-wait-threshold, reads are refused with a probability that grows with the wait and reaches 1 at twice the
+// threshold; only beyond that are writes refused too, reaching 1 at three times the threshold. So reads are dropped
+// first and writes keep their connections for as long as possible.
+//   supplytrack.loadshed.pool-wait  smoothed pool wait in seconds
+//   supplytrack.loadshed.rejected   refused requests, tagged priority=read|write
+@Component
+public class LoadShedder {
+
+    private static final double SMOOTHING = 0.5; // Weight of the newest sample
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double thresholdNanos;
+    private final Counter readsShed;
+    private final Counter writesShed;
+
+    // Sampler state; only touched by the scheduled sample()
+    private double lastTotalNanos;
+    private long lastCount;
+    private long lastSampleNanos = System.nanoTime();
+
+    private volatile double smoothedWaitNanos;
+
+    public LoadShedder(MeterRegistry meterRegistry,
+                       @Value("${supplytrack.load-shedding.enabled:true}") boolean enabled,
+                       @Value("${supplytrack.load-shedding.pool-wait-threshold:PT0.1S}") Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.thresholdNanos = threshold.toNanos();
+        this.readsShed = Counter.builder("supplytrack.loadshed.rejected").tag("priority", "read").register(meterRegistry);
+        this.writesShed = Counter.builder("supplytrack.loadshed.rejected").tag("priority", "write").register(meterRegistry);
+        Gauge.builder("supplytrack.loadshed.pool-wait", this, shedder -> shedder.smoothedWaitNanos / 1e9)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    // True when this request should be refused now
+    public boolean shouldShed(boolean read) {
+        if (!enabled) {
+            return false;
+        }
+        double overload = smoothedWaitNanos / thresholdNanos;
+        double probability = Math.min(1.0, Math.max(0.0, read ? overload - 1 : overload - 2));
+        if (probability <= 0 || ThreadLocalRandom.current().nextDouble() >= probability) {
+            return false;
+        }
+        (read ? readsShed : writesShed).increment();
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${supplytrack.load-shedding.sample-interval:PT1S}")
+    public void sample() {
+        double totalNanos = 0;
+        long count = 0;
+        for (Timer acquire : meterRegistry.find("hikaricp.connections.acquire").timers()) {
+            if (!"export".equals(acquire.getId().getTag("pool"))) { // Exports queue on purpose, behind their own semaphore
+                totalNanos += acquire.totalTime(TimeUnit.NANOSECONDS);
+                count += acquire.count();
+            }
+        }
+        double pending = meterRegistry.find("hikaricp.connections.pending").gauges().stream()
+                .filter(gauge -> !"export".equals(gauge.getId().getTag("pool")))
+                .mapToDouble(gauge -> gauge.value())
+                .sum();
+        long now = System.nanoTime();
+        recordSample(totalNanos - lastTotalNanos, count - lastCount, pending, now - lastSampleNanos);
+        lastTotalNanos = totalNanos;
+        lastCount = count;
+        lastSampleNanos = now;
+    }
+
+    // Mean wait of the connections handed out during the interval. If threads are waiting and none got a
+    // connection at all, they have waited at least the whole interval.
+    void recordSample(double waitedNanos, long acquired, double pending, long intervalNanos) {
+        double meanWait;
+        if (acquired > 0) {
+            meanWait = Math.max(0, waitedNanos) / acquired;
+        } else {
+            meanWait = pending > 0 ? intervalNanos : 0;
+        }
+        smoothedWaitNanos = SMOOTHING * meanWait + (1 - SMOOTHING) * smoothedWaitNanos;
+    }
+}
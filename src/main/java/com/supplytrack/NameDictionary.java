@@ -0,0 +1,209 @@
+package com.supplytrack;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Integer surrogate keys for the names repeated on every event and product row (V9): event types
+// (events.event_type_id, products.current_status_id) and locations (events.location_id, products.current_location_id).
+// Both dictionaries are read into memory at startup. Mapping a row back to its names is then an array read and
+// resolving a name for a write or a filter one hash lookup; neither allocates. A name this instance has not seen yet
+// costs one query (and an insert if it is new everywhere). Ids are never changed or reused, so they are cached forever.
+// Both are INT: event types and locations are free text from clients, so a SMALLINT range could be used up by one.
+@Component
+public class NameDictionary {
+
+    private final Terms eventTypes;
+    private final Terms locations;
+
+    @Autowired
+    public NameDictionary(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this(new Terms("event_types", jdbcTemplate.getJdbcTemplate(), savepoint(transactionManager)),
+                new Terms("locations", jdbcTemplate.getJdbcTemplate(), savepoint(transactionManager)));
+        eventTypes.loadAll();
+        locations.loadAll();
+    }
+
+    NameDictionary(Terms eventTypes, Terms locations) {
+        this.eventTypes = eventTypes;
+        this.locations = locations;
+    }
+
+    // New names are inserted on the caller's connection, inside a savepoint: writers often hold product row locks,
+    // and waiting for a second pooled connection there could stall on a saturated pool. A collision with another
+    // writer only rolls back the savepoint, not the caller's transaction.
+    private static TransactionTemplate savepoint(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        return template;
+    }
+
+    // Event types, which are also the product statuses
+    public Terms eventTypes() {
+        return eventTypes;
+    }
+
+    public Terms locations() {
+        return locations;
+    }
+
+    // One dictionary table: id -> name in an array indexed by id, name -> id in a concurrent map
+    public static final class Terms {
+
+        private static final int MAX_INSERT_ATTEMPTS = 5;
+
+        private final String table;
+        private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate savepoint;
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[64];
+
+        Terms(String table, JdbcTemplate jdbcTemplate, TransactionTemplate savepoint) {
+            this.table = table;
+            this.jdbcTemplate = jdbcTemplate;
+            this.savepoint = savepoint;
+        }
+
+        // Name of an id read from a row
+        public String name(int id) {
+            String[] current = names;
+            String name = id < current.length ? current[id] : null;
+            return name != null ? name : loadName(id);
+        }
+
+        // Id to store for a name, adding the name on first use
+        public int idOf(String name) {
+            if (name == null) { // What the NOT NULL name columns used to reject
+                throw new DataIntegrityViolationException("A null name cannot be stored in " + table + ".");
+            }
+            Integer id = ids.get(name);
+            if (id == null) {
+                Map<String, Integer> pending = pending(false);
+                id = pending != null ? pending.get(name) : null;
+            }
+            return id != null ? id : add(name);
+        }
+
+        // Id of a name used as a filter, or null when no row can have it
+        public Integer find(String name) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            List<Integer> found = jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE name = ?", Integer.class, name);
+            if (found.isEmpty()) {
+                return null; // Not cached: another instance may add it any time
+            }
+            rememberAfterCommit(found.get(0), name);
+            return found.get(0);
+        }
+
+        public int size() {
+            return ids.size();
+        }
+
+        void loadAll() {
+            jdbcTemplate.query("SELECT id, name FROM " + table, rs -> { remember(rs.getInt("id"), rs.getString("name")); });
+        }
+
+        // Added by another instance after startup, or earlier in the caller's own transaction
+        private synchronized String loadName(int id) {
+            String[] current = names;
+            if (id < current.length && current[id] != null) {
+                return current[id];
+            }
+            List<String> found = jdbcTemplate.queryForList("SELECT name FROM " + table + " WHERE id = ?", String.class, id);
+            if (found.isEmpty()) {
+                throw new IllegalStateException("No " + table + " row with id " + id + ".");
+            }
+            rememberAfterCommit(id, found.get(0));
+            return found.get(0);
+        }
+
+        // Ids come from <table>_id_seq (V10), so concurrent writers never want the same id. Two writers adding the
+        // same name collide on the unique name; the loser waits for the winner's commit and then reads its row.
+        // Not synchronized: a thread waiting on another transaction's uncommitted name must not keep the rest of
+        // the instance from adding names.
+        private int add(String name) {
+            for (int attempt = 1; ; attempt++) {
+                List<Integer> existing = jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE name = ?", Integer.class, name);
+                if (!existing.isEmpty()) {
+                    rememberAfterCommit(existing.get(0), name);
+                    return existing.get(0);
+                }
+                int id = jdbcTemplate.queryForObject("SELECT nextval('" + table + "_id_seq')", Integer.class);
+                try {
+                    savepoint.executeWithoutResult(status ->
+                            jdbcTemplate.update("INSERT INTO " + table + " (id, name) VALUES (?, ?)", id, name));
+                    rememberAfterCommit(id, name);
+                    return id;
+                } catch (DuplicateKeyException e) {
+                    if (attempt == MAX_INSERT_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        // The row is only visible to others, and only safe to cache, once the caller's transaction commits. If it
+        // rolls back, the id may go to another name, and the next use of this one inserts it again. Until then the
+        // name is kept with the transaction, so a retry within the same transaction does not look it up again.
+        private void rememberAfterCommit(int id, String name) {
+            Map<String, Integer> pending = pending(true);
+            if (pending == null) {
+                remember(id, name);
+            } else {
+                pending.put(name, id);
+            }
+        }
+
+        // Names this transaction read or added that are not cached yet; null outside a transaction
+        private Map<String, Integer> pending(boolean create) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Integer> pending = (Map<String, Integer>) TransactionSynchronizationManager.getResource(this);
+            if (pending == null && create) {
+                Map<String, Integer> names = new HashMap<>();
+                TransactionSynchronizationManager.bindResource(this, names);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResource(Terms.this);
+                        if (status == STATUS_COMMITTED) {
+                            names.forEach((name, id) -> remember(id, name));
+                        }
+                    }
+                });
+                pending = names;
+            }
+            return pending;
+        }
+
+        // Writing names back publishes the new entry; a reader that still misses it ends up in loadName
+        synchronized void remember(int id, String name) {
+            String[] current = names;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+            }
+            current[id] = name;
+            names = current;
+            ids.put(name, id);
+        }
+    }
+}
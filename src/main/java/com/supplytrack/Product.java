@@ -1,24 +1,22 @@
 package com.supplytrack;
 
-import org.springframework.data.annotation.Id;
-import org.springframework.data.relational.core.mapping.Table;
-
 import java.time.LocalDateTime; // For timestamps
 
-@Table("products") // Maps this entity to a database table named 'products'
+// A row of the 'products' table (see ProductJdbcRepository)
 public class Product {
 
-    @Id // Marks this field as the primary key
-    private Long id;
+    private Long id; // Primary key
     private String name; // Name of the product (e.g., "Organic Tomatoes")
     private String origin; // Where it originated (e.g., "Farm XYZ, California")
     private String currentStatus; // Current status (e.g., "HARVESTED", "IN_TRANSIT", "AT_RESTAURANT")
     private String currentLocation; // Current physical location (e.g., "Warehouse A", "Restaurant Kitchen")
     private LocalDateTime createdDate; // Timestamp when product was initially created/harvested
     private Long ownerUserId; // ID of the current owner/responsible party (e.g., farmer, distributor, restaurant)
+    private Long version; // Optimistic-locking version, incremented on every status/location/owner change
+    private Long lastEventSeq; // seq of the latest Event logged for this product
 
-    // Constructor for Spring Data JDBC to use when loading from database
-    public Product(Long id, String name, String origin, String currentStatus, String currentLocation, LocalDateTime createdDate, Long ownerUserId) {
+    // Constructor used by ProductJdbcRepository when loading from database
+    public Product(Long id, String name, String origin, String currentStatus, String currentLocation, LocalDateTime createdDate, Long ownerUserId, Long version, Long lastEventSeq) {
         this.id = id;
         this.name = name;
         this.origin = origin;
@@ -26,11 +24,14 @@ public class Product {
         this.currentLocation = currentLocation;
         this.createdDate = createdDate;
         this.ownerUserId = ownerUserId;
+        this.version = version;
+        this.lastEventSeq = lastEventSeq;
     }
 
     // Static factory method for creating NEW Product objects (ID will be generated by DB)
+    // lastEventSeq starts at 1: every product is created together with its initial event
     public static Product createNewProduct(String name, String origin, String currentStatus, String currentLocation, Long ownerUserId) {
-        return new Product(null, name, origin, currentStatus, currentLocation, LocalDateTime.now(), ownerUserId);
+        return new Product(null, name, origin, currentStatus, currentLocation, LocalDateTime.now(), ownerUserId, null, 1L);
     }
 
     // --- Getters and Setters ---
@@ -89,4 +90,20 @@ public class Product {
     public void setOwnerUserId(Long ownerUserId) {
         this.ownerUserId = ownerUserId;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getLastEventSeq() {
+        return lastEventSeq;
+    }
+
+    public void setLastEventSeq(Long lastEventSeq) {
+        this.lastEventSeq = lastEventSeq;
+    }
 }
\ No newline at end of file
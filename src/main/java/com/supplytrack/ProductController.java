@@ -1,21 +1,44 @@
 package com.supplytrack;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize; // NEW IMPORT
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 @RestController
 @RequestMapping("/api/products")
@@ -23,14 +46,58 @@ public class ProductController {
 
     private final ProductService productService;
     private final EventService eventService;
-    private final UserRepository userRepository;
-    private final ProductRepository productRepository;
-
-    public ProductController(ProductService productService, EventService eventService, UserRepository userRepository, ProductRepository productRepository) {
+    private final IdempotentEventService idempotentEventService;
+    private final ProductTraceCache productTraceCache;
+    private final EventStreamHub eventStreamHub;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final Optional<WriteBehindEventPipeline> writeBehindPipeline; // Present when supplytrack.ingest.mode=async
+    private final ObjectMapper objectMapper;
+    private final QrLabelService qrLabelService;
+    private final int maxBatchSize;
+    private final int maxLookupIds;
+    private final int traceBatchChunkSize;
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int DEFAULT_TRACE_PAGE_SIZE = 100;
+    private static final int MAX_TRACE_PAGE_SIZE = 1000;
+    private static final int DEFAULT_PRODUCT_PAGE_SIZE = 50;
+    private static final int MAX_PRODUCT_PAGE_SIZE = 500;
+
+    public ProductController(ProductService productService, EventService eventService,
+                             IdempotentEventService idempotentEventService, ProductTraceCache productTraceCache,
+                             EventStreamHub eventStreamHub, ProductJdbcRepository productJdbcRepository,
+                             Optional<WriteBehindEventPipeline> writeBehindPipeline,
+                             ObjectMapper objectMapper, QrLabelService qrLabelService,
+                             @Value("${supplytrack.events.batch.max-size:5000}") int maxBatchSize,
+                             @Value("${supplytrack.products.lookup.max-ids:5000}") int maxLookupIds,
+                             @Value("${supplytrack.products.traces.chunk-size:100}") int traceBatchChunkSize) {
         this.productService = productService;
         this.eventService = eventService;
-        this.userRepository = userRepository;
-        this.productRepository = productRepository;
+        this.idempotentEventService = idempotentEventService;
+        this.productTraceCache = productTraceCache;
+        this.eventStreamHub = eventStreamHub;
+        this.productJdbcRepository = productJdbcRepository;
+        this.writeBehindPipeline = writeBehindPipeline;
+        this.objectMapper = objectMapper;
+        this.qrLabelService = qrLabelService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLookupIds = maxLookupIds;
+        this.traceBatchChunkSize = traceBatchChunkSize;
+    }
+
+    // DTO for one keyset page of the owner's products; nextCursor is null on the last page
+    public static class ProductPage {
+        private List<Product> products;
+        private String nextCursor;
+
+        public ProductPage(List<Product> products, String nextCursor) {
+            this.products = products;
+            this.nextCursor = nextCursor;
+        }
+
+        // Getters
+        public List<Product> getProducts() { return products; }
+        public String getNextCursor() { return nextCursor; }
     }
 
     // DTO for product creation request
@@ -63,6 +130,21 @@ public class ProductController {
         public void setLocation(String location) { this.location = location; }
     }
 
+    // DTO for one item of a batch event submission (productId plus the usual event fields)
+    public static class BatchEventLogRequest extends EventLogRequest {
+        private Long productId;
+        private Long newOwnerUserId; // Optional: marks the item as a handover to this user
+        private String idempotencyKey; // Optional: same meaning as the Idempotency-Key header, per item
+
+        // Getters and Setters
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        public Long getNewOwnerUserId() { return newOwnerUserId; }
+        public void setNewOwnerUserId(Long newOwnerUserId) { this.newOwnerUserId = newOwnerUserId; }
+        public String getIdempotencyKey() { return idempotencyKey; }
+        public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    }
+
     // DTO for product handover request
     public static class ProductHandoverRequest {
         private Long newOwnerUserId;
@@ -93,25 +175,79 @@ public class ProductController {
         public List<Event> getEventHistory() { return eventHistory; }
     }
 
+    // DTO for a multi-get by product id (lookup and traces:batch); results come back in productIds order
+    public static class ProductLookupRequest {
+        private List<Long> productIds;
+
+        // Getters and Setters
+        public List<Long> getProductIds() { return productIds; }
+        public void setProductIds(List<Long> productIds) { this.productIds = productIds; }
+    }
+
+    // DTO for one keyset page of a product's trace; nextCursor is null on the last page
+    public static class ProductTracePage extends ProductTraceResponse {
+        private String nextCursor;
+
+        public ProductTracePage(Product product, List<Event> eventHistory, String nextCursor) {
+            super(product, eventHistory);
+            this.nextCursor = nextCursor;
+        }
+
+        // Getters
+        public String getNextCursor() { return nextCursor; }
+    }
+
 
     @PostMapping // Handles POST requests to /api/products (creation)
     @PreAuthorize("hasRole('FARMER')") // Only FARMER can create products
     public ResponseEntity<Product> createProduct(
             @RequestBody ProductCreationRequest request,
-            @AuthenticationPrincipal UserDetails currentUser
+            @AuthenticationPrincipal User currentUser
     ) {
-        User user = userRepository.findByUsername(currentUser.getUsername())
-                .orElseThrow(() -> new RuntimeException("Authenticated user not found in DB!"));
-
         Product createdProduct = productService.createProduct(
                 request.getName(),
                 request.getOrigin(),
                 request.getInitialLocation(),
-                user.getId()
+                currentUser.getId()
         );
         return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
     }
 
+    // Bulk creation from a text/csv or application/x-ndjson upload (see ProductImportReader for the row format).
+    // Always 200 once the header could be read: results hold one entry per row, in input order, with the
+    // generated productId/eventId or the reason the row was not created; an upload that breaks off ends with an
+    // UNREAD result. Re-sending the upload with the same Idempotency-Key only creates the rows not created before.
+    @PostMapping(value = "/import", consumes = {"text/csv", NDJSON})
+    @PreAuthorize("hasRole('FARMER')") // Same rule as single creation
+    public ResponseEntity<?> importProducts(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            InputStream body,
+            @AuthenticationPrincipal User currentUser
+    ) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(body,
+                contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8), 64 * 1024);
+        try {
+            if (idempotencyKey != null) {
+                IdempotentEventService.validateKey(idempotencyKey);
+            }
+            ProductImportReader reader = contentType.isCompatibleWith(MediaType.parseMediaType(NDJSON))
+                    ? ProductImportReader.ndjson(in, objectMapper)
+                    : ProductImportReader.csv(in);
+            List<ProductService.ImportResult> results = productService.importProducts(reader, currentUser.getId(), idempotencyKey);
+            long created = results.stream().filter(r -> ProductService.ImportResult.CREATED.equals(r.getStatus())).count();
+            return new ResponseEntity<>(Map.of(
+                    "created", created,
+                    "failed", results.size() - created,
+                    "results", results
+            ), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            return new ResponseEntity<>(Map.of("message", "Could not read the upload: " + e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     // This is public (permitAll in SecurityConfig)
     @GetMapping("/public/test")
     public ResponseEntity<String> publicTest() {
@@ -129,18 +265,21 @@ public class ProductController {
     public ResponseEntity<?> logProductEvent(
             @PathVariable Long productId,
             @RequestBody EventLogRequest request,
-            @AuthenticationPrincipal UserDetails currentUser
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal User currentUser
     ) {
-        User user = userRepository.findByUsername(currentUser.getUsername())
-                .orElseThrow(() -> new RuntimeException("Authenticated user not found in DB!"));
-
+        if (writeBehindPipeline.isPresent()) {
+            return acceptProductEvent(writeBehindPipeline.get(), productId, request, idempotencyKey, currentUser);
+        }
         try {
-            Optional<Event> loggedEvent = eventService.logEvent(
+            // A retry with the same Idempotency-Key returns the originally logged event without writing again
+            Optional<Event> loggedEvent = idempotentEventService.logEvent(
+                    idempotencyKey,
                     productId,
                     request.getEventType(),
                     request.getEventDescription(),
                     request.getLocation(),
-                    user.getId() // Actor is the logged-in user
+                    currentUser.getId() // Actor is the logged-in user
             );
 
             if (loggedEvent.isPresent()) {
@@ -148,6 +287,104 @@ public class ProductController {
             } else {
                 return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found."), HttpStatus.NOT_FOUND);
             }
+        } catch (IdempotentEventService.KeyReusedException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.CONFLICT);
+        } catch (Exception e) {
+            return new ResponseEntity<>(Map.of("message", "An unexpected error occurred: " + e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Async mode: 202 with a ticket once the event is in the durable spool; 429 when the buffer is full.
+    // Product/actor checks happen in the writer, and their outcome is reported on the ticket.
+    private ResponseEntity<?> acceptProductEvent(WriteBehindEventPipeline pipeline, Long productId, EventLogRequest request,
+                                                 String idempotencyKey, User currentUser) {
+        try {
+            String ticket = pipeline.accept(productId, request.getEventType(), request.getEventDescription(),
+                    request.getLocation(), currentUser.getId(), idempotencyKey);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/products/events/tickets/" + ticket))
+                    .body(Map.of("ticket", ticket, "status", "ACCEPTED"));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            return new ResponseEntity<>(Map.of("message", "An unexpected error occurred: " + e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Outcome of an event accepted in async mode: PENDING until the writer has committed it
+    @GetMapping("/events/tickets/{ticket}")
+    public ResponseEntity<?> getEventTicket(@PathVariable String ticket) {
+        if (writeBehindPipeline.isEmpty()) {
+            return new ResponseEntity<>(Map.of("message", "Event tickets are only issued in async ingest mode."), HttpStatus.NOT_FOUND);
+        }
+        Optional<EventService.BatchEventResult> result = writeBehindPipeline.get().getResult(ticket);
+        if (result.isPresent()) {
+            return new ResponseEntity<>(result.get(), HttpStatus.OK);
+        }
+        if (writeBehindPipeline.get().isPending(ticket)) {
+            return new ResponseEntity<>(Map.of("ticket", ticket, "status", "PENDING"), HttpStatus.OK);
+        }
+        return new ResponseEntity<>(Map.of("message", "Ticket " + ticket + " not found or expired."), HttpStatus.NOT_FOUND);
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Items carrying newOwnerUserId are handovers and follow the same FARMER/DISTRIBUTOR rule as /handover
+    @PostMapping("/events:batch")
+    public ResponseEntity<?> logProductEventsBatch(
+            @RequestBody List<BatchEventLogRequest> requests,
+            @AuthenticationPrincipal User currentUser
+    ) {
+        if (requests.size() > maxBatchSize) {
+            return new ResponseEntity<>(Map.of("message", "A batch may contain at most " + maxBatchSize + " events."), HttpStatus.BAD_REQUEST);
+        }
+        boolean mayHandover = currentUser.getAuthorities().stream()
+                .anyMatch(a -> a.getAuthority().equals("ROLE_FARMER") || a.getAuthority().equals("ROLE_DISTRIBUTOR"));
+
+        // Forbidden handovers are answered here; everything else goes to the service in one batch
+        List<EventService.BatchEventResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<EventService.BatchEvent> batch = new ArrayList<>(requests.size());
+        List<Integer> batchPositions = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            BatchEventLogRequest request = requests.get(i);
+            if (request.getNewOwnerUserId() == null) {
+                batch.add(new EventService.BatchEvent(request.getProductId(), request.getEventType(),
+                        request.getEventDescription(), request.getLocation(), currentUser.getId(), request.getIdempotencyKey()));
+            } else if (mayHandover) {
+                batch.add(new EventService.BatchEvent(request.getProductId(),
+                        request.getEventType() != null ? request.getEventType() : "HANDOVER",
+                        request.getEventDescription(), request.getLocation(), request.getNewOwnerUserId(), request.getIdempotencyKey()));
+            } else {
+                results.set(i, new EventService.BatchEventResult(i, request.getProductId(), EventService.BatchEventResult.FORBIDDEN,
+                        null, "Only FARMER or DISTRIBUTOR users can hand over products."));
+                continue;
+            }
+            batchPositions.add(i);
+        }
+
+        try {
+            List<EventService.BatchEventResult> logged = idempotentEventService.logEvents(batch);
+            for (int n = 0; n < logged.size(); n++) {
+                EventService.BatchEventResult result = logged.get(n);
+                int i = batchPositions.get(n);
+                results.set(i, new EventService.BatchEventResult(i, result.getProductId(), result.getStatus(),
+                        result.getEventId(), result.getMessage()));
+            }
+            long created = results.stream().filter(r -> EventService.BatchEventResult.CREATED.equals(r.getStatus())).count();
+            long duplicates = results.stream().filter(r -> EventService.BatchEventResult.DUPLICATE.equals(r.getStatus())).count();
+            return new ResponseEntity<>(Map.of(
+                    "created", created,
+                    "duplicates", duplicates,
+                    "failed", results.size() - created - duplicates,
+                    "results", results
+            ), HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
@@ -161,13 +398,12 @@ public class ProductController {
     public ResponseEntity<?> handoverProduct(
             @PathVariable Long productId,
             @RequestBody ProductHandoverRequest request,
-            @AuthenticationPrincipal UserDetails currentUser
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal User currentUser
     ) {
-        User actingUser = userRepository.findByUsername(currentUser.getUsername())
-                .orElseThrow(() -> new RuntimeException("Authenticated user not found in DB!"));
-
         try {
-            Optional<Event> handoverEvent = eventService.logEvent(
+            Optional<Event> handoverEvent = idempotentEventService.logEvent(
+                    idempotencyKey,
                     productId,
                     "HANDOVER",
                     request.getHandoverDescription(),
@@ -180,50 +416,280 @@ public class ProductController {
             } else {
                 return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found for handover."), HttpStatus.NOT_FOUND);
             }
+        } catch (IdempotentEventService.KeyReusedException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.UNPROCESSABLE_ENTITY);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.CONFLICT);
         } catch (Exception e) {
             return new ResponseEntity<>(Map.of("message", "An unexpected error occurred during handover: " + e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Without limit/cursor the full history is returned; with either, one keyset page plus nextCursor
     @GetMapping("/{productId}/trace")
-    public ResponseEntity<?> getProductTrace(@PathVariable Long productId) {
-        Optional<Product> productOptional = productRepository.findById(productId);
+    public ResponseEntity<?> getProductTrace(
+            @PathVariable Long productId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            WebRequest webRequest
+    ) {
+        // Polling clients send back the ETag; answer 304 from the product's version alone, without loading history
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<Long> version = productTraceCache.peekVersion(productId)
+                    .or(() -> productService.getProductVersion(productId));
+            if (version.isPresent() && webRequest.checkNotModified(traceETag(productId, version.get()))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(traceETag(productId, version.get())).build();
+            }
+        }
+
+        if (limit == null && cursor == null) {
+            // Full history is served through the read-through cache
+            Optional<ProductTraceResponse> response = productTraceCache.get(productId);
+            if (response.isEmpty()) {
+                return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found."), HttpStatus.NOT_FOUND);
+            }
+            // ETag comes from the version that was actually serialized, never from the pre-check above
+            return ResponseEntity.ok().eTag(traceETag(productId, response.get().getProduct().getVersion())).body(response.get());
+        }
+
+        Optional<Product> productOptional = productJdbcRepository.findById(productId);
         if (productOptional.isEmpty()) {
             return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found."), HttpStatus.NOT_FOUND);
         }
         Product product = productOptional.get();
 
-        List<Event> eventHistory = eventService.getEventsForProduct(productId);
+        int pageSize = Math.min(limit != null ? limit : DEFAULT_TRACE_PAGE_SIZE, MAX_TRACE_PAGE_SIZE);
+        if (pageSize < 1) {
+            return new ResponseEntity<>(Map.of("message", "limit must be positive."), HttpStatus.BAD_REQUEST);
+        }
+        try {
+            KeysetCursor after = cursor != null ? KeysetCursor.decode(cursor) : null;
+            List<Event> rows = eventService.getEventPageForProduct(productId, after, pageSize);
+
+            String nextCursor = null;
+            if (rows.size() > pageSize) {
+                rows = rows.subList(0, pageSize);
+                Event last = rows.get(pageSize - 1);
+                nextCursor = new KeysetCursor(last.getTimestamp(), last.getId()).encode();
+            }
+            // Every event bumps the product's version, so (id, version) also identifies any page of the history
+            return ResponseEntity.ok().eTag(traceETag(productId, product.getVersion())).body(new ProductTracePage(product, rows, nextCursor));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Streams the full history as NDJSON (one Event per line) straight from a JDBC cursor
+    // Declared as ResponseEntity<StreamingResponseBody>: Spring only streams when the body type is visible in the signature
+    @GetMapping(value = "/{productId}/trace/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamProductTrace(@PathVariable Long productId) {
+        if (!productJdbcRepository.existsById(productId)) {
+            return messageResponse(HttpStatus.NOT_FOUND, "Product with ID " + productId + " not found.");
+        }
+
+        StreamingResponseBody body = out -> eventService.streamEventsForProduct(productId, event -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(event));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Client went away; aborts the query and releases the connection
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
 
-        ProductTraceResponse response = new ProductTraceResponse(product, eventHistory);
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Multi-get for scanners resolving a whole pallet: one products query for all ids instead of a request per item
+    @PostMapping(value = "/lookup", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> lookupProducts(@RequestBody ProductLookupRequest request) {
+        String invalid = validateLookup(request.getProductIds());
+        if (invalid != null) {
+            return messageResponse(HttpStatus.BAD_REQUEST, invalid);
+        }
+        Map<Long, Product> products = productService.getProducts(new LinkedHashSet<>(request.getProductIds()));
+        return lookupResponse(request.getProductIds(), products, (product, line) -> line.put("product", product));
     }
 
     // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Full traces of many products, supplytrack.products.traces.chunk-size ids at a time: cached traces as they are,
+    // the rest of a chunk from one products query and one events query in its own read-only transaction. A chunk is
+    // written before the next one is read, so only one chunk's histories are ever held, whatever the pallet size.
+    @PostMapping(value = "/traces:batch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> getProductTraces(@RequestBody ProductLookupRequest request) {
+        List<Long> productIds = request.getProductIds();
+        String invalid = validateLookup(productIds);
+        if (invalid != null) {
+            return messageResponse(HttpStatus.BAD_REQUEST, invalid);
+        }
+        StreamingResponseBody body = out -> {
+            for (int from = 0; from < productIds.size(); from += traceBatchChunkSize) {
+                List<Long> chunk = productIds.subList(from, Math.min(from + traceBatchChunkSize, productIds.size()));
+                Map<Long, ProductTraceResponse> traces = productTraceCache.getAll(new LinkedHashSet<>(chunk));
+                writeLookupLines(out, chunk, traces, (trace, line) -> {
+                    line.put("product", trace.getProduct());
+                    line.put("eventHistory", trace.getEventHistory());
+                });
+                out.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Live Server-Sent Events for one product as events are committed. SSE ids are the event's seq; a reconnect
+    // with Last-Event-ID first replays what was missed.
+    @GetMapping(value = "/{productId}/events/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamProductEvents(
+            @PathVariable Long productId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        if (!productJdbcRepository.existsById(productId)) {
+            return messageResponse(HttpStatus.NOT_FOUND, "Product with ID " + productId + " not found.");
+        }
+        try {
+            return ResponseEntity.ok(eventStreamHub.subscribeToProduct(productId, lastEventId));
+        } catch (RejectedExecutionException e) {
+            return messageResponse(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()); // JSON body; text/event-stream has no converter for it
+        }
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Live Server-Sent Events for every product the current user owns after the event (handovers included).
+    // SSE ids are event ids, used for Last-Event-ID resume.
+    @GetMapping(value = "/events/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamOwnerEvents(
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @AuthenticationPrincipal User currentUser
+    ) {
+        try {
+            return ResponseEntity.ok(eventStreamHub.subscribeToOwner(currentUser.getId(), lastEventId));
+        } catch (RejectedExecutionException e) {
+            return messageResponse(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+
+    // This requires authentication (anyRequest().authenticated() in SecurityConfig)
+    // Without paging/filter parameters the full list is returned; with any of them, one keyset page plus nextCursor
     @GetMapping // Handles GET requests to /api/products (no specific product ID)
-    public ResponseEntity<List<Product>> getAllProductsForCurrentUser(
-            @AuthenticationPrincipal UserDetails currentUser
+    public ResponseEntity<?> getAllProductsForCurrentUser(
+            @AuthenticationPrincipal User currentUser,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String location,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            WebRequest webRequest
     ) {
-        User user = userRepository.findByUsername(currentUser.getUsername())
-                .orElseThrow(() -> new RuntimeException("Authenticated user not found in DB!"));
+        // Any page or filter of the list is a function of the owner's products and their state, and every write to
+        // them moves the owner's list version (ProductJdbcRepository.findListVersion), so it validates them all.
+        // Read before the list and in the same read-only transaction (ProductService.readOwnerList): if a write
+        // lands in between, the ETag is older than the body and the next poll just gets a 200 again.
+        return productService.readOwnerList(currentUser.getId(), listVersion -> {
+            String eTag = "\"products-" + currentUser.getId() + "-" + listVersion + "\"";
+            if (webRequest.checkNotModified(eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            return productList(currentUser, status, location, createdFrom, createdTo, sort, limit, cursor, eTag);
+        });
+    }
 
-        List<Product> products = productRepository.findByOwnerUserId(user.getId());
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    private ResponseEntity<?> productList(User currentUser, String status, String location, LocalDateTime createdFrom,
+                                          LocalDateTime createdTo, String sort, Integer limit, String cursor, String eTag) {
+        boolean paged = status != null || location != null || createdFrom != null || createdTo != null
+                || sort != null || limit != null || cursor != null;
+        if (!paged) {
+            List<Product> products = productJdbcRepository.findByOwnerUserId(currentUser.getId());
+            return ResponseEntity.ok().eTag(eTag).body(products);
+        }
+
+        // sort=createdDate,asc (default) or sort=createdDate,desc
+        if (sort != null && !sort.equals("createdDate") && !sort.equals("createdDate,asc") && !sort.equals("createdDate,desc")) {
+            return new ResponseEntity<>(Map.of("message", "sort must be createdDate,asc or createdDate,desc."), HttpStatus.BAD_REQUEST);
+        }
+        boolean descending = "createdDate,desc".equals(sort);
+        int pageSize = Math.min(limit != null ? limit : DEFAULT_PRODUCT_PAGE_SIZE, MAX_PRODUCT_PAGE_SIZE);
+        if (pageSize < 1) {
+            return new ResponseEntity<>(Map.of("message", "limit must be positive."), HttpStatus.BAD_REQUEST);
+        }
+        try {
+            KeysetCursor after = cursor != null ? KeysetCursor.decode(cursor) : null;
+            ProductJdbcRepository.ProductFilter filter = new ProductJdbcRepository.ProductFilter(status, location, createdFrom, createdTo);
+            List<Product> rows = productService.getProductPageForOwner(currentUser.getId(), filter, descending, after, pageSize);
+
+            String nextCursor = null;
+            if (rows.size() > pageSize) {
+                rows = rows.subList(0, pageSize);
+                Product last = rows.get(pageSize - 1);
+                nextCursor = new KeysetCursor(last.getCreatedDate(), last.getId()).encode();
+            }
+            return ResponseEntity.ok().eTag(eTag).body(new ProductPage(rows, nextCursor));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("message", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // {"message": ...} error body for endpoints whose successful response is streamed
+    private ResponseEntity<StreamingResponseBody> messageResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(objectMapper.writeValueAsBytes(Map.of("message", message))));
+    }
+
+    private String validateLookup(List<Long> productIds) {
+        if (productIds == null || productIds.isEmpty() || productIds.contains(null)) {
+            return "productIds must list at least one product id.";
+        }
+        if (productIds.size() > maxLookupIds) {
+            return "A lookup may contain at most " + maxLookupIds + " product ids.";
+        }
+        return null;
+    }
+
+    // One NDJSON line per requested id, in request order and repeated for repeated ids: {"productId", "found": true,
+    // ...fields} for the ids in found, {"productId", "found": false} for the others. Everything is read before the
+    // first line is written, so no connection is held while a slow client drains the response.
+    private <T> ResponseEntity<StreamingResponseBody> lookupResponse(List<Long> productIds, Map<Long, T> found,
+                                                                     BiConsumer<T, Map<String, Object>> fields) {
+        StreamingResponseBody body = out -> writeLookupLines(out, productIds, found, fields);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private <T> void writeLookupLines(OutputStream out, List<Long> productIds, Map<Long, T> found,
+                                      BiConsumer<T, Map<String, Object>> fields) throws IOException {
+        for (Long productId : productIds) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("productId", productId);
+            T value = found.get(productId);
+            line.put("found", value != null);
+            if (value != null) {
+                fields.accept(value, line);
+            }
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+        }
+    }
+
+    // Strong ETag of a product's trace: every logged event bumps the product's version
+    private static String traceETag(Long productId, long version) {
+        return "\"trace-" + productId + "-" + version + "\"";
     }
 
     // This requires authentication (anyRequest().authenticated() in SecurityConfig)
     @GetMapping("/{productId}/qrcode-data")
     public ResponseEntity<?> getProductQrCodeData(@PathVariable Long productId) {
-        Optional<Product> productOptional = productRepository.findById(productId);
-        if (productOptional.isEmpty()) {
+        // Existence check reads the version column only; loading (and caching) the whole trace is not needed
+        if (productService.getProductVersion(productId).isEmpty()) {
             return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found."), HttpStatus.NOT_FOUND);
         }
 
         String qrData = String.valueOf(productId);
 
-        return new ResponseEntity<>(Map.of("qrCodeData", qrData), HttpStatus.OK);
+        // payload is what server-rendered labels encode (GET /{productId}/qrcode); it verifies without a lookup
+        return new ResponseEntity<>(Map.of("qrCodeData", qrData, "payload", qrLabelService.payload(productId)), HttpStatus.OK);
     }
 }
\ No newline at end of file
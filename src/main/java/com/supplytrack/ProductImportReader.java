@@ -0,0 +1,175 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Reads a bulk product import one row at a time, so an upload is never held in memory as a whole.
+// CSV needs a header naming the name, origin and initialLocation columns (any order, extra columns ignored);
+// NDJSON is one {"name", "origin", "initialLocation"} object per line. A row that cannot be read is returned
+// with an error instead of ending the import.
+abstract class ProductImportReader {
+
+    // Longer rows are reported as invalid; their content is skipped rather than buffered
+    static final int MAX_ROW_LENGTH = 64 * 1024;
+
+    private int nextIndex;
+
+    // Null at the end of the upload
+    abstract ProductService.ImportRow next() throws IOException;
+
+    // Index the next row will get; after an IOException, the row that could not be read
+    int nextIndex() {
+        return nextIndex;
+    }
+
+    ProductService.ImportRow row(String name, String origin, String initialLocation) {
+        return new ProductService.ImportRow(nextIndex++, name, origin, initialLocation, null);
+    }
+
+    ProductService.ImportRow invalidRow(String error) {
+        return new ProductService.ImportRow(nextIndex++, null, null, null, error);
+    }
+
+    // Throws IllegalArgumentException when the header lacks one of the required columns
+    static ProductImportReader csv(BufferedReader in) throws IOException {
+        return new Csv(in);
+    }
+
+    static ProductImportReader ndjson(BufferedReader in, ObjectMapper objectMapper) {
+        return new Ndjson(in, objectMapper);
+    }
+
+    private static final class Csv extends ProductImportReader {
+        private final BufferedReader in;
+        private final int nameColumn;
+        private final int originColumn;
+        private final int locationColumn;
+        private boolean tooLong;
+
+        Csv(BufferedReader in) throws IOException {
+            this.in = in;
+            List<String> header = readRecord();
+            if (header == null) {
+                throw new IllegalArgumentException("The CSV upload is empty; expected a header with name,origin,initialLocation.");
+            }
+            List<String> columns = header.stream().map(c -> c.trim().toLowerCase(Locale.ROOT)).toList();
+            this.nameColumn = columns.indexOf("name");
+            this.originColumn = columns.indexOf("origin");
+            this.locationColumn = columns.indexOf("initiallocation");
+            if (nameColumn < 0 || originColumn < 0 || locationColumn < 0) {
+                throw new IllegalArgumentException("The CSV header must name the columns name, origin and initialLocation.");
+            }
+        }
+
+        @Override
+        ProductService.ImportRow next() throws IOException {
+            List<String> record;
+            do {
+                record = readRecord();
+                if (record == null) {
+                    return null;
+                }
+            } while (record.size() == 1 && record.get(0).isEmpty() && !tooLong); // Blank line
+            if (tooLong) {
+                return invalidRow("Row is longer than " + MAX_ROW_LENGTH + " characters.");
+            }
+            return row(field(record, nameColumn), field(record, originColumn), field(record, locationColumn));
+        }
+
+        private static String field(List<String> record, int column) {
+            return column < record.size() ? record.get(column) : null;
+        }
+
+        // One RFC 4180 record: quoted fields may contain commas, doubled quotes and line breaks; null at end of input
+        private List<String> readRecord() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            int length = 0;
+            boolean quoted = false;
+            boolean any = false;
+            tooLong = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            c = '"'; // Escaped quote
+                        } else {
+                            in.reset();
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                    continue;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    continue;
+                } else if (c == '\r') {
+                    continue;
+                } else if (c == '\n') {
+                    break;
+                }
+                if (++length > MAX_ROW_LENGTH) {
+                    tooLong = true; // Keep consuming up to the end of the record, without keeping it
+                } else {
+                    field.append((char) c);
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static final class Ndjson extends ProductImportReader {
+        private final BufferedReader in;
+        private final ObjectMapper objectMapper;
+
+        Ndjson(BufferedReader in, ObjectMapper objectMapper) {
+            this.in = in;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        ProductService.ImportRow next() throws IOException {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            if (line.length() > MAX_ROW_LENGTH) {
+                return invalidRow("Row is longer than " + MAX_ROW_LENGTH + " characters.");
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                if (!node.isObject()) {
+                    return invalidRow("Row is not a JSON object.");
+                }
+                return row(text(node, "name"), text(node, "origin"), text(node, "initialLocation"));
+            } catch (JsonProcessingException e) {
+                return invalidRow("Row is not valid JSON: " + e.getOriginalMessage());
+            }
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.supplytrack;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Timed(value = "supplytrack.jdbc.repository", description = "Hand-written JDBC repository calls") // Tagged by class and method
+@Repository // All product reads and writes; statuses and locations are stored as NameDictionary ids
+public class ProductJdbcRepository {
+
+    // Status and location are NameDictionary ids (V9); productRowMapper turns them back into names
+    static final String PRODUCT_COLUMNS =
+            "id, name, origin, current_status_id, current_location_id, created_date, owner_user_id, version, last_event_seq";
+
+    static RowMapper<Product> productRowMapper(NameDictionary dictionary) {
+        NameDictionary.Terms eventTypes = dictionary.eventTypes();
+        NameDictionary.Terms locations = dictionary.locations();
+        return (rs, rowNum) -> new Product(
+                rs.getLong("id"),
+                rs.getString("name"),
+                rs.getString("origin"),
+                eventTypes.name(rs.getInt("current_status_id")),
+                locations.name(rs.getInt("current_location_id")),
+                rs.getTimestamp("created_date").toLocalDateTime(),
+                rs.getLong("owner_user_id"),
+                rs.getLong("version"),
+                rs.getLong("last_event_seq")
+        );
+    }
+
+    // Package-private so SchemaIndexTests can check its plan
+    static final String SELECT_BY_OWNER =
+            "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE owner_user_id = :ownerUserId";
+
+    // Owner list versions are striped by product id (V15), so writes to different products of one owner rarely
+    // wait on the same row
+    static final int LIST_VERSION_STRIPES = 16;
+
+    // Validator of an owner's product list: the sum of its stripes, at most LIST_VERSION_STRIPES primary-key rows
+    // whatever the number of products. Every committed write adds one, so the sum never repeats.
+    static final String SELECT_LIST_VERSION =
+            "SELECT COALESCE(SUM(version), 0) FROM product_list_versions WHERE owner_user_id = :id";
+
+    private static final String BUMP_LIST_VERSION =
+            "UPDATE product_list_versions SET version = version + 1 WHERE owner_user_id = :ownerUserId AND stripe = :stripe";
+
+    // First write to a stripe; a concurrent first write makes this a no-op, and the UPDATE is repeated
+    private static final String INSERT_LIST_VERSION =
+            "INSERT INTO product_list_versions (owner_user_id, stripe, version) VALUES (:ownerUserId, :stripe, 1) " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String INSERT_PRODUCT =
+            "INSERT INTO products (name, origin, current_status_id, current_location_id, created_date, owner_user_id, version, last_event_seq) " +
+            "VALUES (:name, :origin, :currentStatusId, :currentLocationId, :createdDate, :ownerUserId, 0, :lastEventSeq)";
+
+    // A row of an import sent with an Idempotency-Key, and what it created (V13)
+    public record ImportedRow(int rowIndex, long productId, long eventId) {
+    }
+
+    // Stripe of an owner's list version that writes to the given product bump
+    public record ListStripe(long ownerUserId, int stripe) {
+
+        static final Comparator<ListStripe> LOCK_ORDER =
+                Comparator.comparingLong(ListStripe::ownerUserId).thenComparingInt(ListStripe::stripe);
+
+        public static ListStripe of(long ownerUserId, long productId) {
+            return new ListStripe(ownerUserId, (int) Math.floorMod(productId, LIST_VERSION_STRIPES));
+        }
+    }
+
+    // Optional filters for an owner's product list; null means "don't filter"
+    public record ProductFilter(String status, String location, LocalDateTime createdFrom, LocalDateTime createdTo) {
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NameDictionary dictionary;
+    private final RowMapper<Product> productRowMapper;
+
+    public ProductJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate, NameDictionary dictionary) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+        this.productRowMapper = productRowMapper(dictionary);
+    }
+
+    @Transactional(readOnly = true) // Read-only transactions may be served by a read replica (ReadReplicaConfig)
+    public Optional<Product> findById(Long productId) {
+        List<Product> rows = jdbcTemplate.query("SELECT " + PRODUCT_COLUMNS + " FROM products WHERE id = :id",
+                new MapSqlParameterSource("id", productId), productRowMapper);
+        return rows.stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public boolean existsById(Long productId) {
+        return !jdbcTemplate.queryForList("SELECT id FROM products WHERE id = :id",
+                new MapSqlParameterSource("id", productId), Long.class).isEmpty();
+    }
+
+    // Multi-get by primary key in one query; ids without a product are simply absent, in no particular order
+    @Transactional(readOnly = true)
+    public List<Product> findAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("SELECT " + PRODUCT_COLUMNS + " FROM products WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids), productRowMapper);
+    }
+
+    // Every product currently owned by the user (idx_products_owner_created)
+    @Transactional(readOnly = true)
+    public List<Product> findByOwnerUserId(Long ownerUserId) {
+        return jdbcTemplate.query(SELECT_BY_OWNER, new MapSqlParameterSource("ownerUserId", ownerUserId), productRowMapper);
+    }
+
+    // Current version of one product, without touching its events
+    public Optional<Long> findVersionById(Long productId) {
+        List<Long> rows = jdbcTemplate.queryForList("SELECT version FROM products WHERE id = :id",
+                new MapSqlParameterSource("id", productId), Long.class);
+        return rows.stream().findFirst();
+    }
+
+    // See SELECT_LIST_VERSION
+    public long findListVersion(Long ownerUserId) {
+        return jdbcTemplate.queryForObject(SELECT_LIST_VERSION, new MapSqlParameterSource("id", ownerUserId), Long.class);
+    }
+
+    // Called in the same transaction as every write to a product, after the product rows are written or locked, with
+    // the stripe of every owner whose list the write changes (the owner after it, and the one before a handover).
+    // Stripes are updated in (owner, stripe) order, so two writers bumping the same stripes cannot deadlock.
+    public void bumpListVersions(Collection<ListStripe> stripes) {
+        if (stripes.isEmpty()) {
+            return;
+        }
+        TreeSet<ListStripe> ordered = new TreeSet<>(ListStripe.LOCK_ORDER);
+        ordered.addAll(stripes);
+        // One stripe after the other, never batched: a stripe's first write inserts its row, and that must also
+        // happen in lock order
+        for (ListStripe stripe : ordered) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("ownerUserId", stripe.ownerUserId())
+                    .addValue("stripe", stripe.stripe());
+            if (jdbcTemplate.update(BUMP_LIST_VERSION, params) == 0 && jdbcTemplate.update(INSERT_LIST_VERSION, params) == 0) {
+                jdbcTemplate.update(BUMP_LIST_VERSION, params);
+            }
+        }
+    }
+
+    // Which of the given ids exist, from the primary key alone
+    public List<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList("SELECT id FROM products WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids), Long.class);
+    }
+
+    // Loads and row-locks the given products (in id order, so concurrent batches can't deadlock)
+    public List<Product> lockAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(
+                "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE id IN (:ids) ORDER BY id FOR UPDATE",
+                new MapSqlParameterSource("ids", ids),
+                productRowMapper);
+    }
+
+    // Keyset page of an owner's products ordered by (created_date, id). Each filter combination
+    // matches an (owner_user_id[, current_status_id | current_location_id], created_date, id) index,
+    // so the cost of a page does not depend on how deep the cursor is.
+    public List<Product> findPageForOwner(Long ownerUserId, ProductFilter filter, boolean descending,
+                                          KeysetCursor after, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(PRODUCT_COLUMNS)
+                .append(" FROM products WHERE owner_user_id = :ownerUserId");
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ownerUserId", ownerUserId)
+                .addValue("limit", limit);
+
+        if (filter.status() != null) {
+            Integer statusId = dictionary.eventTypes().find(filter.status());
+            if (statusId == null) {
+                return List.of(); // No product has ever had this status
+            }
+            sql.append(" AND current_status_id = :statusId");
+            params.addValue("statusId", statusId);
+        }
+        if (filter.location() != null) {
+            Integer locationId = dictionary.locations().find(filter.location());
+            if (locationId == null) {
+                return List.of();
+            }
+            sql.append(" AND current_location_id = :locationId");
+            params.addValue("locationId", locationId);
+        }
+        if (filter.createdFrom() != null) {
+            sql.append(" AND created_date >= :createdFrom");
+            params.addValue("createdFrom", Timestamp.valueOf(filter.createdFrom()));
+        }
+        if (filter.createdTo() != null) {
+            sql.append(" AND created_date < :createdTo");
+            params.addValue("createdTo", Timestamp.valueOf(filter.createdTo()));
+        }
+        if (after != null) {
+            sql.append(descending ? " AND (created_date, id) < (:afterCreated, :afterId)"
+                                  : " AND (created_date, id) > (:afterCreated, :afterId)");
+            params.addValue("afterCreated", Timestamp.valueOf(after.timestamp()))
+                    .addValue("afterId", after.id());
+        }
+        sql.append(descending ? " ORDER BY created_date DESC, id DESC" : " ORDER BY created_date, id")
+                .append(" LIMIT :limit");
+
+        return jdbcTemplate.query(sql.toString(), params, productRowMapper);
+    }
+
+    // Inserts new products as one JDBC batch and copies the generated ids (and the initial version 0) back
+    public void insertAll(List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("name", product.getName())
+                    .addValue("origin", product.getOrigin())
+                    .addValue("currentStatusId", dictionary.eventTypes().idOf(product.getCurrentStatus()))
+                    .addValue("currentLocationId", dictionary.locations().idOf(product.getCurrentLocation()))
+                    .addValue("createdDate", Timestamp.valueOf(product.getCreatedDate()))
+                    .addValue("ownerUserId", product.getOwnerUserId())
+                    .addValue("lastEventSeq", product.getLastEventSeq());
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT, batch, keyHolder, new String[]{"id"});
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < products.size(); i++) {
+            // Only "id" was requested, so each key map holds exactly one value (label case varies by driver)
+            products.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            products.get(i).setVersion(0L);
+        }
+    }
+
+    // Rows of the given import that an earlier attempt already stored, by row index
+    public Map<Integer, ImportedRow> findImportedRows(Long ownerUserId, String importKey, Collection<Integer> rowIndexes) {
+        if (rowIndexes.isEmpty()) {
+            return Map.of();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ownerUserId", ownerUserId)
+                .addValue("importKey", importKey)
+                .addValue("rowIndexes", rowIndexes);
+        return jdbcTemplate.query("SELECT row_index, product_id, event_id FROM product_import_rows " +
+                        "WHERE owner_user_id = :ownerUserId AND import_key = :importKey AND row_index IN (:rowIndexes)", params,
+                (rs, rowNum) -> new ImportedRow(rs.getInt("row_index"), rs.getLong("product_id"), rs.getLong("event_id")))
+                .stream().collect(Collectors.toMap(ImportedRow::rowIndex, row -> row));
+    }
+
+    // Same transaction as the products and events of the rows; a concurrent attempt with the same key fails on the primary key
+    public void insertImportedRows(Long ownerUserId, String importKey, List<ImportedRow> rows) {
+        SqlParameterSource[] batch = new SqlParameterSource[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("ownerUserId", ownerUserId)
+                    .addValue("importKey", importKey)
+                    .addValue("rowIndex", rows.get(i).rowIndex())
+                    .addValue("productId", rows.get(i).productId())
+                    .addValue("eventId", rows.get(i).eventId());
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO product_import_rows (owner_user_id, import_key, row_index, product_id, event_id) " +
+                "VALUES (:ownerUserId, :importKey, :rowIndex, :productId, :eventId)", batch);
+    }
+}
@@ -1,36 +1,264 @@
 package com.supplytrack;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 @Service // Marks this class as a Spring service component
 public class ProductService {
 
-    private final ProductRepository productRepository;
-    private final EventRepository eventRepository; // Will use this later for initial event logging
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+
+    private static final int MAX_FIELD_LENGTH = 255; // VARCHAR(255) columns of products
+
+    private final ProductJdbcRepository productJdbcRepository;
+    private final EventJdbcRepository eventJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int importChunkSize;
+    private final int importMaxRows;
+
+    public ProductService(ProductJdbcRepository productJdbcRepository, EventJdbcRepository eventJdbcRepository,
+                          ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                          @Value("${supplytrack.products.import.chunk-size:1000}") int importChunkSize,
+                          @Value("${supplytrack.products.import.max-rows:100000}") int importMaxRows) {
+        this.productJdbcRepository = productJdbcRepository;
+        this.eventJdbcRepository = eventJdbcRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.importChunkSize = importChunkSize;
+        this.importMaxRows = importMaxRows;
+    }
+
+    // One row of a bulk import; index is its position among the data rows (0-based), error is set when it could not be read
+    public record ImportRow(int index, String name, String origin, String initialLocation, String error) {
+    }
+
+    // Outcome of one import row, in input order
+    public static class ImportResult {
+        public static final String CREATED = "CREATED";
+        public static final String INVALID = "INVALID";
+        public static final String FAILED = "FAILED"; // The row was valid but its chunk could not be stored
+        public static final String UNREAD = "UNREAD"; // Reading the upload failed here; this and later rows were not seen
+
+        private final int index;
+        private final String status;
+        private final Long productId;
+        private final Long eventId;
+        private final String message;
 
-    public ProductService(ProductRepository productRepository, EventRepository eventRepository) {
-        this.productRepository = productRepository;
-        this.eventRepository = eventRepository;
+        public ImportResult(int index, String status, Long productId, Long eventId, String message) {
+            this.index = index;
+            this.status = status;
+            this.productId = productId;
+            this.eventId = eventId;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public String getStatus() { return status; }
+        public Long getProductId() { return productId; }
+        public Long getEventId() { return eventId; }
+        public String getMessage() { return message; }
     }
 
     @Transactional // Ensures methods are executed within a database transaction
     public Product createProduct(String name, String origin, String initialLocation, Long ownerUserId) {
         // Create the new product
         Product newProduct = Product.createNewProduct(name, origin, "HARVESTED", initialLocation, ownerUserId);
-        Product savedProduct = productRepository.save(newProduct);
+        productJdbcRepository.insertAll(List.of(newProduct));
+        productJdbcRepository.bumpListVersions(List.of(ProductJdbcRepository.ListStripe.of(ownerUserId, newProduct.getId())));
 
         // Log the initial "HARVESTED" event for the product
         Event initialEvent = Event.createNewEvent(
-                savedProduct.getId(),
+                newProduct.getId(),
                 "HARVESTED",
                 "Product initially harvested and created.",
                 initialLocation,
-                ownerUserId
+                ownerUserId,
+                1L // First event of the product's history
         );
-        eventRepository.save(initialEvent);
+        eventJdbcRepository.insert(initialEvent);
+        eventPublisher.publishEvent(new EventsLoggedEvent(List.of(initialEvent)));
+
+        return newProduct;
+    }
+
+    // Bulk import: rows are read and validated one at a time and written in chunks of importChunkSize, each chunk
+    // one transaction with one batched INSERT for the products and one for their HARVESTED events. An invalid row
+    // or a failed chunk is reported in its results and the import goes on; chunks already committed stay.
+    // If the upload cannot be read to the end (e.g. the client disconnects), the rows read so far are still stored
+    // and the last result is UNREAD at the row where reading stopped. With an import key (Idempotency-Key), rows an
+    // earlier attempt with the same key stored are reported CREATED with their original ids, not created again,
+    // so an interrupted upload can simply be sent again in full.
+    public List<ImportResult> importProducts(ProductImportReader reader, Long ownerUserId, String importKey) {
+        List<ImportResult> results = new ArrayList<>();
+        List<ImportRow> chunk = new ArrayList<>(importChunkSize);
+        while (true) {
+            ImportRow row;
+            try {
+                row = reader.next();
+            } catch (IOException e) {
+                log.info("Import for user {} stopped at row {}: {}", ownerUserId, reader.nextIndex(), e.toString());
+                results.add(new ImportResult(reader.nextIndex(), ImportResult.UNREAD, null, null,
+                        "The upload could not be read from this row on: " + e.getMessage()));
+                break;
+            }
+            if (row == null) {
+                break;
+            }
+            if (row.index() >= importMaxRows) {
+                results.add(new ImportResult(row.index(), ImportResult.INVALID, null, null,
+                        "An import may contain at most " + importMaxRows + " rows; this row and the rest of the upload were not read."));
+                break;
+            }
+            String error = row.error() != null ? row.error() : validate(row);
+            if (error != null) {
+                results.add(new ImportResult(row.index(), ImportResult.INVALID, null, null, error));
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() == importChunkSize) {
+                importChunk(chunk, ownerUserId, importKey, results);
+                chunk.clear();
+            }
+        }
+        importChunk(chunk, ownerUserId, importKey, results);
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex())); // Invalid rows were reported ahead of their chunk
+        return results;
+    }
+
+    private void importChunk(List<ImportRow> chunk, Long ownerUserId, String importKey, List<ImportResult> results) {
+        if (importKey != null && !chunk.isEmpty()) {
+            Map<Integer, ProductJdbcRepository.ImportedRow> earlier = productJdbcRepository.findImportedRows(
+                    ownerUserId, importKey, chunk.stream().map(ImportRow::index).toList());
+            List<ImportRow> remaining = new ArrayList<>(chunk.size() - earlier.size());
+            for (ImportRow row : chunk) {
+                ProductJdbcRepository.ImportedRow imported = earlier.get(row.index());
+                if (imported != null) {
+                    results.add(new ImportResult(row.index(), ImportResult.CREATED, imported.productId(), imported.eventId(), null));
+                } else {
+                    remaining.add(row);
+                }
+            }
+            chunk = remaining;
+        }
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Product> products = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            products.add(Product.createNewProduct(row.name(), row.origin(), "HARVESTED", row.initialLocation(), ownerUserId));
+        }
+        List<Event> events = new ArrayList<>(chunk.size());
+        List<ImportRow> stored = chunk;
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                productJdbcRepository.insertAll(products);
+                productJdbcRepository.bumpListVersions(products.stream()
+                        .map(product -> ProductJdbcRepository.ListStripe.of(ownerUserId, product.getId()))
+                        .toList());
+                for (Product product : products) {
+                    events.add(Event.createNewEvent(product.getId(), "HARVESTED", "Product initially harvested and created.",
+                            product.getCurrentLocation(), ownerUserId, 1L));
+                }
+                eventJdbcRepository.insertAll(events);
+                if (importKey != null) {
+                    List<ProductJdbcRepository.ImportedRow> imported = new ArrayList<>(stored.size());
+                    for (int i = 0; i < stored.size(); i++) {
+                        imported.add(new ProductJdbcRepository.ImportedRow(stored.get(i).index(), products.get(i).getId(), events.get(i).getId()));
+                    }
+                    productJdbcRepository.insertImportedRows(ownerUserId, importKey, imported);
+                }
+                eventPublisher.publishEvent(new EventsLoggedEvent(events));
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not store {} imported products for user {}", chunk.size(), ownerUserId, e);
+            for (ImportRow row : chunk) {
+                results.add(new ImportResult(row.index(), ImportResult.FAILED, null, null,
+                        "Could not be stored: " + e.getMostSpecificCause().getMessage()));
+            }
+            return;
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            results.add(new ImportResult(chunk.get(i).index(), ImportResult.CREATED, products.get(i).getId(), events.get(i).getId(), null));
+        }
+    }
+
+    private static String validate(ImportRow row) {
+        String error = validateField("name", row.name());
+        if (error == null) error = validateField("origin", row.origin());
+        if (error == null) error = validateField("initialLocation", row.initialLocation());
+        return error;
+    }
+
+    private static String validateField(String field, String value) {
+        if (value == null || value.isBlank()) {
+            return field + " is required.";
+        }
+        if (value.length() > MAX_FIELD_LENGTH) {
+            return field + " is longer than " + MAX_FIELD_LENGTH + " characters.";
+        }
+        return null;
+    }
+
+    // Cheap validators for conditional GETs: neither loads events or product lists
+    @Transactional(readOnly = true) // Read-only transactions may be served by a read replica (ReadReplicaConfig)
+    public Optional<Long> getProductVersion(Long productId) {
+        return productJdbcRepository.findVersionById(productId);
+    }
+
+    // The list version and whatever the reader loads with it share one read-only transaction, so with read replicas
+    // both come from the same database. In two transactions they could come from replicas that lag by different
+    // amounts, and a new version paired with a stale list would answer later polls with 304 until the next write.
+    @Transactional(readOnly = true)
+    public <T> T readOwnerList(Long ownerUserId, Function<Long, T> reader) {
+        return reader.apply(productJdbcRepository.findListVersion(ownerUserId));
+    }
+
+    // Ids among the given ones that name no product, in input order; checked 1000 ids per query
+    @Transactional(readOnly = true)
+    public List<Long> findMissingProductIds(List<Long> productIds) {
+        Set<Long> existing = new HashSet<>();
+        for (int start = 0; start < productIds.size(); start += 1000) {
+            existing.addAll(productJdbcRepository.findExistingIds(productIds.subList(start, Math.min(start + 1000, productIds.size()))));
+        }
+        return productIds.stream().filter(id -> !existing.contains(id)).toList();
+    }
+
+    // Multi-get by id in one query (POST /api/products/lookup); ids without a product are absent from the map
+    @Transactional(readOnly = true)
+    public Map<Long, Product> getProducts(Collection<Long> productIds) {
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productJdbcRepository.findAllById(productIds)) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
 
-        return savedProduct;
+    // One keyset page of an owner's products. Returns up to limit + 1 rows: the extra row only
+    // signals that another page exists and is not part of the page itself.
+    @Transactional(readOnly = true)
+    public List<Product> getProductPageForOwner(Long ownerUserId, ProductJdbcRepository.ProductFilter filter,
+                                                boolean descending, KeysetCursor after, int limit) {
+        return productJdbcRepository.findPageForOwner(ownerUserId, filter, descending, after, limit + 1);
     }
 
     // You can add more product-related business logic methods here later,
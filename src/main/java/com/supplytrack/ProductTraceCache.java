@@ -0,0 +1,89 @@
+package com.supplytrack;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Component // Read-through cache of full product traces, weighted by history length and invalidated on every write
+public class ProductTraceCache {
+
+    private final ProductJdbcRepository productJdbcRepository;
+    private final EventService eventService;
+    private final ReadYourWrites readYourWrites;
+    private final Cache<Long, ProductController.ProductTraceResponse> cache;
+
+    public ProductTraceCache(ProductJdbcRepository productJdbcRepository, EventService eventService, ReadYourWrites readYourWrites,
+                             MeterRegistry meterRegistry,
+                             @Value("${supplytrack.trace-cache.max-events:1000000}") long maxEvents,
+                             @Value("${supplytrack.trace-cache.ttl:PT10M}") Duration ttl) {
+        this.productJdbcRepository = productJdbcRepository;
+        this.eventService = eventService;
+        this.readYourWrites = readYourWrites;
+        // W-TinyLFU admission; the weight of an entry is its number of events (+1 for the product itself)
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxEvents)
+                .weigher((Long productId, ProductController.ProductTraceResponse trace) -> 1 + trace.getEventHistory().size())
+                .expireAfterWrite(ttl) // Safety net for writes made outside this process
+                .recordStats()
+                .build();
+        // Exposes cache.gets{result=hit|miss}, cache.evictions, cache.size, ... tagged cache=productTrace
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productTrace");
+    }
+
+    public Optional<ProductController.ProductTraceResponse> get(Long productId) {
+        // Missing products are not cached (the loader returns null)
+        return Optional.ofNullable(cache.get(productId, this::load));
+    }
+
+    // Traces of several products by id; products that do not exist are absent. Cached traces are used as they are
+    // and the rest come from two queries in one read-only transaction (EventService.getTraces). Those are not put into
+    // the cache: a bulk put is not serialized with onEventsLogged like a per-key load, so it could bring back an
+    // invalidated trace.
+    public Map<Long, ProductController.ProductTraceResponse> getAll(Collection<Long> productIds) {
+        Map<Long, ProductController.ProductTraceResponse> traces = new HashMap<>(cache.getAllPresent(productIds));
+        List<Long> misses = productIds.stream().filter(id -> !traces.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            traces.putAll(eventService.getTraces(misses));
+        }
+        return traces;
+    }
+
+    // Version of the product as currently cached, without loading anything on a miss
+    public Optional<Long> peekVersion(Long productId) {
+        ProductController.ProductTraceResponse cached = cache.getIfPresent(productId);
+        return cached != null ? Optional.of(cached.getProduct().getVersion()) : Optional.empty();
+    }
+
+    // A product written moments ago is loaded from the primary: a lagging replica would put the old trace back
+    // into the cache right after onEventsLogged removed it
+    private ProductController.ProductTraceResponse load(Long productId) {
+        return readYourWrites.readProduct(productId, () -> {
+            Optional<Product> product = productJdbcRepository.findById(productId);
+            if (product.isEmpty()) {
+                return null;
+            }
+            List<Event> eventHistory = eventService.getEventsForProduct(productId);
+            return new ProductController.ProductTraceResponse(product.get(), List.copyOf(eventHistory));
+        });
+    }
+
+    // Runs after commit: a load racing with the write either started after the commit (fresh) or is
+    // finished before this invalidation removes it, since Caffeine serializes both on the key
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        for (Event event : loggedEvent.events()) {
+            cache.invalidate(event.getProductId());
+        }
+    }
+}
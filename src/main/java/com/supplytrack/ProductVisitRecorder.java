@@ -0,0 +1,37 @@
+package com.supplytrack;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Maintains the product_visits graph incrementally. A plain @EventListener runs inside the transaction that
+// logged the events, so a visit commits or rolls back together with them.
+@Component
+public class ProductVisitRecorder {
+
+    private record VisitKey(String location, Long productId) {
+    }
+
+    private final RecallJdbcRepository recallJdbcRepository;
+
+    public ProductVisitRecorder(RecallJdbcRepository recallJdbcRepository) {
+        this.recallJdbcRepository = recallJdbcRepository;
+    }
+
+    @EventListener
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        // A batch may hold several events of one product at one location: one row update each
+        Map<VisitKey, RecallJdbcRepository.Visit> visits = new LinkedHashMap<>();
+        for (Event event : loggedEvent.events()) {
+            visits.merge(new VisitKey(event.getLocation(), event.getProductId()),
+                    new RecallJdbcRepository.Visit(event.getLocation(), event.getProductId(), event.getTimestamp(), event.getTimestamp()),
+                    (a, b) -> new RecallJdbcRepository.Visit(a.location(), a.productId(),
+                            a.firstSeen().isBefore(b.firstSeen()) ? a.firstSeen() : b.firstSeen(),
+                            a.lastSeen().isAfter(b.lastSeen()) ? a.lastSeen() : b.lastSeen()));
+        }
+        recallJdbcRepository.recordVisits(new ArrayList<>(visits.values()));
+    }
+}
@@ -0,0 +1,165 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Server-rendered QR labels for packing lines (see QrLabelService for the signed payload).
+// All endpoints require authentication (anyRequest().authenticated() in SecurityConfig).
+@RestController
+@RequestMapping("/api/products")
+public class QrCodeController {
+
+    private static final MediaType SVG = MediaType.parseMediaType("image/svg+xml");
+    private static final int MAX_SCALE = 32;
+    private static final int CAPTION_HEIGHT = 6; // Sheet units (modules) below each code for the product id
+
+    private final QrLabelService qrLabelService;
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final int maxSheetLabels;
+
+    public QrCodeController(QrLabelService qrLabelService, ProductService productService, ObjectMapper objectMapper,
+                            @Value("${supplytrack.qr.sheet.max-labels:5000}") int maxSheetLabels) {
+        this.qrLabelService = qrLabelService;
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.maxSheetLabels = maxSheetLabels;
+    }
+
+    // DTO for a label sheet: labels are laid out left to right, columns per row, in productIds order
+    public static class LabelSheetRequest {
+        private List<Long> productIds;
+        private int columns = 4;
+
+        // Getters and Setters
+        public List<Long> getProductIds() { return productIds; }
+        public void setProductIds(List<Long> productIds) { this.productIds = productIds; }
+        public int getColumns() { return columns; }
+        public void setColumns(int columns) { this.columns = columns; }
+    }
+
+    // format=png (default) or svg; scale is pixels (PNG) or SVG units per module. A label never changes, so it is
+    // cacheable for a year and If-None-Match is answered from the ETag alone, without touching the database.
+    @GetMapping("/{productId}/qrcode")
+    public ResponseEntity<?> getProductQrCode(
+            @PathVariable Long productId,
+            @RequestParam(defaultValue = "png") String format,
+            @RequestParam(defaultValue = "8") int scale,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        QrLabelService.Format labelFormat = parseFormat(format);
+        if (labelFormat == null) {
+            return new ResponseEntity<>(Map.of("message", "format must be png or svg."), HttpStatus.BAD_REQUEST);
+        }
+        if (scale < 1 || scale > MAX_SCALE) {
+            return new ResponseEntity<>(Map.of("message", "scale must be between 1 and " + MAX_SCALE + "."), HttpStatus.BAD_REQUEST);
+        }
+        String etag = qrLabelService.etag(productId, labelFormat, scale);
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        if (productService.getProductVersion(productId).isEmpty()) {
+            return new ResponseEntity<>(Map.of("message", "Product with ID " + productId + " not found."), HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(labelFormat == QrLabelService.Format.PNG ? MediaType.IMAGE_PNG : SVG)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(qrLabelService.render(productId, labelFormat, scale));
+    }
+
+    // One SVG sheet with a label (code plus product id) per product, written label by label
+    @PostMapping("/qrcode-sheet")
+    public ResponseEntity<StreamingResponseBody> getLabelSheet(@RequestBody LabelSheetRequest request) {
+        List<Long> productIds = request.getProductIds();
+        if (productIds == null || productIds.isEmpty() || productIds.contains(null)) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "productIds must list at least one product id.");
+        }
+        if (productIds.size() > maxSheetLabels) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "A sheet may contain at most " + maxSheetLabels + " labels.");
+        }
+        if (request.getColumns() < 1 || request.getColumns() > 50) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "columns must be between 1 and 50.");
+        }
+        List<Long> missing = productService.findMissingProductIds(productIds);
+        if (!missing.isEmpty()) {
+            return messageResponse(HttpStatus.NOT_FOUND, "Products not found: " + missing.subList(0, Math.min(20, missing.size())));
+        }
+
+        // Every cell is as large as the largest code, so the sheet size is known before the first label is written
+        List<QrLabelService.SvgLabel> labels = new ArrayList<>(productIds.size());
+        int cell = 0;
+        for (Long productId : productIds) {
+            QrLabelService.SvgLabel label = qrLabelService.svgLabel(productId);
+            labels.add(label);
+            cell = Math.max(cell, label.modules());
+        }
+        int columns = Math.min(request.getColumns(), productIds.size());
+        int rows = (productIds.size() + columns - 1) / columns;
+        int cellSize = cell;
+        StreamingResponseBody body = (OutputStream stream) -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " + columns * cellSize + " " +
+                    rows * (cellSize + CAPTION_HEIGHT) + "\" shape-rendering=\"crispEdges\">" +
+                    "<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>");
+            for (int i = 0; i < labels.size(); i++) {
+                QrLabelService.SvgLabel label = labels.get(i);
+                int x = (i % columns) * cellSize;
+                int y = (i / columns) * (cellSize + CAPTION_HEIGHT);
+                out.write("<path transform=\"translate(" + x + " " + y + ")\" d=\"" + label.path() + "\"/>");
+                out.write("<text x=\"" + (x + cellSize / 2) + "\" y=\"" + (y + cellSize + CAPTION_HEIGHT / 2) +
+                        "\" font-family=\"monospace\" font-size=\"3\" text-anchor=\"middle\">" + productIds.get(i) + "</text>");
+            }
+            out.write("</svg>");
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(SVG).body(body);
+    }
+
+    // Checks a scanned payload against the signing key only; valid=false for anything not issued by us
+    @GetMapping("/qrcode/verify")
+    public ResponseEntity<?> verifyQrPayload(@RequestParam String payload) {
+        return qrLabelService.verify(payload)
+                .<ResponseEntity<?>>map(productId -> new ResponseEntity<>(Map.of("valid", true, "productId", productId), HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(Map.of("valid", false), HttpStatus.OK));
+    }
+
+    private static QrLabelService.Format parseFormat(String format) {
+        return switch (format) {
+            case "png" -> QrLabelService.Format.PNG;
+            case "svg" -> QrLabelService.Format.SVG;
+            default -> null;
+        };
+    }
+
+    // {"message": ...} error body, declared as StreamingResponseBody like the sheet itself
+    private ResponseEntity<StreamingResponseBody> messageResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(objectMapper.writeValueAsBytes(Map.of("message", message))));
+    }
+}
@@ -0,0 +1,201 @@
+package com.supplytrack;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+
+// Server-side QR labels. The payload is "ST1:<productId>:<signature>", where the signature is a truncated
+// HMAC-SHA256 of "ST1:<productId>" under supplytrack.qr.secret, so any holder of the secret can verify a scan
+// without a database lookup. A product's payload never changes (for a given secret), so rendered labels are
+// immutable: they are cached here by (product, format, scale) and served with a long-lived ETag.
+@Service
+public class QrLabelService {
+
+    private static final String PREFIX = "ST1:";
+    private static final int SIGNATURE_BYTES = 10; // 80 bits: forging one still needs ~2^79 guesses per product
+    private static final int QUIET_ZONE = 4; // Modules of white border the QR spec asks for
+    static final int MIN_SECRET_BYTES = 32; // One HMAC-SHA256 block of key material
+
+    public enum Format { PNG, SVG }
+
+    private record LabelKey(Long productId, Format format, int scale) {
+    }
+
+    // Vector outline of a label: side in modules (quiet zone included) and path data of the dark modules
+    public record SvgLabel(int modules, String path) {
+    }
+
+    private final SecretKeySpec key;
+    private final Cache<LabelKey, byte[]> labels;
+    private final Cache<Long, SvgLabel> svgLabels; // In module units, shared by SVG labels and sheets
+
+    public QrLabelService(MeterRegistry meterRegistry,
+                          @Value("${supplytrack.qr.secret}") String secret,
+                          @Value("${supplytrack.qr.cache-max-bytes:67108864}") long cacheMaxBytes) {
+        // Printed labels outlive the process and are cached as immutable, so there is no fallback key: a random one
+        // would differ per instance and stop verifying after a restart
+        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (secret.isBlank() || keyBytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("supplytrack.qr.secret (SUPPLYTRACK_QR_SECRET) must be set to at least "
+                    + MIN_SECRET_BYTES + " bytes, the same on every instance and scanner that verifies labels.");
+        }
+        this.key = new SecretKeySpec(keyBytes, "HmacSHA256");
+        this.labels = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((LabelKey k, byte[] label) -> label.length)
+                .recordStats()
+                .build();
+        this.svgLabels = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes / 4)
+                .weigher((Long productId, SvgLabel label) -> label.path().length())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, labels, "qrLabel");
+    }
+
+    public String payload(Long productId) {
+        String signed = PREFIX + productId;
+        return signed + ":" + signature(signed);
+    }
+
+    // The product id of a genuine payload; empty for anything malformed or not signed with our secret
+    public Optional<Long> verify(String payload) {
+        if (payload == null || !payload.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        int separator = payload.indexOf(':', PREFIX.length());
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        String signed = payload.substring(0, separator);
+        byte[] expected = signature(signed).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = payload.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Long.parseLong(signed.substring(PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    // A complete PNG or SVG document; scale is pixels (PNG) or user units (SVG) per module
+    public byte[] render(Long productId, Format format, int scale) {
+        return labels.get(new LabelKey(productId, format, scale), k -> format == Format.PNG
+                ? renderPng(encode(payload(productId)), scale)
+                : renderSvg(productId, scale).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Tag for the label of a product: the payload identifies its content, plus how it was drawn
+    public String etag(Long productId, Format format, int scale) {
+        return "\"qr-" + productId + "-" + signature(PREFIX + productId) + "-" + format.name().toLowerCase() + "-" + scale + "\"";
+    }
+
+    // One unit per module, dark modules offset by the quiet zone
+    public SvgLabel svgLabel(Long productId) {
+        return svgLabels.get(productId, id -> {
+            BitMatrix matrix = encode(payload(id));
+            StringBuilder path = new StringBuilder();
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                int x = 0;
+                while (x < matrix.getWidth()) {
+                    if (!matrix.get(x, y)) {
+                        x++;
+                        continue;
+                    }
+                    int run = x;
+                    while (run < matrix.getWidth() && matrix.get(run, y)) {
+                        run++;
+                    }
+                    // One rectangle per horizontal run of dark modules
+                    path.append('M').append(x + QUIET_ZONE).append(' ').append(y + QUIET_ZONE)
+                            .append('h').append(run - x).append("v1h-").append(run - x).append('z');
+                    x = run;
+                }
+            }
+            return new SvgLabel(matrix.getWidth() + 2 * QUIET_ZONE, path.toString());
+        });
+    }
+
+    private String renderSvg(Long productId, int scale) {
+        SvgLabel label = svgLabel(productId);
+        int modules = label.modules();
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + modules * scale + "\" height=\"" + modules * scale +
+                "\" viewBox=\"0 0 " + modules + " " + modules + "\" shape-rendering=\"crispEdges\">" +
+                "<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path fill=\"#000\" d=\"" + label.path() + "\"/></svg>";
+    }
+
+    private static byte[] renderPng(BitMatrix matrix, int scale) {
+        int side = (matrix.getWidth() + 2 * QUIET_ZONE) * scale;
+        // 1 bit per pixel: index 1 is white in the default binary palette
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = image.getRaster();
+        int[] white = new int[side];
+        Arrays.fill(white, 1);
+        for (int y = 0; y < side; y++) {
+            raster.setPixels(0, y, side, 1, white);
+        }
+        int[] dark = new int[scale * scale];
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y)) {
+                    raster.setPixels((x + QUIET_ZONE) * scale, (y + QUIET_ZONE) * scale, scale, scale, dark);
+                }
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", png);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return png.toByteArray();
+    }
+
+    // Medium error correction, no margin (the quiet zone is added when drawing)
+    private static BitMatrix encode(String payload) {
+        try {
+            return new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, 0, 0,
+                    Map.of(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M, EncodeHintType.MARGIN, 0));
+        } catch (WriterException e) {
+            throw new IllegalStateException("Could not encode QR payload " + payload, e);
+        }
+    }
+
+    private String signature(String signed) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            byte[] digest = mac.doFinal(signed.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, SIGNATURE_BYTES));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
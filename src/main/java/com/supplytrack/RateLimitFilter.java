@@ -0,0 +1,84 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Admission control in the security filter chain, right after HTTP Basic authentication (see SecurityConfig) and
+// before authorization and any controller, so a refused request never takes a database connection:
+// 429 with Retry-After when the user's rate limit is used up (RequestRateLimiter), 503 with Retry-After while the
+// connection pool is congested (LoadShedder; reads are shed before writes). Not a bean on purpose: Spring Boot
+// would also register a Filter bean with the servlet container, outside the security chain. Requests whose
+// credentials keep failing never get this far; AuthenticationThrottleFilter turns them away first.
+class RateLimitFilter extends OncePerRequestFilter {
+
+    // POST endpoints that only read, shed like GETs
+    private static final Set<String> READ_ONLY_POSTS = Set.of(
+            "/api/products/qrcode-sheet", "/api/products/lookup", "/api/products/traces:batch");
+
+    private final RequestRateLimiter rateLimiter;
+    private final LoadShedder loadShedder;
+    private final ObjectMapper objectMapper;
+
+    RateLimitFilter(RequestRateLimiter rateLimiter, LoadShedder loadShedder, ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.loadShedder = loadShedder;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Monitoring must keep working under load, and CORS preflights never reach the database
+        return request.getRequestURI().startsWith("/actuator/") || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            long retryAfterNanos = rateLimiter.tryAcquire(user);
+            if (retryAfterNanos > 0) {
+                reject(objectMapper, response, HttpStatus.TOO_MANY_REQUESTS, toRetryAfterSeconds(retryAfterNanos),
+                        "Rate limit exceeded, retry later.");
+                return;
+            }
+        }
+        if (loadShedder.shouldShed(isRead(request))) {
+            reject(objectMapper, response, HttpStatus.SERVICE_UNAVAILABLE, 1, "Server is busy, retry later.");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method)
+                || ("POST".equals(method) && READ_ONLY_POSTS.contains(request.getRequestURI()));
+    }
+
+    static long toRetryAfterSeconds(long retryAfterNanos) {
+        return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    static void reject(ObjectMapper objectMapper, HttpServletResponse response, HttpStatus status, long retryAfterSeconds,
+                       String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("message", message));
+    }
+}
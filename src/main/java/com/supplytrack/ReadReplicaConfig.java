@@ -0,0 +1,77 @@
+package com.supplytrack;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Active when supplytrack.datasource.replicas.urls is set. Replaces the auto-configured pool with a proxy that
+// takes connections lazily: a transaction marked read-only (@Transactional(readOnly = true), Spring Data's find
+// methods) gets its connection from ReadReplicaDataSource, everything else (writes, Flyway) from the primary.
+// The connection is only taken at the first statement, after the transaction manager has set the read-only flag.
+// In virtual-thread mode each pool gets its own JdbcAdmissionGuard (the proxy itself never waits on a pool).
+@Configuration
+@ConditionalOnProperty("supplytrack.datasource.replicas.urls")
+public class ReadReplicaConfig {
+
+    private final List<AutoCloseable> pools = new ArrayList<>();
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, ReadYourWrites readYourWrites,
+                                 MeterRegistry meterRegistry, Environment environment,
+                                 @Value("${supplytrack.datasource.replicas.urls}") List<String> replicaUrls,
+                                 @Value("${supplytrack.datasource.replicas.pool-size:10}") int replicaPoolSize,
+                                 @Value("${supplytrack.datasource.replicas.health-check-interval:PT5S}") Duration healthCheckInterval) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = pool(dataSourceProperties, binder, dataSourceProperties.determineUrl(), "primary", meterRegistry);
+        pools.add(primary);
+
+        DataSource guardedPrimary = VirtualThreadConfig.admissionGuard(primary, environment);
+
+        List<DataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = pool(dataSourceProperties, binder, replicaUrls.get(i).trim(), "replica-" + (i + 1), meterRegistry);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            pools.add(replica);
+            replicas.add(VirtualThreadConfig.admissionGuard(replica, environment));
+        }
+        ReadReplicaDataSource readDataSource = new ReadReplicaDataSource(guardedPrimary, replicas, readYourWrites, healthCheckInterval);
+        pools.add(0, readDataSource); // Closed first: stops the health checks before the pools go away
+
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(guardedPrimary);
+        routing.setReadOnlyDataSource(readDataSource);
+        return routing;
+    }
+
+    // Same credentials, driver and spring.datasource.hikari.* settings as the auto-configured pool would have;
+    // each pool reports hikaricp.* metrics under its own name
+    private static HikariDataSource pool(DataSourceProperties dataSourceProperties, Binder binder, String url, String name,
+                                         MeterRegistry meterRegistry) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricRegistry(meterRegistry);
+        return pool;
+    }
+
+    @PreDestroy
+    public void closePools() throws Exception {
+        for (AutoCloseable pool : pools) {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.supplytrack;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// Read side of the connection routing (see ReadReplicaConfig): hands out connections of the replicas in turn.
+// A replica whose getConnection fails, or that fails the periodic validity check, is skipped until a check passes
+// again. With no healthy replica left, or when ReadYourWrites asks for it, connections come from the primary.
+class ReadReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWrites readYourWrites;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecks; // Null when checks are disabled
+
+    ReadReplicaDataSource(DataSource primary, List<DataSource> replicas, ReadYourWrites readYourWrites,
+                          Duration healthCheckInterval) {
+        this.primary = primary;
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one read replica is required.");
+        }
+        this.replicas = IntStream.range(0, replicas.size()).mapToObj(i -> new Replica(replicas.get(i), i + 1)).toList();
+        this.readYourWrites = readYourWrites;
+        if (healthCheckInterval.isZero()) {
+            this.healthChecks = null;
+        } else {
+            this.healthChecks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = healthCheckInterval.toMillis();
+            this.healthChecks.scheduleWithFixedDelay(this::checkHealth, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (readYourWrites.requiresPrimary()) {
+            return primary.getConnection();
+        }
+        // Round-robin from a rotating start; each replica is tried at most once per call
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Replica connections always use the configured credentials.");
+    }
+
+    // Scheduled every health-check-interval; a replica is back in rotation as soon as one check passes
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    if (!replica.healthy) {
+                        log.info("Read replica {} is healthy again", replica.index);
+                        replica.healthy = true;
+                    }
+                } else {
+                    replica.markDown(null);
+                }
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    int healthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    @Override
+    public void close() {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Could not close read replica {}", replica.index, e);
+                }
+            }
+        }
+    }
+
+    private static final class Replica {
+        private final DataSource dataSource;
+        private final int index; // 1-based position in supplytrack.datasource.replicas.urls, for log messages
+        private volatile boolean healthy = true;
+
+        private Replica(DataSource dataSource, int index) {
+            this.dataSource = dataSource;
+            this.index = index;
+        }
+
+        private void markDown(SQLException cause) {
+            if (healthy) {
+                log.warn("Read replica {} is unavailable; reads go to the other replicas or the primary", index, cause);
+                healthy = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.supplytrack;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Read-your-writes for read replicas (see ReadReplicaConfig). For a window after a commit that logged events, reads
+// of the user who made the write, of the events' actors (a handover puts the product in the new owner's list) and
+// trace cache loads of the touched products go to the primary, so they cannot see a replica that is still behind.
+// Does nothing when no replicas are configured or the window is zero.
+@Component
+public class ReadYourWrites {
+
+    private static final int MAX_TRACKED = 100_000; // Per kind; older entries are dropped first
+
+    private final boolean enabled;
+    private final Cache<Long, Boolean> recentUsers;
+    private final Cache<Long, Boolean> recentProducts;
+    private final ThreadLocal<Boolean> primaryScope = new ThreadLocal<>();
+
+    public ReadYourWrites(@Value("${supplytrack.datasource.replicas.urls:}") List<String> replicaUrls,
+                          @Value("${supplytrack.datasource.replicas.read-your-writes:PT5S}") Duration window) {
+        this.enabled = !replicaUrls.isEmpty() && !window.isZero();
+        this.recentUsers = Caffeine.newBuilder().expireAfterWrite(window).maximumSize(MAX_TRACKED).build();
+        this.recentProducts = Caffeine.newBuilder().expireAfterWrite(window).maximumSize(MAX_TRACKED).build();
+    }
+
+    // Runs after commit on the committing thread, so the security context is still the writer's request.
+    // Ordered ahead of ProductTraceCache's invalidation, so no reload can slip in before the product is recorded.
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventsLogged(EventsLoggedEvent loggedEvent) {
+        if (!enabled) {
+            return;
+        }
+        Long currentUserId = currentUserId();
+        if (currentUserId != null) {
+            recentUsers.put(currentUserId, Boolean.TRUE);
+        }
+        for (Event event : loggedEvent.events()) {
+            recentProducts.put(event.getProductId(), Boolean.TRUE);
+            if (event.getActorUserId() != null) {
+                recentUsers.put(event.getActorUserId(), Boolean.TRUE);
+            }
+        }
+    }
+
+    // Runs reads on the primary when the product was written within the window. Used where the result is shared
+    // between users (ProductTraceCache), so a lagging replica cannot put an old trace back into the cache.
+    public <T> T readProduct(Long productId, Supplier<T> reads) {
+        if (!enabled || recentProducts.getIfPresent(productId) == null || Boolean.TRUE.equals(primaryScope.get())) {
+            return reads.get();
+        }
+        primaryScope.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            primaryScope.remove();
+        }
+    }
+
+    // Asked by ReadReplicaDataSource for every read-only connection
+    boolean requiresPrimary() {
+        if (!enabled) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(primaryScope.get())) {
+            return true;
+        }
+        Long currentUserId = currentUserId();
+        return currentUserId != null && recentUsers.getIfPresent(currentUserId) != null;
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+    }
+}
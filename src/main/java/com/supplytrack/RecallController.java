@@ -0,0 +1,80 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/recalls")
+@PreAuthorize("hasRole('ADMIN')") // A recall spans every user's products
+public class RecallController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final RecallService recallService;
+    private final ObjectMapper objectMapper;
+    private final int maxHops;
+
+    public RecallController(RecallService recallService, ObjectMapper objectMapper,
+                            @Value("${supplytrack.recall.max-hops:5}") int maxHops) {
+        this.recallService = recallService;
+        this.objectMapper = objectMapper;
+        this.maxHops = maxHops;
+    }
+
+    // Products exposed to a contamination at location during [from, to), as NDJSON: one
+    // {"productId", "hops", "exposedAt", "location"} per product, written as soon as it is found.
+    // hops=0 is only the products that were there; every further hop adds products that shared a location later on.
+    @GetMapping("/exposure")
+    public ResponseEntity<StreamingResponseBody> findExposures(
+            @RequestParam String location,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "2") int hops
+    ) {
+        if (!from.isBefore(to)) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "from must be before to.");
+        }
+        if (hops < 0 || hops > maxHops) {
+            return messageResponse(HttpStatus.BAD_REQUEST, "hops must be between 0 and " + maxHops + ".");
+        }
+        StreamingResponseBody body = (OutputStream stream) -> {
+            Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024);
+            recallService.findExposures(location, from, to, hops, exposure -> {
+                try {
+                    out.write(objectMapper.writeValueAsString(exposure));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    // {"message": ...} error body, declared as StreamingResponseBody like the success case
+    private ResponseEntity<StreamingResponseBody> messageResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(objectMapper.writeValueAsBytes(Map.of("message", message))));
+    }
+}
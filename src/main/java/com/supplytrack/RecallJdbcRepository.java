@@ -0,0 +1,122 @@
+package com.supplytrack;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+@Timed(value = "supplytrack.jdbc.repository", description = "Hand-written JDBC repository calls") // Tagged by class and method
+@Repository // The product_visits co-location graph and the location/time range scans behind recalls
+public class RecallJdbcRepository {
+
+    // A product's stay at a location: its first and last event there
+    public record Visit(String location, Long productId, LocalDateTime firstSeen, LocalDateTime lastSeen) {
+    }
+
+    private static final String UPDATE_VISIT =
+            "UPDATE product_visits SET first_seen = LEAST(first_seen, :firstSeen), last_seen = GREATEST(last_seen, :lastSeen) " +
+            "WHERE location = :location AND product_id = :productId";
+
+    private static final String INSERT_VISIT =
+            "INSERT INTO product_visits (location, product_id, first_seen, last_seen) VALUES (:location, :productId, :firstSeen, :lastSeen)";
+
+    // Index-only on idx_events_location_timestamp
+    private static final String SELECT_PRODUCTS_AT =
+            "SELECT product_id, MIN(timestamp) AS first_seen FROM events " +
+            "WHERE location_id = ? AND timestamp >= ? AND timestamp < ? GROUP BY product_id";
+
+    private static final String SELECT_VISITORS_SINCE =
+            "SELECT product_id, first_seen FROM product_visits WHERE location = ? AND last_seen >= ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate; // Bounded fetch size: a busy location has many visitors
+    private final NameDictionary dictionary;
+
+    public RecallJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource, NameDictionary dictionary,
+                                @Value("${supplytrack.events.stream.fetch-size:500}") int streamFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(streamFetchSize);
+        this.dictionary = dictionary;
+    }
+
+    // Widens existing visits, then inserts the new ones. Callers hold the row lock of every product involved
+    // (or created it in the same transaction), so no other writer races for the same (location, product) row.
+    public void recordVisits(List<Visit> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = visits.stream().map(RecallJdbcRepository::params).toArray(SqlParameterSource[]::new);
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_VISIT, batch);
+        List<SqlParameterSource> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(batch[i]);
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_VISIT, inserts.toArray(SqlParameterSource[]::new));
+        }
+    }
+
+    // Every location the given products have been at
+    public List<Visit> findVisitsOfProducts(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(
+                "SELECT location, product_id, first_seen, last_seen FROM product_visits WHERE product_id IN (:productIds)",
+                new MapSqlParameterSource("productIds", productIds),
+                (rs, rowNum) -> new Visit(rs.getString("location"), rs.getLong("product_id"),
+                        rs.getTimestamp("first_seen").toLocalDateTime(), rs.getTimestamp("last_seen").toLocalDateTime()));
+    }
+
+    // Products whose visit to the location overlaps [from, to); exact times have to come from the events
+    public List<Long> findVisitorsBetween(String location, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.queryForList(
+                "SELECT product_id FROM product_visits WHERE location = :location AND first_seen < :to AND last_seen >= :from",
+                new MapSqlParameterSource()
+                        .addValue("location", location)
+                        .addValue("from", Timestamp.valueOf(from))
+                        .addValue("to", Timestamp.valueOf(to)),
+                Long.class);
+    }
+
+    // Hot events only: (productId, first event at the location within [from, to)), read through a cursor.
+    // Must run inside a transaction, like EventJdbcRepository.streamForProduct.
+    public void forEachProductAt(String location, LocalDateTime from, LocalDateTime to, BiConsumer<Long, LocalDateTime> consumer) {
+        Integer locationId = dictionary.locations().find(location);
+        if (locationId == null) {
+            return; // No event was ever logged there
+        }
+        streamingJdbcTemplate.query(SELECT_PRODUCTS_AT,
+                rs -> { consumer.accept(rs.getLong("product_id"), rs.getTimestamp("first_seen").toLocalDateTime()); },
+                locationId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    // (productId, first seen there) of every product still at or passing through the location at or after since
+    public void forEachVisitorSince(String location, LocalDateTime since, BiConsumer<Long, LocalDateTime> consumer) {
+        streamingJdbcTemplate.query(SELECT_VISITORS_SINCE,
+                rs -> { consumer.accept(rs.getLong("product_id"), rs.getTimestamp("first_seen").toLocalDateTime()); },
+                location, Timestamp.valueOf(since));
+    }
+
+    private static SqlParameterSource params(Visit visit) {
+        return new MapSqlParameterSource()
+                .addValue("location", visit.location())
+                .addValue("productId", visit.productId())
+                .addValue("firstSeen", Timestamp.valueOf(visit.firstSeen()))
+                .addValue("lastSeen", Timestamp.valueOf(visit.lastSeen()));
+    }
+}
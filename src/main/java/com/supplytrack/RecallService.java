@@ -0,0 +1,119 @@
+package com.supplytrack;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Food-safety recalls: which products were at a contaminated location during a time window (hop 0), and which
+// products later shared a location with an exposed product (hop 1, 2, ...). Hop 0 comes from the events
+// (idx_events_location_timestamp, plus archived months); further hops only walk the product_visits graph.
+// A visit is the span between a product's first and last event at a location, so exposure is over- rather than
+// under-estimated: a product that left and came back counts as present in between.
+@Service
+public class RecallService {
+
+    private static final int IN_CHUNK = 1000; // Products per IN list when following the frontier
+
+    // exposedAt is when the product could first have been contaminated, at location
+    public record Exposure(Long productId, int hops, LocalDateTime exposedAt, String location) {
+    }
+
+    private final RecallJdbcRepository recallJdbcRepository;
+    private final EventArchive eventArchive;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public RecallService(RecallJdbcRepository recallJdbcRepository, EventArchive eventArchive,
+                         PlatformTransactionManager transactionManager) {
+        this.recallJdbcRepository = recallJdbcRepository;
+        this.eventArchive = eventArchive;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true); // Also lets PostgreSQL use cursors (autocommit off)
+    }
+
+    // Each affected product is handed to the consumer once, as soon as it is found, hop by hop
+    public void findExposures(String location, LocalDateTime from, LocalDateTime to, int maxHops, Consumer<Exposure> consumer) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            Map<Long, LocalDateTime> seeds = findProductsAt(location, from, to);
+            seeds.forEach((productId, exposedAt) -> consumer.accept(new Exposure(productId, 0, exposedAt, location)));
+
+            Map<Long, LocalDateTime> exposed = new HashMap<>(seeds);
+            Map<Long, LocalDateTime> frontier = seeds;
+            Map<String, LocalDateTime> contaminated = new HashMap<>(); // Location -> earliest contamination already followed
+            for (int hops = 1; hops <= maxHops && !frontier.isEmpty(); hops++) {
+                Map<Long, LocalDateTime> next = new HashMap<>();
+                for (Map.Entry<String, LocalDateTime> spread : spreadFrom(frontier).entrySet()) {
+                    LocalDateTime since = spread.getValue();
+                    LocalDateTime followed = contaminated.get(spread.getKey());
+                    if (followed != null && !followed.isAfter(since)) {
+                        continue; // Everyone there since then is already exposed
+                    }
+                    contaminated.put(spread.getKey(), since);
+                    int hop = hops;
+                    recallJdbcRepository.forEachVisitorSince(spread.getKey(), since, (productId, firstSeen) -> {
+                        if (!exposed.containsKey(productId)) {
+                            LocalDateTime exposedAt = firstSeen.isAfter(since) ? firstSeen : since;
+                            exposed.put(productId, exposedAt);
+                            next.put(productId, exposedAt);
+                            consumer.accept(new Exposure(productId, hop, exposedAt, spread.getKey()));
+                        }
+                    });
+                }
+                frontier = next;
+            }
+        });
+    }
+
+    // Hop 0: the first event of each product at the location within [from, to), archive and events table
+    private Map<Long, LocalDateTime> findProductsAt(String location, LocalDateTime from, LocalDateTime to) {
+        Map<Long, LocalDateTime> found = new HashMap<>();
+        Optional<YearMonth> archivedUntil = eventArchive.lastArchivedMonth();
+        YearMonth firstMonth = YearMonth.from(from);
+        if (archivedUntil.isPresent() && !firstMonth.isAfter(archivedUntil.get())) {
+            // Visits narrow the archived blocks to decode down to the products that were there around the window
+            Set<Long> candidates = new HashSet<>(recallJdbcRepository.findVisitorsBetween(location, from, to));
+            YearMonth lastMonth = YearMonth.from(to.minusNanos(1));
+            eventArchive.forEachInMonths(firstMonth, lastMonth.isBefore(archivedUntil.get()) ? lastMonth : archivedUntil.get(),
+                    candidates::contains, event -> {
+                        if (location.equals(event.getLocation()) && !event.getTimestamp().isBefore(from) && event.getTimestamp().isBefore(to)) {
+                            found.merge(event.getProductId(), event.getTimestamp(), RecallService::earlier);
+                        }
+                    });
+        }
+        recallJdbcRepository.forEachProductAt(location, from, to,
+                (productId, firstSeen) -> found.merge(productId, firstSeen, RecallService::earlier));
+        return found;
+    }
+
+    // Location -> earliest time an exposed product of the frontier was there, once exposed
+    private Map<String, LocalDateTime> spreadFrom(Map<Long, LocalDateTime> frontier) {
+        Map<String, LocalDateTime> spread = new HashMap<>();
+        List<Long> productIds = new ArrayList<>(frontier.keySet());
+        for (int start = 0; start < productIds.size(); start += IN_CHUNK) {
+            List<Long> chunk = productIds.subList(start, Math.min(start + IN_CHUNK, productIds.size()));
+            for (RecallJdbcRepository.Visit visit : recallJdbcRepository.findVisitsOfProducts(chunk)) {
+                LocalDateTime exposedAt = frontier.get(visit.productId());
+                if (visit.lastSeen().isBefore(exposedAt)) {
+                    continue; // Left that location before it was exposed
+                }
+                LocalDateTime since = visit.firstSeen().isAfter(exposedAt) ? visit.firstSeen() : exposedAt;
+                spread.merge(visit.location(), since, RecallService::earlier);
+            }
+        }
+        return spread;
+    }
+
+    private static LocalDateTime earlier(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
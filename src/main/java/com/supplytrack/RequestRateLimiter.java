@@ -0,0 +1,182 @@
+package com.supplytrack;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket per authenticated user, sized by the user's role:
+//   supplytrack.rate-limit.roles.<ROLE>.requests-per-second  sustained rate (0 = no limit for the role)
+//   supplytrack.rate-limit.roles.<ROLE>.burst                requests allowed at once on a full bucket
+// Roles without their own entry use supplytrack.rate-limit.default.*; supplytrack.rate-limit.enabled=false turns
+// limiting off. Rejections are counted in supplytrack.ratelimit.rejected, tagged by role.
+// Failed logins have buckets of their own (supplytrack.rate-limit.failed-auth.*), and only failures take a token:
+//   one per client address and username pair (failed-auth.*): once it is empty that address is refused for that
+//   username before its credentials are checked. A stranger guessing a username cannot lock its owner out elsewhere.
+//   one per client address (failed-auth.address.*), with a much larger burst: an address trying one name after the
+//   other gets a fresh pair bucket for each, and this one caps the password hashing it can cause. It is sized so
+//   that a shared proxy or NAT only runs dry under sustained failures, not a few clients mistyping.
+// At most failed-auth.max-keys buckets of both kinds are tracked.
+@Component
+public class RequestRateLimiter {
+
+    private static final Duration IDLE_BUCKET_EXPIRY = Duration.ofMinutes(10); // A refilled bucket holds no state worth keeping
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Limit defaultLimit;
+    private final Map<String, Limit> roleLimits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+    private final Cache<Long, TokenBucket> buckets;
+    private final Limit failedAuthenticationLimit;
+    private final Limit addressFailedAuthenticationLimit;
+    private final Cache<String, TokenBucket> failedAuthentications; // Keyed "<address>/<username>" and "<address>"
+
+    public RequestRateLimiter(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty("supplytrack.rate-limit.enabled", Boolean.class, true);
+        this.defaultLimit = new Limit(
+                environment.getProperty("supplytrack.rate-limit.default.requests-per-second", Double.class, 50.0),
+                environment.getProperty("supplytrack.rate-limit.default.burst", Integer.class, 100));
+        this.buckets = Caffeine.newBuilder().expireAfterAccess(IDLE_BUCKET_EXPIRY).build();
+        this.failedAuthenticationLimit = new Limit(
+                environment.getProperty("supplytrack.rate-limit.failed-auth.requests-per-second", Double.class, 0.2),
+                environment.getProperty("supplytrack.rate-limit.failed-auth.burst", Integer.class, 10));
+        this.addressFailedAuthenticationLimit = new Limit(
+                environment.getProperty("supplytrack.rate-limit.failed-auth.address.requests-per-second", Double.class, 1.0),
+                environment.getProperty("supplytrack.rate-limit.failed-auth.address.burst", Integer.class, 100));
+        this.failedAuthentications = Caffeine.newBuilder()
+                .maximumSize(environment.getProperty("supplytrack.rate-limit.failed-auth.max-keys", Long.class, 100_000L))
+                .expireAfterAccess(IDLE_BUCKET_EXPIRY)
+                .build();
+    }
+
+    // 0 when the request may go ahead, otherwise the nanoseconds until the user's bucket has a token again
+    public long tryAcquire(User user) {
+        if (!enabled) {
+            return 0;
+        }
+        String role = user.getRole();
+        Limit limit = limitFor(role);
+        if (limit.unlimited()) {
+            return 0;
+        }
+        TokenBucket bucket = buckets.get(user.getId(), id -> new TokenBucket());
+        long retryAfterNanos = bucket.tryAcquire(System.nanoTime(), limit);
+        if (retryAfterNanos > 0) {
+            rejections.computeIfAbsent(role, key -> Counter.builder("supplytrack.ratelimit.rejected")
+                    .tag("role", key)
+                    .register(meterRegistry)).increment();
+        }
+        return retryAfterNanos;
+    }
+
+    // 0 when the client may present credentials, otherwise the nanoseconds until both its address and its address
+    // for this username have had a failed attempt refilled. Takes no token: only recordFailedAuthentication does.
+    public long checkFailedAuthentications(String remoteAddress, String username) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long retryAfterNanos = Math.max(
+                failedAuthenticationWait(pairKey(remoteAddress, username), failedAuthenticationLimit, now),
+                failedAuthenticationWait(remoteAddress, addressFailedAuthenticationLimit, now));
+        if (retryAfterNanos > 0) {
+            rejections.computeIfAbsent("UNAUTHENTICATED", key -> Counter.builder("supplytrack.ratelimit.rejected")
+                    .tag("role", key)
+                    .register(meterRegistry)).increment();
+        }
+        return retryAfterNanos;
+    }
+
+    public void recordFailedAuthentication(String remoteAddress, String username) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!failedAuthenticationLimit.unlimited()) {
+            failedAuthentications.get(pairKey(remoteAddress, username), key -> new TokenBucket())
+                    .tryAcquire(now, failedAuthenticationLimit);
+        }
+        if (!addressFailedAuthenticationLimit.unlimited()) {
+            failedAuthentications.get(remoteAddress, key -> new TokenBucket())
+                    .tryAcquire(now, addressFailedAuthenticationLimit);
+        }
+    }
+
+    private long failedAuthenticationWait(String key, Limit limit, long now) {
+        if (limit.unlimited()) {
+            return 0;
+        }
+        TokenBucket bucket = failedAuthentications.getIfPresent(key);
+        return bucket == null ? 0 : bucket.retryAfter(now, limit);
+    }
+
+    // Addresses never contain '/', so the key stays unambiguous whatever the username and never equals an address
+    // key; headers without a decodable username share one pair bucket per address
+    private static String pairKey(String remoteAddress, String username) {
+        return remoteAddress + "/" + (username == null ? "" : username);
+    }
+
+    private Limit limitFor(String role) {
+        return roleLimits.computeIfAbsent(role, key -> {
+            String prefix = "supplytrack.rate-limit.roles." + key.replaceFirst("^ROLE_", "") + ".";
+            return new Limit(
+                    environment.getProperty(prefix + "requests-per-second", Double.class, defaultLimit.requestsPerSecond()),
+                    environment.getProperty(prefix + "burst", Integer.class, defaultLimit.burst()));
+        });
+    }
+
+    record Limit(double requestsPerSecond, int burst) {
+
+        boolean unlimited() {
+            return requestsPerSecond <= 0;
+        }
+
+        // Time one token takes to refill
+        long intervalNanos() {
+            return (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        }
+    }
+
+    // Token bucket kept as a single timestamp (GCRA): the time at which the bucket would be full again. A request
+    // adds one refill interval; it is refused when that would put the bucket more than burst intervals into the
+    // future. One CAS per request, no lock, and the limit can change between calls without resetting the bucket.
+    static final class TokenBucket {
+        private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+        long tryAcquire(long now, Limit limit) {
+            long interval = limit.intervalNanos();
+            long tolerance = interval * Math.max(limit.burst(), 1);
+            while (true) {
+                long current = fullAt.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                long next = base + interval;
+                if (next - now > tolerance) {
+                    return next - now - tolerance;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        // What tryAcquire would return, without taking the token
+        long retryAfter(long now, Limit limit) {
+            long current = fullAt.get();
+            long interval = limit.intervalNanos();
+            long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            return Math.max(0, base + interval - now - interval * Math.max(limit.burst(), 1));
+        }
+    }
+}
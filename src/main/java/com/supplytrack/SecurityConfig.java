@@ -1,5 +1,7 @@
 package com.supplytrack;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -10,6 +12,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -30,16 +33,18 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry); // supplytrack.password timer
     }
 
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public CachingAuthenticationProvider authenticationProvider(AuthenticatedPrincipalCache principalCache,
+                                                               PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(customUserDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
-        return authProvider;
+        authProvider.setPasswordEncoder(passwordEncoder);
+        // BCrypt only runs on a cache miss; verified principals are reused until TTL or a user update
+        return new CachingAuthenticationProvider(authProvider, principalCache);
     }
 
     // CORS Configuration Bean
@@ -64,7 +69,8 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, RequestRateLimiter rateLimiter, LoadShedder loadShedder,
+                                                   ObjectMapper objectMapper) throws Exception {
         http
                 .csrf(csrf -> csrf.disable()) // Disable CSRF for simpler API testing (re-enable for production web apps)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource())) // Apply CORS configuration
@@ -73,7 +79,11 @@ public class SecurityConfig {
                         .requestMatchers("/api/public/test").permitAll() // Allow public test endpoint
                         .anyRequest().authenticated() // All other requests require authentication
                 )
-                .httpBasic(org.springframework.security.config.Customizer.withDefaults()); // Enable HTTP Basic authentication
+                .httpBasic(org.springframework.security.config.Customizer.withDefaults()) // Enable HTTP Basic authentication
+                // An address with too many failed logins, for a username or overall, is refused before its credentials are checked
+                .addFilterBefore(new AuthenticationThrottleFilter(rateLimiter, objectMapper), BasicAuthenticationFilter.class)
+                // Per-user rate limits and load shedding, once the user is known and before any controller runs
+                .addFilterAfter(new RateLimitFilter(rateLimiter, loadShedder, objectMapper), BasicAuthenticationFilter.class);
 
         return http.build();
     }
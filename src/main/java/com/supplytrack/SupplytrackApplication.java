@@ -2,8 +2,10 @@ package com.supplytrack;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // EventPartitionMaintenance
 public class SupplytrackApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,56 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Times every physical transaction from begin to commit/rollback (supplytrack.transactions). Spring Boot registers
+// TransactionExecutionListener beans on the auto-configured transaction manager. Joined (participating) transactions
+// are not reported separately; they are part of the outer transaction's time.
+@Component
+public class TransactionMetrics implements TransactionExecutionListener {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<TransactionExecution, Timer.Sample> running = new ConcurrentHashMap<>(); // Keyed by identity
+
+    public TransactionMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, @Nullable Throwable beginFailure) {
+        if (beginFailure == null) {
+            running.put(transaction, Timer.start(meterRegistry));
+        }
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, @Nullable Throwable commitFailure) {
+        stop(transaction, commitFailure == null ? "commit" : "commit_failed");
+    }
+
+    @Override
+    public void afterRollback(TransactionExecution transaction, @Nullable Throwable rollbackFailure) {
+        stop(transaction, "rollback");
+    }
+
+    private void stop(TransactionExecution transaction, String outcome) {
+        Timer.Sample sample = running.remove(transaction);
+        if (sample == null) {
+            return;
+        }
+        // The name is the @Transactional method (class.method), so the tag set is bounded by the code base
+        String name = transaction.getTransactionName();
+        sample.stop(Timer.builder("supplytrack.transactions")
+                .tag("name", name == null || name.isEmpty() ? "unnamed" : name)
+                .tag("read_only", Boolean.toString(transaction.isReadOnly()))
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+}
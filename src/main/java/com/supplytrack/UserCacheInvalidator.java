@@ -0,0 +1,54 @@
+package com.supplytrack;
+
+import org.springframework.data.relational.core.mapping.event.AbstractRelationalEventListener;
+import org.springframework.data.relational.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.relational.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Component // Drops cached principals whenever a User row is written, so password/role changes apply immediately
+public class UserCacheInvalidator extends AbstractRelationalEventListener<User> {
+
+    private final AuthenticatedPrincipalCache principalCache;
+
+    public UserCacheInvalidator(AuthenticatedPrincipalCache principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    @Override
+    protected void onAfterSave(AfterSaveEvent<User> event) {
+        String username = event.getEntity().getUsername();
+        Long userId = event.getEntity().getId();
+        evict(username, userId);
+        // Evict again after commit, in case a concurrent login re-cached the old row in between
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(username, userId);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onAfterDelete(AfterDeleteEvent<User> event) {
+        User deleted = event.getEntity();
+        if (deleted != null) {
+            evict(deleted.getUsername(), deleted.getId());
+        } else if (event.getId().getValue() instanceof Long userId) {
+            principalCache.invalidateUser(userId); // deleteById only carries the id
+        } else {
+            principalCache.invalidateAll();
+        }
+    }
+
+    // By the saved username, and by id for the entry a rename left under the old username
+    private void evict(String username, Long userId) {
+        principalCache.invalidate(username);
+        if (userId != null) {
+            principalCache.invalidateUser(userId);
+        }
+    }
+}
@@ -9,10 +9,16 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Set;
+
 @RestController // Marks this class as a REST controller
 @RequestMapping("/api") // Base path for all endpoints in this controller
 public class UserController {
 
+    // Roles anyone may pick when registering. ROLE_ADMIN sees every user's products (exports, recalls, analytics),
+    // so admin accounts are created by an operator in the users table, never through this public endpoint.
+    private static final Set<String> SELF_SERVICE_ROLES = Set.of("ROLE_FARMER", "ROLE_DISTRIBUTOR", "ROLE_RESTAURANT");
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
 
@@ -39,6 +45,15 @@ public class UserController {
 
     @PostMapping("/register") // Handles POST requests to /api/register
     public ResponseEntity<String> registerUser(@RequestBody RegistrationRequest registrationRequest) {
+        // Normalize the role, ensure it starts with "ROLE_", and only accept the self-service ones
+        String role = registrationRequest.getRole() == null ? "" : registrationRequest.getRole().toUpperCase();
+        if (!role.startsWith("ROLE_")) {
+            role = "ROLE_" + role; // Prepend "ROLE_" if missing
+        }
+        if (!SELF_SERVICE_ROLES.contains(role)) {
+            return new ResponseEntity<>("Role must be FARMER, DISTRIBUTOR or RESTAURANT!", HttpStatus.BAD_REQUEST);
+        }
+
         // Check if user already exists
         if (userRepository.findByUsername(registrationRequest.getUsername()).isPresent()) {
             return new ResponseEntity<>("Username already taken!", HttpStatus.BAD_REQUEST);
@@ -47,12 +62,6 @@ public class UserController {
         // Encode the password before saving
         String encodedPassword = passwordEncoder.encode(registrationRequest.getPassword());
 
-        // Create new user, ensure role starts with "ROLE_"
-        String role = registrationRequest.getRole().toUpperCase();
-        if (!role.startsWith("ROLE_")) {
-            role = "ROLE_" + role; // Prepend "ROLE_" if missing
-        }
-
         // Use the static factory method to create a new User
         User newUser = User.createNewUser(registrationRequest.getUsername(), encodedPassword, role);
         userRepository.save(newUser); // Save the user to the database
@@ -0,0 +1,39 @@
+package com.supplytrack;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+@Configuration // Active with spring.threads.virtual.enabled=true (see application-virtual-threads.properties)
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    // Static so the post-processor is registered before the DataSource bean is created. Only a pool is wrapped:
+    // a routing proxy (ReadReplicaConfig) returns before any pool is asked, so it guards its pools itself.
+    @Bean
+    public static BeanPostProcessor jdbcAdmissionGuardPostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource pool) {
+                    return admissionGuard(pool, environment);
+                }
+                return bean;
+            }
+        };
+    }
+
+    // The pool behind a JdbcAdmissionGuard in virtual-thread mode, the pool itself otherwise
+    static DataSource admissionGuard(DataSource pool, Environment environment) {
+        if (!Threading.VIRTUAL.isActive(environment)) {
+            return pool;
+        }
+        return new JdbcAdmissionGuard(pool, environment.getProperty("supplytrack.jdbc.max-waiting", Integer.class, 200));
+    }
+}
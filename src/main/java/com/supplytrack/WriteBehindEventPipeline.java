@@ -0,0 +1,240 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind ingestion for log-event (supplytrack.ingest.mode=async). Requests are spooled to a local file,
+// put on a bounded queue and acknowledged with a ticket; one writer thread drains the queue in FIFO order
+// into EventService.logEvents, so each drained batch is a single multi-row insert and a single commit,
+// and events for the same product keep the order in which they were accepted.
+@Component
+@ConditionalOnProperty(name = "supplytrack.ingest.mode", havingValue = "async")
+public class WriteBehindEventPipeline implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindEventPipeline.class);
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5000;
+
+    // One accepted log-event request, as written to the spool
+    public record SpooledEvent(String ticket, Long productId, String eventType, String eventDescription,
+                               String location, Long actorUserId, String idempotencyKey) {
+    }
+
+    private final IdempotentEventService idempotentEventService;
+    private final EventSpool spool;
+    private final BlockingQueue<SpooledEvent> queue;
+    private final int maxBatchSize;
+    private final Set<String> pendingTickets = ConcurrentHashMap.newKeySet();
+    private final BoundedTtlMap<String, EventService.BatchEventResult> results;
+    private final Counter rejected;
+    private List<SpooledEvent> recovered;
+    private Thread writer;
+    private volatile boolean running;
+
+    public WriteBehindEventPipeline(IdempotentEventService idempotentEventService, ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${supplytrack.ingest.spool-file:data/event-spool.ndjson}") Path spoolFile,
+                                    @Value("${supplytrack.ingest.buffer-size:10000}") int bufferSize,
+                                    @Value("${supplytrack.ingest.max-batch-size:500}") int maxBatchSize,
+                                    @Value("${supplytrack.ingest.ticket-ttl:PT1H}") Duration ticketTtl) throws IOException {
+        this.idempotentEventService = idempotentEventService;
+        this.spool = new EventSpool(spoolFile, objectMapper);
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.maxBatchSize = maxBatchSize;
+        this.results = new BoundedTtlMap<>(ticketTtl.toNanos(), bufferSize * 10);
+        EventSpool.Recovered leftOver = spool.readAll();
+        this.recovered = leftOver.entries();
+        recovered.forEach(entry -> pendingTickets.add(entry.ticket()));
+
+        Gauge.builder("supplytrack.ingest.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        this.rejected = Counter.builder("supplytrack.ingest.rejected").register(meterRegistry);
+        Counter.builder("supplytrack.ingest.spool.corrupt").description("Spool entries that could not be read at startup")
+                .register(meterRegistry).increment(leftOver.corrupt());
+    }
+
+    // Returns the ticket once the request is durable in the spool.
+    // Throws RejectedExecutionException when the buffer is full (or the pipeline is stopping).
+    public String accept(Long productId, String eventType, String eventDescription, String location, Long actorUserId,
+                         String idempotencyKey) {
+        if (idempotencyKey != null) {
+            IdempotentEventService.validateKey(idempotencyKey);
+        }
+        String ticket = UUID.randomUUID().toString();
+        // Without a client key the ticket doubles as one, so replaying the spool after a crash can't log twice
+        SpooledEvent entry = new SpooledEvent(ticket, productId, eventType, eventDescription, location, actorUserId,
+                idempotencyKey != null ? idempotencyKey : ticket);
+        long end;
+        try {
+            synchronized (spool) {
+                if (!running || queue.remainingCapacity() == 0) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Event buffer is full; retry later.");
+                }
+                end = spool.append(entry);
+                pendingTickets.add(ticket);
+                queue.add(entry); // Spool order and queue order always match
+            }
+            spool.awaitDurable(end);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the event spool", e);
+        }
+        return ticket;
+    }
+
+    // Outcome of a ticket: the batch result once written, empty while pending or when unknown/expired
+    public Optional<EventService.BatchEventResult> getResult(String ticket) {
+        return Optional.ofNullable(results.get(ticket));
+    }
+
+    public boolean isPending(String ticket) {
+        return pendingTickets.contains(ticket);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "event-write-behind");
+        writer.start();
+    }
+
+    // Stops accepting, then lets the writer empty the queue; whatever is still uncommitted stays in the spool
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+            if (writer.isAlive()) {
+                writer.interrupt();
+                writer.join();
+            }
+            spool.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Could not close the event spool", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0; // Starts before and stops after the web server, so accepted requests are always drained
+    }
+
+    private void drain() {
+        // Entries accepted by a previous run go first; anything accepted since then is queued behind them
+        for (int from = 0; from < recovered.size(); from += maxBatchSize) {
+            if (!write(recovered.subList(from, Math.min(from + maxBatchSize, recovered.size())))) {
+                return;
+            }
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Replayed {} spooled events", recovered.size());
+        }
+        recovered = null;
+
+        List<SpooledEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SpooledEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!write(batch)) {
+                return;
+            }
+            batch.clear();
+            truncateSpoolIfDrained();
+        }
+    }
+
+    // One transaction for the whole batch. Returns false only if interrupted while the database was unavailable.
+    private boolean write(List<SpooledEvent> batch) {
+        List<EventService.BatchEvent> events = batch.stream()
+                .map(e -> new EventService.BatchEvent(e.productId(), e.eventType(), e.eventDescription(), e.location(),
+                        e.actorUserId(), e.idempotencyKey()))
+                .toList();
+        for (long backoff = 100; ; backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS)) {
+            try {
+                List<EventService.BatchEventResult> written = idempotentEventService.logEvents(events);
+                for (int i = 0; i < batch.size(); i++) {
+                    complete(batch.get(i), written.get(i));
+                }
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                // One bad row rolls back the whole batch: isolate it by writing the items one by one, in order
+                if (batch.size() > 1) {
+                    for (SpooledEvent entry : batch) {
+                        if (!write(List.of(entry))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                complete(batch.get(0), new EventService.BatchEventResult(0, batch.get(0).productId(),
+                        EventService.BatchEventResult.INVALID, null, e.getMostSpecificCause().getMessage()));
+                return true;
+            } catch (RuntimeException e) {
+                // Database unavailable: keep the batch (and therefore the order) and retry
+                log.warn("Write-behind batch of {} events failed, retrying in {} ms", batch.size(), backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void complete(SpooledEvent entry, EventService.BatchEventResult result) {
+        results.put(entry.ticket(), new EventService.BatchEventResult(0, result.getProductId(), result.getStatus(),
+                result.getEventId(), result.getMessage()));
+        pendingTickets.remove(entry.ticket());
+    }
+
+    // Everything appended so far is committed once the queue is empty (this thread is the only consumer)
+    private void truncateSpoolIfDrained() {
+        synchronized (spool) {
+            if (!queue.isEmpty()) {
+                return;
+            }
+            try {
+                spool.truncate();
+            } catch (IOException e) {
+                log.warn("Could not truncate the event spool; its entries will be replayed as duplicates", e);
+            }
+        }
+    }
+}
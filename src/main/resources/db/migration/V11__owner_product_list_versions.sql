@@ -0,0 +1,4 @@
+-- Version of each user's product list, for the list ETag. Bumped in the same transaction as every write that moves
+-- a product from one owner to another, for both owners. Writes within a list show in the ETag through the products'
+-- own versions (ProductJdbcRepository.findListVersion), so they never lock the users row.
+ALTER TABLE users ADD COLUMN product_list_version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,17 @@
+-- Coordination of the event archive between instances that share one archive directory. One instance at a time
+-- holds the archiver lease and writes segments; a month leaves the events table only once every live instance has
+-- reported loading its segment (EventPartitionMaintenance).
+CREATE TABLE IF NOT EXISTS event_archive_lease (
+    id INT PRIMARY KEY,
+    holder VARCHAR(64),
+    expires_at TIMESTAMP NOT NULL
+);
+INSERT INTO event_archive_lease (id, holder, expires_at) VALUES (1, NULL, TIMESTAMP '1970-01-01 00:00:00');
+
+-- One row per running instance, refreshed on every maintenance run. loaded_through is the month of the newest
+-- segment the instance has loaded, NULL while it has loaded none.
+CREATE TABLE IF NOT EXISTS event_archive_nodes (
+    node_id VARCHAR(64) PRIMARY KEY,
+    loaded_through DATE,
+    seen_at TIMESTAMP NOT NULL
+);
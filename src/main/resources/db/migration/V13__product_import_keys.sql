@@ -0,0 +1,12 @@
+-- Rows stored by imports sent with an Idempotency-Key: a retried upload with the same key reports these rows with
+-- their original ids instead of creating them again. Removed with the month of their HARVESTED event when it is
+-- archived, like event_idempotency_keys.
+CREATE TABLE IF NOT EXISTS product_import_rows (
+    owner_user_id BIGINT NOT NULL,
+    import_key VARCHAR(255) NOT NULL,
+    row_index INT NOT NULL,
+    product_id BIGINT NOT NULL,
+    event_id BIGINT NOT NULL,
+    PRIMARY KEY (owner_user_id, import_key, row_index)
+);
+CREATE INDEX IF NOT EXISTS idx_product_import_rows_event ON product_import_rows (event_id);
@@ -0,0 +1,12 @@
+-- Version of each user's product list, for the list ETag, kept as up to 16 stripe rows per owner. Every write to a
+-- product adds one to the stripe (product id mod 16) of each owner whose list it changes, in the transaction of the
+-- write; the list version is the sum of the owner's stripes. Reading it is a primary-key range of at most 16 rows,
+-- and writes to different products of one owner only wait on each other when their products share a stripe.
+-- Replaces V11's users.product_list_version plus the per-poll COUNT/SUM over the owner's products.
+CREATE TABLE IF NOT EXISTS product_list_versions (
+    owner_user_id BIGINT NOT NULL,
+    stripe SMALLINT NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (owner_user_id, stripe)
+);
+ALTER TABLE users DROP COLUMN product_list_version;
@@ -0,0 +1,18 @@
+-- Idempotency keys are chosen by clients, so two users may pick the same one for the same product. Scoping the key
+-- by the event's actor as well keeps their events apart instead of answering one with the other's event. A key
+-- reused by the same actor with a different body is refused by comparing the request with the event the key
+-- produced, so no request hash is stored. Rebuilt rather than altered: the primary key's constraint name differs
+-- between H2 and PostgreSQL.
+CREATE TABLE IF NOT EXISTS event_idempotency_keys_v16 (
+    product_id BIGINT NOT NULL,
+    actor_user_id BIGINT NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    event_id BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (product_id, actor_user_id, idempotency_key)
+);
+INSERT INTO event_idempotency_keys_v16 (product_id, actor_user_id, idempotency_key, event_id, created_at)
+SELECT k.product_id, e.actor_user_id, k.idempotency_key, k.event_id, k.created_at
+FROM event_idempotency_keys k JOIN events e ON e.id = k.event_id;
+DROP TABLE event_idempotency_keys;
+ALTER TABLE event_idempotency_keys_v16 RENAME TO event_idempotency_keys;
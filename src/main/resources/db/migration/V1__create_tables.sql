@@ -0,0 +1,28 @@
+-- Baseline schema (same tables the README used to create by hand).
+-- Existing databases are baselined at version 1 and skip this script.
+CREATE TABLE IF NOT EXISTS users (
+    id BIGSERIAL PRIMARY KEY,
+    username VARCHAR(255) NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    role VARCHAR(50) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS products (
+    id BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    origin VARCHAR(255) NOT NULL,
+    current_status VARCHAR(50) NOT NULL,
+    current_location VARCHAR(255) NOT NULL,
+    created_date TIMESTAMP NOT NULL,
+    owner_user_id BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS events (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    event_description VARCHAR(255),
+    timestamp TIMESTAMP NOT NULL,
+    location VARCHAR(255) NOT NULL,
+    actor_user_id BIGINT NOT NULL
+);
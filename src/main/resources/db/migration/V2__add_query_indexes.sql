@@ -0,0 +1,12 @@
+-- Indexes for the hot query paths (see SchemaIndexTests, which checks the plans use them).
+
+-- EventJdbcRepository's trace queries: full, keyset-paged and streamed
+CREATE INDEX IF NOT EXISTS idx_events_product_timestamp ON events (product_id, timestamp, id);
+
+-- ProductJdbcRepository.findByOwnerUserId and the paged product list, one per filter combination
+CREATE INDEX IF NOT EXISTS idx_products_owner_created ON products (owner_user_id, created_date, id);
+CREATE INDEX IF NOT EXISTS idx_products_owner_status_created ON products (owner_user_id, current_status, created_date, id);
+CREATE INDEX IF NOT EXISTS idx_products_owner_location_created ON products (owner_user_id, current_location, created_date, id);
+
+-- UserRepository.findByUsername (login, registration check)
+CREATE UNIQUE INDEX IF NOT EXISTS ux_users_username ON users (username);
@@ -0,0 +1,2 @@
+-- Optimistic-locking version for products; bumped by every state change (see EventService.logEvent)
+ALTER TABLE products ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,25 @@
+-- Per-product, gap-free event sequence numbers (1, 2, 3, ...) so clients can detect missed events.
+ALTER TABLE events ADD COLUMN seq BIGINT;
+ALTER TABLE products ADD COLUMN last_event_seq BIGINT NOT NULL DEFAULT 0;
+
+-- UPDATE ... FROM rather than MERGE, which PostgreSQL only has from version 15
+UPDATE events SET seq = r.rn
+FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY product_id ORDER BY timestamp, id) AS rn FROM events) r
+WHERE events.id = r.id;
+
+UPDATE products SET last_event_seq = m.max_seq
+FROM (SELECT product_id, MAX(seq) AS max_seq FROM events GROUP BY product_id) m
+WHERE products.id = m.product_id;
+
+ALTER TABLE events ALTER COLUMN seq SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS ux_events_product_seq ON events (product_id, seq);
+
+-- Idempotency-Key values already applied to a product, pointing at the event they produced.
+-- The primary key is what makes a concurrent retry fail instead of writing a duplicate event.
+CREATE TABLE IF NOT EXISTS event_idempotency_keys (
+    product_id BIGINT NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    event_id BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (product_id, idempotency_key)
+);
@@ -0,0 +1,2 @@
+-- EventJdbcRepository.findByActorUserIdAfterId: Last-Event-ID resume of the per-owner live stream
+CREATE INDEX IF NOT EXISTS idx_events_actor_id ON events (actor_user_id, id);
@@ -0,0 +1,22 @@
+-- Recall queries (RecallService).
+
+-- Which products were at a location during a time window: a range scan that never touches the table rows
+CREATE INDEX IF NOT EXISTS idx_events_location_timestamp ON events (location, timestamp, product_id);
+
+-- Co-location graph: one row per product and location it has been at, with the first and last event there.
+-- Kept up to date by ProductVisitRecorder in the transaction that logs the events, and not touched when months
+-- move to the archive, so exposure queries never read events.
+CREATE TABLE IF NOT EXISTS product_visits (
+    location VARCHAR(255) NOT NULL,
+    product_id BIGINT NOT NULL,
+    first_seen TIMESTAMP NOT NULL,
+    last_seen TIMESTAMP NOT NULL,
+    PRIMARY KEY (location, product_id)
+);
+-- Where an exposed product went afterwards
+CREATE INDEX IF NOT EXISTS idx_product_visits_product ON product_visits (product_id, location);
+-- Who else was at a contaminated location since a given time
+CREATE INDEX IF NOT EXISTS idx_product_visits_location_last_seen ON product_visits (location, last_seen, product_id);
+
+INSERT INTO product_visits (location, product_id, first_seen, last_seen)
+SELECT location, product_id, MIN(timestamp), MAX(timestamp) FROM events GROUP BY location, product_id;
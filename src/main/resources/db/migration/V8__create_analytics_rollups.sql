@@ -0,0 +1,31 @@
+-- Pre-aggregated analytics (AnalyticsService), one row per day and dimension. Rows only ever grow by the deltas
+-- the application flushes, or are rewritten by a rebuild. Dashboards read day ranges, so the keys lead with event_day.
+
+-- Events logged per actor (the owner logging them), day and event type
+CREATE TABLE IF NOT EXISTS rollup_daily_events (
+    event_day DATE NOT NULL,
+    actor_user_id BIGINT NOT NULL,
+    event_type VARCHAR(50) NOT NULL,
+    event_count BIGINT NOT NULL,
+    PRIMARY KEY (event_day, actor_user_id, event_type)
+);
+
+-- Time products spent at a location: dwell_millis sums the gaps from each event there to the product's next
+-- event; stays counts the next events that were somewhere else (the product left). Average dwell = dwell / stays.
+CREATE TABLE IF NOT EXISTS rollup_location_dwell (
+    event_day DATE NOT NULL,
+    location VARCHAR(255) NOT NULL,
+    stays BIGINT NOT NULL,
+    dwell_millis BIGINT NOT NULL,
+    PRIMARY KEY (event_day, location)
+);
+
+-- Time between consecutive events of a product, by the pair of event types
+CREATE TABLE IF NOT EXISTS rollup_transit (
+    event_day DATE NOT NULL,
+    from_event_type VARCHAR(50) NOT NULL,
+    to_event_type VARCHAR(50) NOT NULL,
+    transitions BIGINT NOT NULL,
+    transit_millis BIGINT NOT NULL,
+    PRIMARY KEY (event_day, from_event_type, to_event_type)
+);
@@ -0,0 +1,56 @@
+-- Event types and locations are stored once in dictionary tables and referenced by small integer ids from every
+-- event and product row (NameDictionary). There are a few dozen event types (which are also the product statuses)
+-- and a few thousand locations, repeated on every row and in the location/status indexes.
+-- Ids only ever get added: the application takes the next one from a sequence (vendor V10) when it meets a new name.
+-- Both ids are INT, since either name is free text from clients and a SMALLINT range could be used up.
+-- On a large events table the backfill rewrites every row; plan the upgrade for a quiet period.
+
+CREATE TABLE IF NOT EXISTS event_types (
+    id INT PRIMARY KEY,
+    name VARCHAR(50) NOT NULL
+);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_event_types_name ON event_types (name);
+
+CREATE TABLE IF NOT EXISTS locations (
+    id INT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL
+);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_locations_name ON locations (name);
+
+INSERT INTO event_types (id, name)
+SELECT CAST(ROW_NUMBER() OVER (ORDER BY name) AS INT), name
+FROM (SELECT event_type AS name FROM events UNION SELECT current_status FROM products) names;
+
+INSERT INTO locations (id, name)
+SELECT CAST(ROW_NUMBER() OVER (ORDER BY name) AS INT), name
+FROM (SELECT location AS name FROM events UNION SELECT current_location FROM products) names;
+
+-- Indexes on the string columns are rebuilt on the ids below
+DROP INDEX IF EXISTS idx_events_location_timestamp;
+DROP INDEX IF EXISTS idx_products_owner_status_created;
+DROP INDEX IF EXISTS idx_products_owner_location_created;
+
+ALTER TABLE events ADD COLUMN event_type_id INT;
+ALTER TABLE events ADD COLUMN location_id INT;
+UPDATE events SET
+    event_type_id = (SELECT t.id FROM event_types t WHERE t.name = events.event_type),
+    location_id = (SELECT l.id FROM locations l WHERE l.name = events.location);
+ALTER TABLE events ALTER COLUMN event_type_id SET NOT NULL;
+ALTER TABLE events ALTER COLUMN location_id SET NOT NULL;
+ALTER TABLE events DROP COLUMN event_type;
+ALTER TABLE events DROP COLUMN location;
+
+ALTER TABLE products ADD COLUMN current_status_id INT;
+ALTER TABLE products ADD COLUMN current_location_id INT;
+UPDATE products SET
+    current_status_id = (SELECT t.id FROM event_types t WHERE t.name = products.current_status),
+    current_location_id = (SELECT l.id FROM locations l WHERE l.name = products.current_location);
+ALTER TABLE products ALTER COLUMN current_status_id SET NOT NULL;
+ALTER TABLE products ALTER COLUMN current_location_id SET NOT NULL;
+ALTER TABLE products DROP COLUMN current_status;
+ALTER TABLE products DROP COLUMN current_location;
+
+-- Same access paths as V2/V7, on the ids
+CREATE INDEX IF NOT EXISTS idx_events_location_timestamp ON events (location_id, timestamp, product_id);
+CREATE INDEX IF NOT EXISTS idx_products_owner_status_created ON products (owner_user_id, current_status_id, created_date, id);
+CREATE INDEX IF NOT EXISTS idx_products_owner_location_created ON products (owner_user_id, current_location_id, created_date, id);
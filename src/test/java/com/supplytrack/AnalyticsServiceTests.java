@@ -0,0 +1,103 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class AnalyticsServiceTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AnalyticsService analyticsService;
+
+	@Autowired
+	private AnalyticsJdbcRepository analyticsJdbcRepository;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void flushedRollupsMatchARebuildFromTheEvents() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String barn = "Barn " + UUID.randomUUID();
+		String depot = "Depot " + UUID.randomUUID();
+		Product product = productService.createProduct("Pears", "Orchard", barn, farmer.getId());
+		eventService.logEvent(product.getId(), "QUALITY_CHECK", null, barn, farmer.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", null, depot, farmer.getId());
+		LocalDate today = LocalDate.now();
+
+		analyticsService.flush();
+		assertRollups(farmer, barn, today);
+
+		analyticsService.rebuild();
+		assertRollups(farmer, barn, today);
+	}
+
+	private void assertRollups(User farmer, String barn, LocalDate today) {
+		List<AnalyticsJdbcRepository.DailyEvents> daily = analyticsJdbcRepository.findDailyEvents(today.minusDays(1), today.plusDays(1), farmer.getId(), null);
+		assertThat(daily).extracting(AnalyticsJdbcRepository.DailyEvents::events).containsExactly(3L);
+
+		// Two gaps at the barn (HARVESTED -> QUALITY_CHECK, QUALITY_CHECK -> SHIPPED), one stay: it left for the depot
+		List<AnalyticsJdbcRepository.LocationDwell> dwell = analyticsJdbcRepository.findLocationDwell(today.minusDays(1), today.plusDays(1), barn);
+		assertThat(dwell).singleElement().satisfies(row -> {
+			assertThat(row.stays()).isEqualTo(1);
+			assertThat(row.averageDwellSeconds()).isNotNull().isGreaterThanOrEqualTo(0.0);
+		});
+
+		List<AnalyticsJdbcRepository.TransitTime> transit = analyticsJdbcRepository.findTransitTimes(today.minusDays(1), today.plusDays(1), "HARVESTED", "QUALITY_CHECK");
+		assertThat(transit).singleElement().satisfies(row -> assertThat(row.transitions()).isGreaterThanOrEqualTo(1));
+	}
+
+	@Test
+	void dashboardsAreForAdminsThatRegistrationCannotCreate() throws Exception {
+		String admin = "admin-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(admin, passwordEncoder.encode("secret"), "ROLE_ADMIN"));
+		String farmer = "farmer-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(farmer, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String selfMade = "admin-" + UUID.randomUUID();
+		String url = "/api/analytics/events-per-day?from=2026-01-01&to=2026-01-31";
+
+		mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, basic(admin))).andExpect(status().isOk());
+		mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, basic(farmer))).andExpect(status().isForbidden());
+		mockMvc.perform(post("/api/register").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"username\": \"" + selfMade + "\", \"password\": \"secret\", \"role\": \"ADMIN\"}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, basic(selfMade))).andExpect(status().isUnauthorized());
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
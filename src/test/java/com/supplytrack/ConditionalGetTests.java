@@ -0,0 +1,119 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ConditionalGetTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void traceAndListAnswer304UntilAnEventIsLogged() throws Exception {
+		String username = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(username, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+		Product product = productService.createProduct("Pears", "Orchard", "Barn", farmer.getId());
+		String traceUrl = "/api/products/" + product.getId() + "/trace";
+
+		String traceETag = mockMvc.perform(get(traceUrl).header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		String listETag = mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(traceETag).isNotNull();
+		assertThat(listETag).isNotNull();
+
+		mockMvc.perform(get(traceUrl).header(HttpHeaders.AUTHORIZATION, auth).header(HttpHeaders.IF_NONE_MATCH, traceETag))
+				.andExpect(status().isNotModified());
+		mockMvc.perform(get("/api/products").param("limit", "10").header(HttpHeaders.AUTHORIZATION, auth)
+						.header(HttpHeaders.IF_NONE_MATCH, listETag))
+				.andExpect(status().isNotModified());
+
+		eventService.logEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+		// Creation and the event both bumped the product's stripe of the owner's list version, and nothing else
+		assertThat(jdbcTemplate.queryForList("SELECT stripe FROM product_list_versions WHERE owner_user_id = ?", Long.class, farmer.getId()))
+				.containsExactly(product.getId() % ProductJdbcRepository.LIST_VERSION_STRIPES);
+		assertThat(jdbcTemplate.queryForObject("SELECT version FROM product_list_versions WHERE owner_user_id = ?", Long.class, farmer.getId()))
+				.isEqualTo(2);
+
+		mockMvc.perform(get(traceUrl).header(HttpHeaders.AUTHORIZATION, auth).header(HttpHeaders.IF_NONE_MATCH, traceETag))
+				.andExpect(status().isOk());
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, auth).header(HttpHeaders.IF_NONE_MATCH, listETag))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void bothListsChangeWhenAProductChangesHands() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		User distributor = userRepository.save(User.createNewUser("distributor-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_DISTRIBUTOR"));
+		Product first = productService.createProduct("Figs", "Orchard", "Barn", farmer.getId());
+		Product second = productService.createProduct("Dates", "Orchard", "Barn", farmer.getId());
+		String farmerETag = listETag(farmer);
+		String distributorETag = listETag(distributor);
+
+		eventService.logEvent(first.getId(), "HANDOVER", null, "Depot", distributor.getId());
+		assertThat(listETag(farmer)).isNotEqualTo(farmerETag);
+		assertThat(listETag(distributor)).isNotEqualTo(distributorETag);
+
+		farmerETag = listETag(farmer);
+		eventService.logEvents(List.of(new EventService.BatchEvent(second.getId(), "HANDOVER", null, "Depot", distributor.getId(), null)));
+		assertThat(listETag(farmer)).isNotEqualTo(farmerETag);
+
+		farmerETag = listETag(farmer);
+		productService.createProduct("Plums", "Orchard", "Barn", farmer.getId());
+		assertThat(listETag(farmer)).isNotEqualTo(farmerETag);
+	}
+
+	@Test
+	void listIsReadInTheTransactionOfItsVersion() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		// With read replicas one transaction is one connection, so the version and the list come from the same database
+		boolean inReadOnlyTransaction = productService.readOwnerList(farmer.getId(), listVersion ->
+				TransactionSynchronizationManager.isActualTransactionActive() && TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+		assertThat(inReadOnlyTransaction).isTrue();
+	}
+
+	private String listETag(User user) throws Exception {
+		String auth = "Basic " + Base64.getEncoder().encodeToString((user.getUsername() + ":secret").getBytes(StandardCharsets.UTF_8));
+		return mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+	}
+}
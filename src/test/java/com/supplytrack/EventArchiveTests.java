@@ -0,0 +1,159 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class EventArchiveTests {
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private EventJdbcRepository eventJdbcRepository;
+
+	@Autowired
+	private EventPartitionMaintenance maintenance;
+
+	@Autowired
+	private EventArchive eventArchive;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	// Other cached test contexts share this in-memory database, each with its own archive directory; they would
+	// count as instances that never load this context's segments
+	@BeforeEach
+	void forgetOtherInstances() {
+		jdbcTemplate.update("DELETE FROM event_archive_nodes WHERE node_id <> ?", maintenance.nodeId());
+	}
+
+	@Test
+	void closedMonthsMoveToTheArchiveAndTracesStayTheSame() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Quinces", "Orchard", "Barn", farmer.getId());
+		// Two months of history well outside the hot window, with repeated and null strings
+		YearMonth old = YearMonth.now().minusMonths(30);
+		List<Event> oldEvents = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			YearMonth month = old.plusMonths(i / 20);
+			oldEvents.add(new Event(null, product.getId(), i % 3 == 0 ? "SHIPPED" : "SCANNED", i % 4 == 0 ? null : "Dock " + (i % 5),
+					month.atDay(1 + i % 20).atTime(8, i, 0, 123_456_000), "Warehouse " + (i % 2), farmer.getId(), 100L + i));
+		}
+		eventJdbcRepository.insertAll(oldEvents);
+		eventService.logEvent(product.getId(), "RECEIVED", null, "Shop", farmer.getId());
+		List<Event> before = eventService.getEventsForProduct(product.getId());
+
+		List<YearMonth> archived = maintenance.archiveClosedMonths(YearMonth.now());
+
+		assertThat(archived).containsExactly(old, old.plusMonths(1));
+		assertThat(eventJdbcRepository.findByProductId(product.getId())).hasSize(2); // HARVESTED + RECEIVED
+		assertThat(eventArchive.findByProductId(product.getId())).hasSize(40);
+		List<Event> after = eventService.getEventsForProduct(product.getId());
+		assertThat(after).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(before);
+
+		// Keyset pages and the streamed trace cross from the archive into the table without gaps or repeats
+		List<Event> paged = new ArrayList<>();
+		KeysetCursor cursor = null;
+		while (true) {
+			List<Event> page = eventService.getEventPageForProduct(product.getId(), cursor, 7);
+			paged.addAll(page.subList(0, Math.min(7, page.size())));
+			if (page.size() <= 7) {
+				break;
+			}
+			Event last = page.get(6);
+			cursor = new KeysetCursor(last.getTimestamp(), last.getId());
+		}
+		assertThat(paged).extracting(Event::getId).containsExactlyElementsOf(before.stream().map(Event::getId).toList());
+		List<Event> streamed = new ArrayList<>();
+		eventService.streamEventsForProduct(product.getId(), streamed::add);
+		assertThat(streamed).extracting(Event::getId).containsExactlyElementsOf(before.stream().map(Event::getId).toList());
+
+		assertThat(maintenance.archiveClosedMonths(YearMonth.now())).isEmpty();
+	}
+
+	@Test
+	void aMonthStaysInTheDatabaseUntilEveryInstanceHasLoadedItsSegment() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Sloes", "Hedge", "Barn", farmer.getId());
+		YearMonth month = YearMonth.now().minusMonths(50);
+		eventJdbcRepository.insertAll(List.of(new Event(null, product.getId(), "SCANNED", null, month.atDay(3).atTime(9, 0),
+				"Warehouse", farmer.getId(), 300L)));
+		jdbcTemplate.update("INSERT INTO event_archive_nodes (node_id, loaded_through, seen_at) VALUES ('other', NULL, CURRENT_TIMESTAMP)");
+
+		assertThat(maintenance.archiveClosedMonths(YearMonth.now())).isEmpty();
+		assertThat(eventArchive.contains(month)).isTrue();
+		assertThat(eventJdbcRepository.findByProductId(product.getId())).hasSize(2);
+
+		// While another instance holds the lease this one does not archive at all
+		jdbcTemplate.update("UPDATE event_archive_nodes SET loaded_through = ? WHERE node_id = 'other'", Date.valueOf(month.atDay(1)));
+		jdbcTemplate.update("UPDATE event_archive_lease SET holder = 'other', expires_at = DATEADD('HOUR', 1, CURRENT_TIMESTAMP)");
+		assertThat(maintenance.archiveClosedMonths(YearMonth.now())).isEmpty();
+		jdbcTemplate.update("UPDATE event_archive_lease SET holder = NULL");
+
+		assertThat(maintenance.archiveClosedMonths(YearMonth.now())).containsExactly(month);
+		assertThat(eventJdbcRepository.findByProductId(product.getId())).hasSize(1);
+		assertThat(eventService.getEventsForProduct(product.getId())).hasSize(2);
+	}
+
+	@Test
+	void aMonthThatIsArchivedButNotYetRemovedIsReadOnce() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Medlars", "Orchard", "Barn", farmer.getId());
+		YearMonth month = YearMonth.now().minusMonths(40);
+		List<Event> oldEvents = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			oldEvents.add(new Event(null, product.getId(), "SCANNED", null, month.atDay(1 + i).atTime(9, 0), "Warehouse", farmer.getId(), 200L + i));
+		}
+		eventJdbcRepository.insertAll(oldEvents);
+		// As after a crash between the two steps of EventPartitionMaintenance: the segment is published, the rows are still in the table
+		try (EventArchive.SegmentWriter writer = eventArchive.newSegment(month)) {
+			for (Event event : eventJdbcRepository.findByProductId(product.getId())) {
+				if (YearMonth.from(event.getTimestamp()).equals(month)) {
+					writer.add(event);
+				}
+			}
+			writer.publish();
+		}
+		List<Long> expected = eventService.getEventsForProduct(product.getId()).stream().map(Event::getId).toList();
+		assertThat(expected).hasSize(11);
+
+		List<Long> paged = new ArrayList<>();
+		KeysetCursor cursor = null;
+		while (true) {
+			List<Event> page = eventService.getEventPageForProduct(product.getId(), cursor, 3);
+			page.subList(0, Math.min(3, page.size())).forEach(event -> paged.add(event.getId()));
+			if (page.size() <= 3) {
+				break;
+			}
+			cursor = new KeysetCursor(page.get(2).getTimestamp(), page.get(2).getId());
+		}
+		assertThat(paged).containsExactlyElementsOf(expected);
+		List<Long> streamed = new ArrayList<>();
+		eventService.streamEventsForProduct(product.getId(), event -> streamed.add(event.getId()));
+		assertThat(streamed).containsExactlyElementsOf(expected);
+
+		// The next run only removes the table copy
+		assertThat(maintenance.archiveClosedMonths(YearMonth.now())).contains(month);
+		assertThat(eventService.getEventsForProduct(product.getId())).extracting(Event::getId).containsExactlyElementsOf(expected);
+	}
+}
@@ -0,0 +1,130 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "supplytrack.events.batch.max-size=6")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class EventBatchTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductJdbcRepository productJdbcRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void resultsComeBackPerItemInInputOrder() throws Exception {
+		User farmer = register("farmer", "ROLE_FARMER");
+		User distributor = register("distributor", "ROLE_DISTRIBUTOR");
+		long figs = productService.createProduct("Figs", "Orchard", "Barn", farmer.getId()).getId();
+		long dates = productService.createProduct("Dates", "Orchard", "Barn", farmer.getId()).getId();
+
+		JsonNode response = batch(farmer, status().isOk(), "["
+				+ "{\"productId\": " + figs + ", \"eventType\": \"SHIPPED\", \"location\": \"Dock 1\", \"idempotencyKey\": \"scan-1\"},"
+				+ "{\"productId\": " + Long.MAX_VALUE + ", \"eventType\": \"SHIPPED\", \"location\": \"Dock 1\"},"
+				+ "{\"productId\": " + figs + ", \"eventType\": \"SHIPPED\"},"
+				+ "{\"productId\": " + dates + ", \"location\": \"Depot\", \"newOwnerUserId\": " + Long.MAX_VALUE + "},"
+				+ "{\"productId\": " + figs + ", \"eventType\": \"SHIPPED\", \"location\": \"Dock 1\", \"idempotencyKey\": \"scan-1\"},"
+				+ "{\"productId\": " + dates + ", \"location\": \"Depot\", \"newOwnerUserId\": " + distributor.getId() + "}"
+				+ "]");
+
+		JsonNode results = response.get("results");
+		assertThat(results).extracting(result -> result.get("index").asInt()).containsExactly(0, 1, 2, 3, 4, 5);
+		assertThat(results).extracting(result -> result.get("status").asText()).containsExactly(
+				EventService.BatchEventResult.CREATED,
+				EventService.BatchEventResult.PRODUCT_NOT_FOUND,
+				EventService.BatchEventResult.INVALID,
+				EventService.BatchEventResult.ACTOR_NOT_FOUND,
+				EventService.BatchEventResult.DUPLICATE,
+				EventService.BatchEventResult.CREATED);
+		assertThat(results.get(4).get("eventId").asLong()).isEqualTo(results.get(0).get("eventId").asLong());
+		assertThat(response.get("created").asInt()).isEqualTo(2);
+		assertThat(response.get("duplicates").asInt()).isEqualTo(1);
+		assertThat(response.get("failed").asInt()).isEqualTo(3);
+
+		Product handedOver = productJdbcRepository.findById(dates).orElseThrow();
+		assertThat(handedOver.getOwnerUserId()).isEqualTo(distributor.getId());
+		assertThat(handedOver.getCurrentStatus()).isEqualTo("HANDOVER");
+		assertThat(productJdbcRepository.findById(figs).orElseThrow().getLastEventSeq()).isEqualTo(2);
+	}
+
+	@Test
+	void restaurantHandoversAreForbiddenItemByItem() throws Exception {
+		User farmer = register("farmer", "ROLE_FARMER");
+		User restaurant = register("restaurant", "ROLE_RESTAURANT");
+		long plums = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId()).getId();
+
+		JsonNode response = batch(restaurant, status().isOk(), "["
+				+ "{\"productId\": " + plums + ", \"location\": \"Kitchen\", \"newOwnerUserId\": " + restaurant.getId() + "},"
+				+ "{\"productId\": " + plums + ", \"eventType\": \"RECEIVED\", \"location\": \"Kitchen\"}"
+				+ "]");
+
+		assertThat(response.get("results")).extracting(result -> result.get("status").asText())
+				.containsExactly(EventService.BatchEventResult.FORBIDDEN, EventService.BatchEventResult.CREATED);
+		assertThat(response.get("results").get(0).get("eventId").isNull()).isTrue();
+		// The plain event makes the restaurant the actor, as with log-event
+		assertThat(productJdbcRepository.findById(plums).orElseThrow().getCurrentStatus()).isEqualTo("RECEIVED");
+	}
+
+	@Test
+	void batchesOverTheMaximumSizeAreRejected() throws Exception {
+		User farmer = register("farmer", "ROLE_FARMER");
+		long pears = productService.createProduct("Pears", "Orchard", "Barn", farmer.getId()).getId();
+		String item = "{\"productId\": " + pears + ", \"eventType\": \"SCANNED\", \"location\": \"Dock 1\"}";
+
+		JsonNode response = batch(farmer, status().isBadRequest(), "[" + String.join(",", Collections.nCopies(7, item)) + "]");
+
+		assertThat(response.get("message").asText()).contains("at most 6");
+		assertThat(productJdbcRepository.findById(pears).orElseThrow().getLastEventSeq()).isEqualTo(1);
+	}
+
+	private JsonNode batch(User user, ResultMatcher expectedStatus, String items) throws Exception {
+		String body = mockMvc.perform(post("/api/products/events:batch").contentType(MediaType.APPLICATION_JSON)
+						.content(items)
+						.header(HttpHeaders.AUTHORIZATION, basic(user.getUsername())))
+				.andExpect(expectedStatus)
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		return objectMapper.readTree(body);
+	}
+
+	private User register(String prefix, String role) {
+		return userRepository.save(User.createNewUser(prefix + "-" + UUID.randomUUID(), passwordEncoder.encode("secret"), role));
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,79 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Parallel handovers of one product must leave it in the state of the last logged event
+@SpringBootTest
+@ActiveProfiles("test")
+class EventServiceConcurrencyTests {
+
+	private static final int THREADS = 8;
+	private static final int HANDOVERS_PER_THREAD = 25;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductJdbcRepository productJdbcRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void parallelHandoversLeaveProductMatchingLastEvent() throws Exception {
+		String run = UUID.randomUUID().toString().substring(0, 8);
+		User farmer = userRepository.save(User.createNewUser("farmer-" + run, "x", "ROLE_FARMER"));
+		List<Long> distributorIds = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			distributorIds.add(userRepository.save(User.createNewUser("distributor-" + t + "-" + run, "x", "ROLE_DISTRIBUTOR")).getId());
+		}
+		Product product = productService.createProduct("Tomatoes", "Farm", "Barn", farmer.getId());
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			Long actorId = distributorIds.get(t);
+			int thread = t;
+			futures.add(pool.submit(() -> {
+				start.await();
+				for (int i = 0; i < HANDOVERS_PER_THREAD; i++) {
+					assertThat(eventService.logEvent(product.getId(), "HANDOVER", "stress", "Depot-" + thread + "-" + i, actorId)).isPresent();
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		pool.shutdown();
+
+		List<Event> history = eventService.getEventsForProduct(product.getId());
+		assertThat(history).hasSize(1 + THREADS * HANDOVERS_PER_THREAD);
+		Event last = history.get(history.size() - 1);
+		assertThat(last.getSeq()).isEqualTo(history.size());
+
+		Product reloaded = productJdbcRepository.findById(product.getId()).orElseThrow();
+		assertThat(reloaded.getVersion()).isEqualTo(product.getVersion() + THREADS * HANDOVERS_PER_THREAD);
+		assertThat(reloaded.getCurrentStatus()).isEqualTo(last.getEventType());
+		assertThat(reloaded.getCurrentLocation()).isEqualTo(last.getLocation());
+		assertThat(reloaded.getOwnerUserId()).isEqualTo(last.getActorUserId());
+	}
+}
@@ -0,0 +1,160 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// One replay thread with room for one queued replay, and replays of a chosen product held until the test lets go
+@SpringBootTest(properties = {"supplytrack.sse.replay-threads=1", "supplytrack.sse.replay-queue=1"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class EventStreamHubTests {
+
+	private static volatile Long heldProductId;
+	private static volatile CountDownLatch replayStarted = new CountDownLatch(1);
+	private static volatile CountDownLatch releaseReplay = new CountDownLatch(0);
+
+	@TestConfiguration
+	static class HeldReplays {
+
+		@Bean
+		@Primary
+		EventJdbcRepository heldReplayEventJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate, DataSource dataSource,
+				NameDictionary dictionary) {
+			return new EventJdbcRepository(jdbcTemplate, dataSource, dictionary, 500) {
+				@Override
+				public List<Event> findByProductIdAfterSeq(Long productId, long seq, int limit) {
+					if (productId.equals(heldProductId)) {
+						replayStarted.countDown();
+						try {
+							releaseReplay.await(10, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					return super.findByProductIdAfterSeq(productId, seq, limit);
+				}
+			};
+		}
+	}
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void productStreamReplaysFromLastEventIdThenPushesCommittedEvents() throws Exception {
+		String username = "restaurant-" + UUID.randomUUID();
+		User user = userRepository.save(User.createNewUser(username, passwordEncoder.encode("secret"), "ROLE_RESTAURANT"));
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+		Product product = productService.createProduct("Figs", "Orchard", "Barn", user.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", null, "Truck", user.getId());
+
+		MockHttpServletResponse response = mockMvc.perform(get("/api/products/" + product.getId() + "/events/stream")
+						.header(HttpHeaders.AUTHORIZATION, auth)
+						.header("Last-Event-ID", "1"))
+				.andExpect(request().asyncStarted())
+				.andReturn().getResponse();
+		eventService.logEvent(product.getId(), "RECEIVED", null, "Kitchen", user.getId());
+
+		String body = awaitContent(response, "id:3");
+		assertThat(body).contains("id:2").contains("\"location\":\"Kitchen\"").doesNotContain("id:1\n");
+		assertThat(body.indexOf("id:2")).isLessThan(body.indexOf("id:3"));
+	}
+
+	@Test
+	void slowReplaysQueueOnTheirOwnPoolWhileLiveEventsKeepFlowing() throws Exception {
+		String username = "restaurant-" + UUID.randomUUID();
+		User user = userRepository.save(User.createNewUser(username, passwordEncoder.encode("secret"), "ROLE_RESTAURANT"));
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+		Product held = productService.createProduct("Quinces", "Orchard", "Barn", user.getId());
+		Product queued = productService.createProduct("Medlars", "Orchard", "Barn", user.getId());
+		Product live = productService.createProduct("Sloes", "Hedge", "Barn", user.getId());
+
+		heldProductId = held.getId();
+		replayStarted = new CountDownLatch(1);
+		releaseReplay = new CountDownLatch(1);
+		try {
+			MockHttpServletResponse heldResponse = mockMvc.perform(get("/api/products/" + held.getId() + "/events/stream")
+							.header(HttpHeaders.AUTHORIZATION, auth)
+							.header("Last-Event-ID", "0"))
+					.andExpect(request().asyncStarted())
+					.andReturn().getResponse();
+			assertThat(replayStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+			// The only replay thread is busy: the next reconnect waits in the queue, the one after that is turned away
+			mockMvc.perform(get("/api/products/" + queued.getId() + "/events/stream")
+							.header(HttpHeaders.AUTHORIZATION, auth)
+							.header("Last-Event-ID", "0"))
+					.andExpect(request().asyncStarted());
+			mockMvc.perform(get("/api/products/" + queued.getId() + "/events/stream")
+							.header(HttpHeaders.AUTHORIZATION, auth)
+							.header("Last-Event-ID", "0"))
+					.andExpect(status().isServiceUnavailable());
+
+			// A subscriber without Last-Event-ID is not held up by the replays
+			MockHttpServletResponse liveResponse = mockMvc.perform(get("/api/products/" + live.getId() + "/events/stream")
+							.header(HttpHeaders.AUTHORIZATION, auth))
+					.andExpect(request().asyncStarted())
+					.andReturn().getResponse();
+			eventService.logEvent(live.getId(), "SHIPPED", null, "Truck", user.getId());
+			assertThat(awaitContent(liveResponse, "id:2")).contains("\"location\":\"Truck\"");
+
+			// Live events for the held subscriber wait behind its replay and come after it
+			eventService.logEvent(held.getId(), "SHIPPED", null, "Truck", user.getId());
+			assertThat(heldResponse.getContentAsString(StandardCharsets.UTF_8)).doesNotContain("id:");
+			releaseReplay.countDown();
+			String body = awaitContent(heldResponse, "id:2");
+			assertThat(body).contains("id:1");
+			assertThat(body.indexOf("id:1")).isLessThan(body.indexOf("id:2"));
+		} finally {
+			heldProductId = null;
+			releaseReplay.countDown();
+		}
+	}
+
+	private static String awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+		for (int i = 0; i < 100; i++) {
+			String body = response.getContentAsString(StandardCharsets.UTF_8);
+			if (body.contains(expected)) {
+				return body;
+			}
+			Thread.sleep(50);
+		}
+		return response.getContentAsString(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,94 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ExportControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void adminExportsFilteredEventsAsCsvAndProductsAsNdjson() throws Exception {
+		String admin = "admin-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(admin, passwordEncoder.encode("secret"), "ROLE_ADMIN"));
+		String farmerName = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		Product product = productService.createProduct("Olives", "Grove", "Barn", farmer.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", "Crate 7, \"fragile\"", "Truck", farmer.getId());
+		eventService.logEvent(product.getId(), "RECEIVED", null, "Depot", farmer.getId());
+
+		String csv = export(admin, "/api/export/events?format=csv&eventType=SHIPPED&owner=" + farmer.getId());
+		assertThat(csv.lines()).hasSize(2);
+		assertThat(csv.lines().findFirst()).hasValue("id,product_id,event_type,event_description,timestamp,location,actor_user_id,seq");
+		assertThat(csv).contains(",SHIPPED,\"Crate 7, \"\"fragile\"\"\",").contains(",Truck," + farmer.getId() + ",2");
+
+		String ndjson = export(admin, "/api/export/products?owner=" + farmer.getId());
+		assertThat(ndjson.lines()).hasSize(1);
+		assertThat(ndjson).contains("\"name\":\"Olives\"").contains("\"currentStatus\":\"RECEIVED\"");
+
+		mockMvc.perform(get("/api/export/events").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isForbidden());
+	}
+
+	@Test
+	void adminAndUnknownRolesCannotBeSelfRegistered() throws Exception {
+		for (String role : new String[]{"ADMIN", "ROLE_ADMIN", "admin", "SUPERUSER", null}) {
+			String username = "self-made-" + UUID.randomUUID();
+			String body = "{\"username\": \"" + username + "\", \"password\": \"secret\", \"role\": "
+					+ (role == null ? "null" : "\"" + role + "\"") + "}";
+			mockMvc.perform(post("/api/register").contentType(MediaType.APPLICATION_JSON).content(body))
+					.andExpect(status().isBadRequest());
+			assertThat(userRepository.findByUsername(username)).isEmpty();
+			mockMvc.perform(get("/api/export/events").header(HttpHeaders.AUTHORIZATION, basic(username)))
+					.andExpect(status().isUnauthorized());
+		}
+	}
+
+	private String export(String username, String url) throws Exception {
+		MvcResult started = mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, basic(username)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,99 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class IdempotentEventServiceTests {
+
+	@Autowired
+	private IdempotentEventService idempotentEventService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void retryWithSameKeyReturnsOriginalEventAndWritesNothing() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Lettuce", "Farm", "Barn", farmer.getId());
+
+		Event first = idempotentEventService.logEvent("scan-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId()).orElseThrow();
+		Event retry = idempotentEventService.logEvent("scan-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId()).orElseThrow();
+		Event next = idempotentEventService.logEvent("scan-2", product.getId(), "RECEIVED", null, "Depot", farmer.getId()).orElseThrow();
+
+		assertThat(retry.getId()).isEqualTo(first.getId());
+		List<Event> history = eventService.getEventsForProduct(product.getId());
+		assertThat(history).extracting(Event::getSeq).containsExactly(1L, 2L, 3L);
+		assertThat(next.getSeq()).isEqualTo(3L);
+	}
+
+	@Test
+	void batchReportsRepeatedKeysAsDuplicates() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Carrots", "Farm", "Barn", farmer.getId());
+		List<EventService.BatchEvent> batch = List.of(
+				new EventService.BatchEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId(), "k1"),
+				new EventService.BatchEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId(), "k1"),
+				new EventService.BatchEvent(product.getId(), "RECEIVED", null, "Depot", farmer.getId(), "k2"));
+
+		List<EventService.BatchEventResult> first = idempotentEventService.logEvents(batch);
+		List<EventService.BatchEventResult> replay = idempotentEventService.logEvents(batch);
+
+		assertThat(first).extracting(EventService.BatchEventResult::getStatus)
+				.containsExactly("CREATED", "DUPLICATE", "CREATED");
+		assertThat(first.get(1).getEventId()).isEqualTo(first.get(0).getEventId());
+		assertThat(replay).extracting(EventService.BatchEventResult::getStatus).containsOnly("DUPLICATE");
+		assertThat(eventService.getEventsForProduct(product.getId())).extracting(Event::getSeq).containsExactly(1L, 2L, 3L);
+	}
+
+	@Test
+	void keysAreScopedByActorAndRefusedForADifferentEvent() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		User distributor = userRepository.save(User.createNewUser("distributor-" + UUID.randomUUID(), "x", "ROLE_DISTRIBUTOR"));
+		Product product = productService.createProduct("Leeks", "Farm", "Barn", farmer.getId());
+
+		Event farmers = idempotentEventService.logEvent("scan-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId()).orElseThrow();
+		Event distributors = idempotentEventService.logEvent("scan-1", product.getId(), "SHIPPED", null, "Truck", distributor.getId()).orElseThrow();
+
+		// Another actor's key is its own: a new event, not the farmer's
+		assertThat(distributors.getId()).isNotEqualTo(farmers.getId());
+		assertThat(distributors.getActorUserId()).isEqualTo(distributor.getId());
+		assertThatThrownBy(() -> idempotentEventService.logEvent("scan-1", product.getId(), "RECEIVED", null, "Truck", farmer.getId()))
+				.isInstanceOf(IdempotentEventService.KeyReusedException.class);
+		assertThatThrownBy(() -> idempotentEventService.logEvent("scan-1", product.getId(), "SHIPPED", "late", "Truck", distributor.getId()))
+				.isInstanceOf(IdempotentEventService.KeyReusedException.class);
+		assertThat(eventService.getEventsForProduct(product.getId())).extracting(Event::getSeq).containsExactly(1L, 2L, 3L);
+	}
+
+	@Test
+	void batchReportsKeysReusedForADifferentEvent() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Onions", "Farm", "Barn", farmer.getId());
+		idempotentEventService.logEvent("k1", product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+
+		List<EventService.BatchEventResult> results = idempotentEventService.logEvents(List.of(
+				new EventService.BatchEvent(product.getId(), "RECEIVED", null, "Depot", farmer.getId(), "k1"),
+				new EventService.BatchEvent(product.getId(), "SCANNED", null, "Depot", farmer.getId(), "k2"),
+				new EventService.BatchEvent(product.getId(), "SCANNED", null, "Shelf", farmer.getId(), "k2")));
+
+		assertThat(results).extracting(EventService.BatchEventResult::getStatus).containsExactly(
+				EventService.BatchEventResult.KEY_REUSED, EventService.BatchEventResult.CREATED, EventService.BatchEventResult.KEY_REUSED);
+		assertThat(results.get(0).getEventId()).isNull();
+		assertThat(eventService.getEventsForProduct(product.getId())).extracting(Event::getSeq).containsExactly(1L, 2L, 3L);
+	}
+}
@@ -0,0 +1,336 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// End-to-end load test: starts the application on the embedded H2 database of the test profile
+// (PostgreSQL mode, same Flyway migrations), seeds it deterministically, then drives a weighted mix of
+// endpoints over HTTP at a fixed arrival rate and writes per-endpoint latency percentiles as JSON.
+// Run with: mvn -Ploadtest verify [-Dloadtest.rate=300 -Dloadtest.duration=PT60S ...]
+//
+// The load is open-loop: requests are issued on a fixed schedule whatever the response times, and latency is
+// measured from each request's scheduled start, so a stalled server shows up in the percentiles (no
+// coordinated omission). The same seed and settings always produce the same data and the same request sequence.
+public class LoadTestHarness {
+
+    private static final String PASSWORD = "load-test";
+
+    private record Config(int users, int productsPerUser, int eventsPerProduct, int rate, Duration duration,
+                          Duration warmup, int maxInFlight, long seed, Map<String, Integer> mix, int batchSize, String label) {
+    }
+
+    private record Operation(String endpoint, HttpRequest request) {
+    }
+
+    // Latencies of one endpoint; synchronized because requests complete on many threads
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+        private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        synchronized void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = new Config(
+                Integer.getInteger("loadtest.users", 50),
+                Integer.getInteger("loadtest.products-per-user", 20),
+                Integer.getInteger("loadtest.events-per-product", 20),
+                Integer.getInteger("loadtest.rate", 200),
+                Duration.parse(System.getProperty("loadtest.duration", "PT60S")),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                Integer.getInteger("loadtest.max-in-flight", 512),
+                Long.getLong("loadtest.seed", 42L),
+                parseMix(System.getProperty("loadtest.mix", "create=5,log-event=35,handover=5,trace=40,list=15")),
+                Integer.getInteger("loadtest.batch-size", 100),
+                System.getProperty("loadtest.label", "local"));
+
+        System.setProperty("spring.devtools.restart.enabled", "false"); // Must be a system property to take effect
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SupplytrackApplication.class)
+                .profiles("test")
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run();
+        try {
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            List<User> users = seed(context, config);
+            List<Long> productIds = productIds(context);
+            System.out.printf("Seeded %d users, %d products, %d events%n", users.size(), productIds.size(),
+                    context.getBean(EventJdbcRepository.class).count());
+            Map<String, Long> storage = storage(context);
+
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+            String base = "http://localhost:" + port + "/api/products";
+            warmPrincipalCache(client, base, users);
+
+            Map<String, Samples> results = run(client, config, base, users, productIds);
+            writeReport(config, results, storage);
+        } finally {
+            context.close();
+        }
+    }
+
+    // Users alternate FARMER / DISTRIBUTOR; every farmer starts with productsPerUser products, each with
+    // eventsPerProduct events. One BCrypt hash is shared by all users so seeding stays fast.
+    private static List<User> seed(ConfigurableApplicationContext context, Config config) {
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        ProductService productService = context.getBean(ProductService.class);
+        EventService eventService = context.getBean(EventService.class);
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        Random random = new Random(config.seed());
+
+        List<User> users = new ArrayList<>();
+        for (int u = 0; u < config.users(); u++) {
+            String role = u % 2 == 0 ? "ROLE_FARMER" : "ROLE_DISTRIBUTOR";
+            users.add(userRepository.save(User.createNewUser("lt-user-" + u, hash, role)));
+        }
+        for (User user : users) {
+            if (!user.getRole().equals("ROLE_FARMER")) {
+                continue;
+            }
+            List<EventService.BatchEvent> batch = new ArrayList<>();
+            for (int p = 0; p < config.productsPerUser(); p++) {
+                Product product = productService.createProduct("Product " + p, "Farm " + random.nextInt(100),
+                        "Field " + random.nextInt(100), user.getId());
+                for (int e = 1; e < config.eventsPerProduct(); e++) {
+                    batch.add(new EventService.BatchEvent(product.getId(), "SCANNED", "Seeded event " + e,
+                            "Warehouse " + random.nextInt(50), user.getId(), null));
+                }
+            }
+            eventService.logEvents(batch);
+        }
+        return users;
+    }
+
+    private static List<Long> productIds(ConfigurableApplicationContext context) {
+        return context.getBean(JdbcTemplate.class).queryForList("SELECT id FROM products ORDER BY id", Long.class);
+    }
+
+    // Bytes used by the seeded tables and their indexes (H2's estimate; pg_total_relation_size on PostgreSQL),
+    // so runs before and after a schema change can be compared on the same seed
+    private static Map<String, Long> storage(ConfigurableApplicationContext context) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        for (String table : List.of("events", "products")) {
+            bytes.put(table, jdbcTemplate.queryForObject("SELECT DISK_SPACE_USED(?)", Long.class, table));
+        }
+        System.out.printf("Storage after seeding: %s bytes%n", bytes);
+        return bytes;
+    }
+
+    // One authenticated request per user, so the measured run isn't dominated by first-time BCrypt checks
+    private static void warmPrincipalCache(HttpClient client, String base, List<User> users) throws Exception {
+        for (User user : users) {
+            client.send(HttpRequest.newBuilder(URI.create(base)).header("Authorization", basic(user)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    private static Map<String, Samples> run(HttpClient client, Config config, String base, List<User> users,
+                                            List<Long> productIds) throws InterruptedException {
+        Map<String, Samples> results = new LinkedHashMap<>();
+        config.mix().keySet().forEach(endpoint -> results.put(endpoint, new Samples()));
+        AtomicLong skipped = new AtomicLong();
+        Semaphore inFlight = new Semaphore(config.maxInFlight());
+        Random random = new Random(config.seed());
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        long total = (config.warmup().toNanos() + config.duration().toNanos()) / intervalNanos;
+        long warmupRequests = config.warmup().toNanos() / intervalNanos;
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long scheduled = start + i * intervalNanos;
+                long delay = scheduled - System.nanoTime();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                Operation operation = nextOperation(random, config, base, users, productIds);
+                boolean measured = i >= warmupRequests;
+                if (!inFlight.tryAcquire()) {
+                    if (measured) {
+                        skipped.incrementAndGet(); // Client-side limit reached: the server is far behind the target rate
+                    }
+                    continue;
+                }
+                executor.execute(() -> {
+                    Samples samples = results.get(operation.endpoint());
+                    try {
+                        HttpResponse<Void> response = client.send(operation.request(), HttpResponse.BodyHandlers.discarding());
+                        if (measured) {
+                            samples.add(System.nanoTime() - scheduled);
+                            samples.statuses.computeIfAbsent(response.statusCode(), s -> new AtomicLong()).incrementAndGet();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        if (measured) {
+                            samples.errors.incrementAndGet();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        if (skipped.get() > 0) {
+            System.out.printf("Skipped %d requests: more than %d in flight%n", skipped.get(), config.maxInFlight());
+        }
+        return results;
+    }
+
+    private static Operation nextOperation(Random random, Config config, String base, List<User> users,
+                                           List<Long> productIds) {
+        Map<String, Integer> mix = config.mix();
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(totalWeight);
+        String endpoint = null;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                endpoint = entry.getKey();
+                break;
+            }
+        }
+        User user = users.get(random.nextInt(users.size()));
+        User farmer = users.get(random.nextInt((users.size() + 1) / 2) * 2); // Even indexes are farmers
+        Long productId = productIds.get(random.nextInt(productIds.size()));
+        String location = "Warehouse " + random.nextInt(50);
+
+        HttpRequest request = switch (endpoint) {
+            case "create" -> json(base, farmer,
+                    "{\"name\":\"Load test product\",\"origin\":\"Farm\",\"initialLocation\":\"" + location + "\"}");
+            case "log-event" -> json(base + "/" + productId + "/log-event", user,
+                    "{\"eventType\":\"SCANNED\",\"eventDescription\":\"Load test scan\",\"location\":\"" + location + "\"}");
+            case "events-batch" -> json(base + "/events:batch", user, eventsBatch(random, config.batchSize(), productIds));
+            case "handover" -> json(base + "/" + productId + "/handover", farmer,
+                    "{\"newOwnerUserId\":" + user.getId() + ",\"handoverLocation\":\"" + location + "\"}");
+            case "trace" -> HttpRequest.newBuilder(URI.create(base + "/" + productId + "/trace"))
+                    .header("Authorization", basic(user)).build();
+            case "list" -> HttpRequest.newBuilder(URI.create(base)).header("Authorization", basic(user)).build();
+            default -> throw new IllegalArgumentException("Unknown endpoint in loadtest.mix: " + endpoint);
+        };
+        return new Operation(endpoint, request);
+    }
+
+    // batchSize scans of random products, as one events:batch body; events/s is batchSize times its req/s
+    private static String eventsBatch(Random random, int batchSize, List<Long> productIds) {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < batchSize; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"productId\":").append(productIds.get(random.nextInt(productIds.size())))
+                    .append(",\"eventType\":\"SCANNED\",\"eventDescription\":\"Load test scan\",\"location\":\"Warehouse ")
+                    .append(random.nextInt(50)).append("\"}");
+        }
+        return body.append("]").toString();
+    }
+
+    private static HttpRequest json(String url, User user, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", basic(user))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String basic(User user) {
+        return "Basic " + Base64.getEncoder().encodeToString((user.getUsername() + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            weights.put(kv[0], Integer.parseInt(kv[1]));
+        }
+        return weights;
+    }
+
+    private static void writeReport(Config config, Map<String, Samples> results, Map<String, Long> storage) throws IOException {
+        double seconds = config.duration().toNanos() / 1e9;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%-10s %8s %8s %10s %10s %10s %10s %7s%n", "endpoint", "count", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+        for (Map.Entry<String, Samples> entry : results.entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", sorted.length);
+            stats.put("throughput", sorted.length / seconds);
+            stats.put("p50Ms", percentile(sorted, 0.50));
+            stats.put("p99Ms", percentile(sorted, 0.99));
+            stats.put("p999Ms", percentile(sorted, 0.999));
+            stats.put("maxMs", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+            stats.put("errors", entry.getValue().errors.get());
+            Map<String, Long> statuses = new LinkedHashMap<>();
+            entry.getValue().statuses.forEach((status, count) -> statuses.put(String.valueOf(status), count.get()));
+            stats.put("statuses", statuses);
+            endpoints.put(entry.getKey(), stats);
+            System.out.printf("%-10s %8d %8.1f %10.2f %10.2f %10.2f %10.2f %7d  %s%n", entry.getKey(), sorted.length,
+                    sorted.length / seconds, percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    stats.get("maxMs"), entry.getValue().errors.get(), statuses);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", config.label());
+        report.put("timestamp", Instant.now().toString());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("config", config);
+        report.put("storageBytes", storage);
+        report.put("endpoints", endpoints);
+        Path out = Path.of("target", "loadtest", "results-" + config.label() + ".json");
+        Files.createDirectories(out.getParent());
+        new ObjectMapper().findAndRegisterModules().enable(SerializationFeature.INDENT_OUTPUT)
+                .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+                .writeValue(out.toFile(), report);
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    // Nearest-rank percentile, in milliseconds
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,73 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false) // Tests otherwise get a plain SimpleMeterRegistry without /actuator/prometheus
+@ActiveProfiles("test")
+class MetricsEndpointTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void prometheusEndpointExposesHotPathTimersTaggedByEventType() throws Exception {
+		String username = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(username, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+		Product product = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+		eventService.logEvent(product.getId(), "free-text-" + UUID.randomUUID(), null, "Truck", farmer.getId());
+
+		mockMvc.perform(get("/api/products/" + product.getId() + "/trace").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk());
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk());
+		String scrape = mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		assertThat(scrape)
+				.contains("http_server_requests_seconds_bucket{")
+				.contains("uri=\"/api/products/{productId}/trace\"")
+				.containsPattern("supplytrack_jdbc_repository_seconds_bucket\\{[^}]*method=\"findByProductId\"")
+				.containsPattern("supplytrack_jdbc_repository_seconds_bucket\\{[^}]*method=\"findByOwnerUserId\"")
+				.contains("supplytrack_password_seconds_count{operation=\"encode\"")
+				.contains("supplytrack_password_seconds_count{operation=\"matches\"")
+				.contains("supplytrack_transactions_seconds_bucket{")
+				.contains("hikaricp_connections_acquire_seconds")
+				.contains("supplytrack_events_committed_total{event_type=\"SHIPPED\"")
+				.contains("supplytrack_events_committed_total{event_type=\"OTHER\"")
+				.contains("supplytrack_events_log_seconds_bucket{event_type=\"SHIPPED\"")
+				.doesNotContain("free-text-");
+	}
+}
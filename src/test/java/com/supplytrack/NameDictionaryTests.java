@@ -0,0 +1,103 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class NameDictionaryTests {
+
+	@Autowired
+	private NameDictionary dictionary;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductJdbcRepository productJdbcRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void rowsStoreIdsAndReadBackTheSameNames() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		String dock = "Dock " + UUID.randomUUID();
+		Product product = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", null, dock, farmer.getId());
+
+		Integer dockId = jdbcTemplate.queryForObject("SELECT id FROM locations WHERE name = ?", Integer.class, dock);
+		assertThat(jdbcTemplate.queryForObject("SELECT current_location_id FROM products WHERE id = ?", Integer.class, product.getId()))
+				.isEqualTo(dockId);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events WHERE product_id = ? AND location_id = ?",
+				Integer.class, product.getId(), dockId)).isEqualTo(1);
+
+		Product reloaded = productJdbcRepository.findById(product.getId()).orElseThrow();
+		assertThat(reloaded.getCurrentStatus()).isEqualTo("SHIPPED");
+		assertThat(reloaded.getCurrentLocation()).isSameAs(dictionary.locations().name(dockId));
+		List<Event> trace = eventService.getEventsForProduct(product.getId());
+		assertThat(trace).extracting(Event::getEventType).containsExactly("HARVESTED", "SHIPPED");
+		assertThat(trace).extracting(Event::getLocation).containsExactly("Barn", dock);
+	}
+
+	@Test
+	void namesAddedByAnotherInstanceAreFoundAndUnknownFiltersMatchNothing() {
+		String elsewhere = "Added elsewhere " + UUID.randomUUID();
+		int id = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM locations", Integer.class);
+		jdbcTemplate.update("INSERT INTO locations (id, name) VALUES (?, ?)", id, elsewhere);
+
+		assertThat(dictionary.locations().name(id)).isEqualTo(elsewhere);
+		assertThat(dictionary.locations().find(elsewhere)).isEqualTo(id);
+		assertThat(dictionary.locations().idOf(elsewhere)).isEqualTo(id);
+		assertThat(dictionary.locations().find("Never used " + UUID.randomUUID())).isNull();
+
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		productService.createProduct("Pears", "Orchard", "Barn", farmer.getId());
+		ProductJdbcRepository.ProductFilter unknownStatus = new ProductJdbcRepository.ProductFilter("NEVER_LOGGED", null, null, null);
+		assertThat(productJdbcRepository.findPageForOwner(farmer.getId(), unknownStatus, false, null, 10)).isEmpty();
+		ProductJdbcRepository.ProductFilter harvested = new ProductJdbcRepository.ProductFilter("HARVESTED", "Barn", null, null);
+		assertThat(productJdbcRepository.findPageForOwner(farmer.getId(), harvested, false, null, 10)).hasSize(1);
+	}
+
+	@Test
+	void newNamesGetTheNextIdOnce() {
+		String type = "TYPE_" + UUID.randomUUID().toString().substring(0, 8);
+		int id = dictionary.eventTypes().idOf(type);
+
+		assertThat(dictionary.eventTypes().idOf(type)).isEqualTo(id);
+		assertThat(jdbcTemplate.queryForObject("SELECT MAX(id) FROM event_types", Integer.class)).isEqualTo(id);
+		assertThat(jdbcTemplate.queryForObject("SELECT name FROM event_types WHERE id = ?", String.class, id)).isEqualTo(type);
+	}
+
+	@Test
+	void namesFromARolledBackWriteAreNotCached() {
+		String type = "TYPE_" + UUID.randomUUID().toString().substring(0, 8);
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			dictionary.eventTypes().idOf(type);
+			status.setRollbackOnly();
+		});
+
+		assertThat(dictionary.eventTypes().find(type)).isNull();
+		int id = dictionary.eventTypes().idOf(type);
+		assertThat(jdbcTemplate.queryForObject("SELECT id FROM event_types WHERE name = ?", Integer.class, type)).isEqualTo(id);
+	}
+}
@@ -0,0 +1,105 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class PrincipalCacheTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AuthenticatedPrincipalCache principalCache;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void aRepeatedLoginSkipsBCryptButAWrongPasswordIsStillRefused() throws Exception {
+		User user = register();
+
+		list(user.getUsername(), "secret").andExpect(status().isOk());
+		long passwordChecks = passwordChecks();
+		list(user.getUsername(), "secret").andExpect(status().isOk());
+		assertThat(passwordChecks()).isEqualTo(passwordChecks);
+
+		list(user.getUsername(), "Secret").andExpect(status().isUnauthorized());
+		assertThat(passwordChecks()).isEqualTo(passwordChecks + 1); // Not served from the cache
+		list(user.getUsername(), "secret").andExpect(status().isOk()); // Nor did it evict the right password
+		assertThat(passwordChecks()).isEqualTo(passwordChecks + 1);
+	}
+
+	@Test
+	void passwordChangesRenamesAndDeletesApplyToCachedLogins() throws Exception {
+		User user = register();
+		list(user.getUsername(), "secret").andExpect(status().isOk());
+
+		user.setPassword(passwordEncoder.encode("changed"));
+		user = userRepository.save(user);
+		list(user.getUsername(), "secret").andExpect(status().isUnauthorized());
+		list(user.getUsername(), "changed").andExpect(status().isOk());
+
+		String oldUsername = user.getUsername();
+		user.setUsername("renamed-" + UUID.randomUUID());
+		user = userRepository.save(user);
+		assertThat(principalCache.get(oldUsername, "changed")).isNull();
+		list(oldUsername, "changed").andExpect(status().isUnauthorized());
+		list(user.getUsername(), "changed").andExpect(status().isOk());
+
+		userRepository.deleteById(user.getId());
+		assertThat(principalCache.get(user.getUsername(), "changed")).isNull();
+		list(user.getUsername(), "changed").andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	void entriesExpireAfterTheirTtl() throws Exception {
+		AuthenticatedPrincipalCache cache = new AuthenticatedPrincipalCache(Duration.ofMillis(50), 10);
+		User user = User.createNewUser("farmer", "x", "ROLE_FARMER");
+		cache.put("farmer", "secret", user);
+
+		assertThat(cache.get("farmer", "secret")).isSameAs(user);
+		assertThat(cache.get("farmer", "other")).isNull();
+		Thread.sleep(100);
+		assertThat(cache.get("farmer", "secret")).isNull();
+		assertThat(cache.size()).isZero();
+	}
+
+	private User register() {
+		return userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+	}
+
+	private ResultActions list(String username, String password) throws Exception {
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+		return mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, auth));
+	}
+
+	private long passwordChecks() {
+		return meterRegistry.get("supplytrack.password").tag("operation", "matches").timer().count();
+	}
+}
@@ -0,0 +1,174 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ProductImportTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductJdbcRepository productJdbcRepository;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void csvImportCreatesValidRowsAndReportsInvalidOnesInInputOrder() throws Exception {
+		String farmerName = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String csv = "initialLocation,name,origin\r\n" +
+				"Barn 1,Tomatoes,\"Green Valley, Plot 4\"\r\n" +
+				"Barn 2,,Hillside\r\n" +
+				"\r\n" +
+				"\"Shed \"\"B\"\"\",Peppers,Hillside\r\n";
+
+		JsonNode response = importUpload(farmerName, "text/csv", csv);
+
+		assertThat(response.get("created").asLong()).isEqualTo(2);
+		assertThat(response.get("failed").asLong()).isEqualTo(1);
+		JsonNode results = response.get("results");
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).get("status").asText()).isEqualTo("CREATED");
+		assertThat(results.get(1).get("status").asText()).isEqualTo("INVALID");
+		assertThat(results.get(1).get("message").asText()).isEqualTo("name is required.");
+		assertThat(results.get(2).get("index").asInt()).isEqualTo(2);
+
+		Product tomatoes = productJdbcRepository.findById(results.get(0).get("productId").asLong()).orElseThrow();
+		assertThat(tomatoes.getOrigin()).isEqualTo("Green Valley, Plot 4");
+		assertThat(tomatoes.getOwnerUserId()).isEqualTo(farmer.getId());
+		assertThat(tomatoes.getVersion()).isZero();
+		Product peppers = productJdbcRepository.findById(results.get(2).get("productId").asLong()).orElseThrow();
+		assertThat(peppers.getCurrentLocation()).isEqualTo("Shed \"B\"");
+
+		List<Event> trace = eventService.getEventsForProduct(peppers.getId());
+		assertThat(trace).hasSize(1);
+		assertThat(trace.get(0).getId()).isEqualTo(results.get(2).get("eventId").asLong());
+		assertThat(trace.get(0).getEventType()).isEqualTo("HARVESTED");
+		assertThat(trace.get(0).getSeq()).isEqualTo(1L);
+	}
+
+	@Test
+	void ndjsonImportSkipsUnreadableLinesAndOnlyFarmersMayImport() throws Exception {
+		String farmerName = "farmer-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String ndjson = "{\"name\":\"Olives\",\"origin\":\"Grove\",\"initialLocation\":\"Press\"}\n" +
+				"{not json\n" +
+				"{\"name\":\"" + "x".repeat(256) + "\",\"origin\":\"Grove\",\"initialLocation\":\"Press\"}\n";
+
+		JsonNode results = importUpload(farmerName, "application/x-ndjson", ndjson).get("results");
+
+		assertThat(results).hasSize(3);
+		assertThat(results.get(0).get("status").asText()).isEqualTo("CREATED");
+		assertThat(results.get(1).get("message").asText()).startsWith("Row is not valid JSON");
+		assertThat(results.get(2).get("message").asText()).isEqualTo("name is longer than 255 characters.");
+
+		mockMvc.perform(post("/api/products/import").contentType("text/csv").content("name,origin\nA,B\n")
+						.header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isBadRequest());
+
+		String distributorName = "distributor-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(distributorName, passwordEncoder.encode("secret"), "ROLE_DISTRIBUTOR"));
+		mockMvc.perform(post("/api/products/import").contentType("application/x-ndjson").content(ndjson)
+						.header(HttpHeaders.AUTHORIZATION, basic(distributorName)))
+				.andExpect(status().isForbidden());
+	}
+
+	@Test
+	void anUploadThatBreaksOffKeepsItsRowsAndCanBeResentWithTheSameKey() throws Exception {
+		String farmerName = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String csv = "name,origin,initialLocation\n" +
+				"Apples,Orchard,Barn\n" +
+				"Pears,Orchard,Barn\n" +
+				"Plums,Orchard,Barn\n";
+		// The client goes away in the middle of the third row
+		Reader brokenOff = new StringReader(csv.substring(0, csv.indexOf("Plums") + 2)) {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				int n = super.read(buffer, offset, length);
+				if (n == -1) {
+					throw new IOException("Connection reset");
+				}
+				return n;
+			}
+		};
+
+		List<ProductService.ImportResult> first = productService.importProducts(
+				ProductImportReader.csv(new BufferedReader(brokenOff)), farmer.getId(), "upload-1");
+
+		assertThat(first).extracting(ProductService.ImportResult::getStatus).containsExactly("CREATED", "CREATED", "UNREAD");
+		assertThat(first.get(2).getIndex()).isEqualTo(2);
+		assertThat(first.get(2).getMessage()).contains("Connection reset");
+
+		JsonNode resent = importUpload(farmerName, "text/csv", csv, "upload-1").get("results");
+		assertThat(resent).hasSize(3);
+		assertThat(resent.get(0).get("productId").asLong()).isEqualTo(first.get(0).getProductId());
+		assertThat(resent.get(1).get("eventId").asLong()).isEqualTo(first.get(1).getEventId());
+		assertThat(resent.get(2).get("status").asText()).isEqualTo("CREATED");
+		assertThat(productJdbcRepository.findByOwnerUserId(farmer.getId())).hasSize(3);
+
+		// A different key is a different upload
+		assertThat(importUpload(farmerName, "text/csv", csv, "upload-2").get("created").asLong()).isEqualTo(3);
+		assertThat(productJdbcRepository.findByOwnerUserId(farmer.getId())).hasSize(6);
+	}
+
+	private JsonNode importUpload(String username, String contentType, String body) throws Exception {
+		return importUpload(username, contentType, body, null);
+	}
+
+	private JsonNode importUpload(String username, String contentType, String body, String idempotencyKey) throws Exception {
+		MockHttpServletRequestBuilder request = post("/api/products/import").contentType(contentType)
+				.content(body.getBytes(StandardCharsets.UTF_8))
+				.header(HttpHeaders.AUTHORIZATION, basic(username));
+		if (idempotencyKey != null) {
+			request.header("Idempotency-Key", idempotencyKey);
+		}
+		String response = mockMvc.perform(request)
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		return objectMapper.readTree(response);
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
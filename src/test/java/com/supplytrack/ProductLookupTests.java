@@ -0,0 +1,163 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"supplytrack.products.lookup.max-ids=5",
+		"supplytrack.products.traces.chunk-size=2"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ProductLookupTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@MockitoSpyBean
+	private ProductTraceCache productTraceCache;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void tracesComeBackInRequestOrderWithNotFoundMarkers() throws Exception {
+		User farmer = register();
+		long figs = productService.createProduct("Figs", "Orchard", "Barn", farmer.getId()).getId();
+		long dates = productService.createProduct("Dates", "Orchard", "Barn", farmer.getId()).getId();
+		eventService.logEvent(figs, "SHIPPED", null, "Dock 1", farmer.getId());
+		eventService.logEvent(figs, "RECEIVED", null, "Depot", farmer.getId());
+		productTraceCache.get(dates); // One trace from the cache, the other from the batch queries
+
+		List<JsonNode> lines = lookup(farmer, "/api/products/traces:batch",
+				"[" + dates + ", " + Long.MAX_VALUE + ", " + figs + ", " + dates + "]");
+
+		assertThat(lines).extracting(line -> line.get("productId").asLong()).containsExactly(dates, Long.MAX_VALUE, figs, dates);
+		assertThat(lines).extracting(line -> line.get("found").asBoolean()).containsExactly(true, false, true, true);
+		assertThat(lines.get(1).has("product")).isFalse();
+		assertThat(lines.get(2).get("product").get("currentLocation").asText()).isEqualTo("Depot");
+		assertThat(lines.get(2).get("eventHistory")).extracting(event -> event.get("eventType").asText())
+				.containsExactly("HARVESTED", "SHIPPED", "RECEIVED");
+		assertThat(lines.get(0).get("eventHistory")).hasSize(1);
+		assertThat(lines.get(3)).isEqualTo(lines.get(0));
+	}
+
+	@Test
+	void longHistoriesAreReadOneChunkOfIdsAtATime() throws Exception {
+		User farmer = register();
+		long pallet = productService.createProduct("Pallet", "Orchard", "Barn", farmer.getId()).getId();
+		long crate = productService.createProduct("Crate", "Orchard", "Barn", farmer.getId()).getId();
+		List<EventService.BatchEvent> moves = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			moves.add(new EventService.BatchEvent(pallet, "MOVED", null, "Bay " + (i % 50), farmer.getId(), null));
+		}
+		eventService.logEvents(moves);
+		clearInvocations(productTraceCache);
+
+		List<JsonNode> lines = lookup(farmer, "/api/products/traces:batch",
+				"[" + pallet + ", " + crate + ", " + Long.MAX_VALUE + ", " + pallet + ", " + crate + "]");
+
+		assertThat(lines).extracting(line -> line.get("productId").asLong())
+				.containsExactly(pallet, crate, Long.MAX_VALUE, pallet, crate);
+		assertThat(lines.get(0).get("eventHistory")).hasSize(5001);
+		assertThat(lines.get(0).get("eventHistory").get(5000).get("location").asText()).isEqualTo("Bay 49");
+		assertThat(lines.get(3)).isEqualTo(lines.get(0));
+		assertThat(lines.get(4).get("eventHistory")).hasSize(1);
+		// Chunks of two ids, each read on its own
+		ArgumentCaptor<Collection<Long>> chunks = ArgumentCaptor.captor();
+		verify(productTraceCache, times(3)).getAll(chunks.capture());
+		assertThat(chunks.getAllValues()).extracting(List::copyOf)
+				.containsExactly(List.of(pallet, crate), List.of(Long.MAX_VALUE, pallet), List.of(crate));
+	}
+
+	@Test
+	void lookupReturnsProductsWithoutHistory() throws Exception {
+		User farmer = register();
+		long plums = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId()).getId();
+
+		List<JsonNode> lines = lookup(farmer, "/api/products/lookup", "[" + Long.MAX_VALUE + ", " + plums + "]");
+
+		assertThat(lines).hasSize(2);
+		assertThat(lines.get(0).get("found").asBoolean()).isFalse();
+		assertThat(lines.get(1).get("product").get("name").asText()).isEqualTo("Plums");
+		assertThat(lines.get(1).has("eventHistory")).isFalse();
+	}
+
+	@Test
+	void emptyOrOversizedListsAreRejected() throws Exception {
+		User farmer = register();
+
+		mockMvc.perform(post("/api/products/lookup").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"productIds\": []}")
+						.header(HttpHeaders.AUTHORIZATION, basic(farmer.getUsername())))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/api/products/traces:batch").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"productIds\": [1, 2, 3, 4, 5, 6]}")
+						.header(HttpHeaders.AUTHORIZATION, basic(farmer.getUsername())))
+				.andExpect(status().isBadRequest());
+	}
+
+	private List<JsonNode> lookup(User user, String url, String productIds) throws Exception {
+		MvcResult started = mockMvc.perform(post(url).contentType(MediaType.APPLICATION_JSON)
+						.content("{\"productIds\": " + productIds + "}")
+						.header(HttpHeaders.AUTHORIZATION, basic(user.getUsername())))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		List<JsonNode> lines = new ArrayList<>();
+		for (String line : body.split("\n")) {
+			lines.add(objectMapper.readTree(line));
+		}
+		return lines;
+	}
+
+	private User register() {
+		return userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,107 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ProductPageTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void cursorsWalkEveryProductOnceInBothDirectionsAndUnderAFilter() throws Exception {
+		User farmer = register();
+		User other = register();
+		List<Long> all = new ArrayList<>();
+		List<Long> inBarn = new ArrayList<>();
+		List<Long> shipped = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			String location = i % 2 == 0 ? "Barn" : "Shed";
+			long id = productService.createProduct("Pears " + i, "Orchard", location, farmer.getId()).getId();
+			all.add(id);
+			if (location.equals("Barn")) {
+				inBarn.add(id);
+			}
+			if (i % 3 == 0) {
+				eventService.logEvent(id, "SHIPPED", null, location, farmer.getId());
+				shipped.add(id);
+			}
+		}
+		productService.createProduct("Pears", "Orchard", "Barn", other.getId()); // Someone else's, never listed
+
+		// Products created one after the other have non-decreasing created dates, so (createdDate, id) order is id order
+		assertThat(walk(farmer, "sort=createdDate,asc&limit=2")).containsExactlyElementsOf(all);
+		assertThat(walk(farmer, "sort=createdDate,desc&limit=2")).containsExactlyElementsOf(all.reversed());
+		assertThat(walk(farmer, "location=Barn&limit=3")).containsExactlyElementsOf(inBarn);
+		assertThat(walk(farmer, "location=Barn&sort=createdDate,desc&limit=3")).containsExactlyElementsOf(inBarn.reversed());
+		assertThat(walk(farmer, "status=SHIPPED&sort=createdDate,desc&limit=1")).containsExactlyElementsOf(shipped.reversed());
+	}
+
+	// Follows nextCursor until the last page, checking that no page is larger than asked for
+	private List<Long> walk(User user, String query) throws Exception {
+		int limit = Integer.parseInt(query.replaceAll(".*limit=(\\d+).*", "$1"));
+		List<Long> ids = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			MockHttpServletRequestBuilder request = get("/api/products?" + query).header(HttpHeaders.AUTHORIZATION, basic(user));
+			if (cursor != null) {
+				request.param("cursor", cursor);
+			}
+			String body = mockMvc.perform(request)
+					.andExpect(status().isOk())
+					.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+			JsonNode page = objectMapper.readTree(body);
+			assertThat(page.get("products").size()).isLessThanOrEqualTo(limit);
+			page.get("products").forEach(product -> ids.add(product.get("id").asLong()));
+			cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+			assertThat(++pages).isLessThan(20);
+		} while (cursor != null);
+		return ids;
+	}
+
+	private User register() {
+		return userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+	}
+
+	private static String basic(User user) {
+		return "Basic " + Base64.getEncoder().encodeToString((user.getUsername() + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
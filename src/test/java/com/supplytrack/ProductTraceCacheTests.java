@@ -0,0 +1,41 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductTraceCacheTests {
+
+	@Autowired
+	private ProductTraceCache productTraceCache;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void cachedTraceIsInvalidatedByNewEvents() {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Apples", "Orchard", "Barn", farmer.getId());
+
+		assertThat(productTraceCache.get(product.getId()).orElseThrow().getEventHistory()).hasSize(1);
+		eventService.logEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+
+		ProductController.ProductTraceResponse trace = productTraceCache.get(product.getId()).orElseThrow();
+		assertThat(trace.getEventHistory()).hasSize(2);
+		assertThat(trace.getProduct().getCurrentLocation()).isEqualTo("Truck");
+		assertThat(productTraceCache.get(-1L)).isEmpty();
+	}
+}
@@ -0,0 +1,150 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class QrCodeControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductTraceCache productTraceCache;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void labelsRenderCacheAndVerifyWithoutALookup() throws Exception {
+		String farmerName = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		Product product = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId());
+		String url = "/api/products/" + product.getId() + "/qrcode";
+
+		MvcResult png = mockMvc.perform(get(url + "?scale=4").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE))
+				.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+				.andReturn();
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.getResponse().getContentAsByteArray()));
+		assertThat(image.getWidth()).isEqualTo(image.getHeight()).isGreaterThanOrEqualTo((21 + 8) * 4);
+		assertThat(image.getRGB(0, 0)).isEqualTo(0xFFFFFFFF); // Quiet zone
+		assertThat(image.getRGB(4 * 4, 4 * 4)).isEqualTo(0xFF000000); // Corner of the top-left finder pattern
+
+		String etag = png.getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get(url + "?scale=4").header(HttpHeaders.AUTHORIZATION, basic(farmerName)).header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified());
+
+		String svg = mockMvc.perform(get(url + "?format=svg").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertThat(svg).startsWith("<svg").contains("<path fill=\"#000\" d=\"M4 4h7v1h-7z");
+
+		mockMvc.perform(get("/api/products/" + Long.MAX_VALUE + "/qrcode").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isNotFound());
+
+		String data = mockMvc.perform(get("/api/products/" + product.getId() + "/qrcode-data").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertThat(productTraceCache.peekVersion(product.getId())).isEmpty(); // Existence only, the trace was not loaded
+		mockMvc.perform(get("/api/products/" + Long.MAX_VALUE + "/qrcode-data").header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isNotFound());
+		String payload = objectMapper.readTree(data).get("payload").asText();
+		JsonNode verified = verify(farmerName, payload);
+		assertThat(verified.get("valid").asBoolean()).isTrue();
+		assertThat(verified.get("productId").asLong()).isEqualTo(product.getId());
+
+		String forged = payload.replace("ST1:" + product.getId() + ":", "ST1:" + (product.getId() + 1) + ":");
+		assertThat(verify(farmerName, forged).get("valid").asBoolean()).isFalse();
+	}
+
+	@Test
+	void sheetHasOneLabelPerProductInOrder() throws Exception {
+		String farmerName = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(farmerName, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		long first = productService.createProduct("Figs", "Orchard", "Barn", farmer.getId()).getId();
+		long second = productService.createProduct("Dates", "Orchard", "Barn", farmer.getId()).getId();
+		long third = productService.createProduct("Limes", "Orchard", "Barn", farmer.getId()).getId();
+
+		MvcResult started = mockMvc.perform(post("/api/products/qrcode-sheet").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"productIds\": [" + third + ", " + first + ", " + second + "], \"columns\": 2}")
+						.header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String sheet = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+		assertThat(sheet).startsWith("<svg").endsWith("</svg>");
+		assertThat(sheet.split("<path ", -1)).hasSize(4);
+		assertThat(sheet.indexOf(">" + third + "</text>")).isLessThan(sheet.indexOf(">" + first + "</text>"));
+		assertThat(sheet.indexOf(">" + first + "</text>")).isLessThan(sheet.indexOf(">" + second + "</text>"));
+
+		mockMvc.perform(post("/api/products/qrcode-sheet").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"productIds\": [" + first + ", " + Long.MAX_VALUE + "]}")
+						.header(HttpHeaders.AUTHORIZATION, basic(farmerName)))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void missingOrShortSecretFailsStartup() {
+		assertThatThrownBy(() -> new QrLabelService(new SimpleMeterRegistry(), "", 1 << 20))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("SUPPLYTRACK_QR_SECRET");
+		assertThatThrownBy(() -> new QrLabelService(new SimpleMeterRegistry(), "short-secret", 1 << 20))
+				.isInstanceOf(IllegalStateException.class);
+		String payload = new QrLabelService(new SimpleMeterRegistry(), "x".repeat(QrLabelService.MIN_SECRET_BYTES), 1 << 20).payload(1L);
+		assertThat(payload).startsWith("ST1:1:");
+	}
+
+	private JsonNode verify(String username, String payload) throws Exception {
+		String body = mockMvc.perform(get("/api/products/qrcode/verify").param("payload", payload)
+						.header(HttpHeaders.AUTHORIZATION, basic(username)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		return objectMapper.readTree(body);
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,188 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"supplytrack.rate-limit.roles.RESTAURANT.requests-per-second=1",
+		"supplytrack.rate-limit.roles.RESTAURANT.burst=2",
+		"supplytrack.rate-limit.failed-auth.requests-per-second=0.01",
+		"supplytrack.rate-limit.failed-auth.burst=3",
+		"supplytrack.rate-limit.failed-auth.address.requests-per-second=0.01",
+		"supplytrack.rate-limit.failed-auth.address.burst=5",
+		"supplytrack.load-shedding.sample-interval=PT1H" // Samples are fed by the test
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class RateLimitFilterTests {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private LoadShedder loadShedder;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void usersAreLimitedByTheirRoleAndIndependently() throws Exception {
+		String first = register("restaurant", "ROLE_RESTAURANT").getUsername();
+		String second = register("restaurant", "ROLE_RESTAURANT").getUsername();
+		String farmer = register("farmer", "ROLE_FARMER").getUsername();
+
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, basic(first))).andExpect(status().isOk());
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, basic(first))).andExpect(status().isOk());
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, basic(first)))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+		mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, basic(second))).andExpect(status().isOk());
+		for (int i = 0; i < 5; i++) { // Default limits for farmers
+			mockMvc.perform(get("/api/products").header(HttpHeaders.AUTHORIZATION, basic(farmer))).andExpect(status().isOk());
+		}
+	}
+
+	@Test
+	void repeatedFailedLoginsAreRefusedBeforeThePasswordIsChecked() throws Exception {
+		String guessed = register("farmer", "ROLE_FARMER").getUsername();
+		String bystander = register("farmer", "ROLE_FARMER").getUsername();
+		String wrongPassword = "Basic " + Base64.getEncoder().encodeToString((guessed + ":guess").getBytes(StandardCharsets.UTF_8));
+
+		for (int i = 0; i < 3; i++) {
+			mockMvc.perform(get("/api/products").with(from("10.9.0.1")).header(HttpHeaders.AUTHORIZATION, wrongPassword))
+					.andExpect(status().isUnauthorized());
+		}
+		long passwordChecks = meterRegistry.get("supplytrack.password").tag("operation", "matches").timer().count();
+
+		// The address is refused for that username, even with the right password
+		mockMvc.perform(get("/api/products").with(from("10.9.0.1")).header(HttpHeaders.AUTHORIZATION, basic(guessed)))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+		assertThat(meterRegistry.get("supplytrack.password").tag("operation", "matches").timer().count()).isEqualTo(passwordChecks);
+
+		// Its owner elsewhere, and other users behind the same address, still log in
+		mockMvc.perform(get("/api/products").with(from("10.9.0.2")).header(HttpHeaders.AUTHORIZATION, basic(guessed)))
+				.andExpect(status().isOk());
+		mockMvc.perform(get("/api/products").with(from("10.9.0.1")).header(HttpHeaders.AUTHORIZATION, basic(bystander)))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void anAddressCyclingThroughUsernamesIsRefusedOverall() throws Exception {
+		String bystander = register("farmer", "ROLE_FARMER").getUsername();
+		for (int i = 0; i < 5; i++) { // A new name each time, so no pair bucket ever runs dry
+			mockMvc.perform(get("/api/products").with(from("10.9.1.1")).header(HttpHeaders.AUTHORIZATION, basic("sprayed-" + UUID.randomUUID())))
+					.andExpect(status().isUnauthorized());
+		}
+		long passwordChecks = meterRegistry.get("supplytrack.password").tag("operation", "matches").timer().count();
+
+		mockMvc.perform(get("/api/products").with(from("10.9.1.1")).header(HttpHeaders.AUTHORIZATION, basic("sprayed-" + UUID.randomUUID())))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+		assertThat(meterRegistry.get("supplytrack.password").tag("operation", "matches").timer().count()).isEqualTo(passwordChecks);
+
+		mockMvc.perform(get("/api/products").with(from("10.9.1.2")).header(HttpHeaders.AUTHORIZATION, basic(bystander)))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void congestedPoolShedsReadsBeforeWrites() throws Exception {
+		User farmer = register("farmer", "ROLE_FARMER");
+		Product product = productService.createProduct("Figs", "Orchard", "Barn", farmer.getId());
+
+		loadShedder.recordSample(400_000_000, 1, 0, SECOND); // Smoothed wait 200 ms: twice the 100 ms threshold
+		try {
+			mockMvc.perform(get("/api/products/" + product.getId() + "/trace").header(HttpHeaders.AUTHORIZATION, basic(farmer.getUsername())))
+					.andExpect(status().isServiceUnavailable())
+					.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+			mockMvc.perform(post("/api/products/" + product.getId() + "/log-event")
+							.header(HttpHeaders.AUTHORIZATION, basic(farmer.getUsername()))
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("{\"eventType\": \"SHIPPED\", \"location\": \"Dock 1\"}"))
+					.andExpect(status().isCreated());
+		} finally {
+			for (int i = 0; i < 4; i++) { // Idle intervals bring the average back under the threshold
+				loadShedder.recordSample(0, 0, 0, SECOND);
+			}
+		}
+		mockMvc.perform(get("/api/products/" + product.getId() + "/trace").header(HttpHeaders.AUTHORIZATION, basic(farmer.getUsername())))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void writesAreShedOnlyFarAboveTheThreshold() {
+		LoadShedder shedder = new LoadShedder(new SimpleMeterRegistry(), true, Duration.ofMillis(100));
+
+		shedder.recordSample(400_000_000, 1, 0, SECOND); // 200 ms
+		assertThat(shedder.shouldShed(true)).isTrue();
+		assertThat(shedder.shouldShed(false)).isFalse();
+
+		shedder.recordSample(0, 0, 3, 1_600_000_000); // Nobody got a connection for 1.6 s: 900 ms
+		assertThat(shedder.shouldShed(false)).isTrue();
+	}
+
+	@Test
+	void tokenBucketAllowsABurstThenRefillsAtTheRate() {
+		RequestRateLimiter.Limit limit = new RequestRateLimiter.Limit(2, 3); // One token per 500 ms
+		RequestRateLimiter.TokenBucket bucket = new RequestRateLimiter.TokenBucket();
+		long now = 1_000 * SECOND;
+
+		assertThat(bucket.tryAcquire(now, limit)).isZero();
+		assertThat(bucket.tryAcquire(now, limit)).isZero();
+		assertThat(bucket.tryAcquire(now, limit)).isZero();
+		assertThat(bucket.retryAfter(now, limit)).isEqualTo(SECOND / 2); // Peeking takes nothing
+		assertThat(bucket.tryAcquire(now, limit)).isEqualTo(SECOND / 2);
+
+		assertThat(bucket.tryAcquire(now + SECOND / 2, limit)).isZero();
+		assertThat(bucket.tryAcquire(now + SECOND / 2, limit)).isPositive();
+	}
+
+	private User register(String prefix, String role) {
+		return userRepository.save(User.createNewUser(prefix + "-" + UUID.randomUUID(), passwordEncoder.encode("secret"), role));
+	}
+
+	private static RequestPostProcessor from(String remoteAddress) {
+		return request -> {
+			request.setRemoteAddr(remoteAddress);
+			return request;
+		};
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,150 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Routing over three separate embedded databases, each holding its own name in a one-row table, so every read
+// shows which instance served it
+class ReadReplicaRoutingTests {
+
+	private final DataSource primary = database("primary");
+	private final SwitchableDataSource replica1 = new SwitchableDataSource(database("replica-1"));
+	private final SwitchableDataSource replica2 = new SwitchableDataSource(database("replica-2"));
+	private final ReadYourWrites readYourWrites = new ReadYourWrites(List.of("replica-1", "replica-2"), Duration.ofMinutes(1));
+
+	private ReadReplicaDataSource readDataSource;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate readOnlyTransaction;
+	private TransactionTemplate readWriteTransaction;
+
+	@BeforeEach
+	void setUp() {
+		readDataSource = new ReadReplicaDataSource(primary, List.of(replica1, replica2), readYourWrites, Duration.ZERO);
+		LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+		routing.setReadOnlyDataSource(readDataSource);
+		jdbcTemplate = new JdbcTemplate(routing);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+		readWriteTransaction = new TransactionTemplate(transactionManager);
+	}
+
+	@AfterEach
+	void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void readOnlyTransactionsAlternateBetweenReplicas() {
+		List<String> served = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			served.add(readOnlyNode());
+		}
+
+		assertThat(served).containsOnly("replica-1", "replica-2");
+		assertThat(served.get(0)).isNotEqualTo(served.get(1));
+	}
+
+	@Test
+	void writesAndStatementsOutsideReadOnlyTransactionsUseThePrimary() {
+		String node = readWriteTransaction.execute(status -> currentNode());
+		assertThat(node).isEqualTo("primary");
+		assertThat(currentNode()).isEqualTo("primary");
+	}
+
+	@Test
+	void failedReplicaIsSkippedUntilAHealthCheckPasses() {
+		replica1.down = true;
+		assertThat(List.of(readOnlyNode(), readOnlyNode(), readOnlyNode())).containsOnly("replica-2");
+		assertThat(readDataSource.healthyReplicas()).isEqualTo(1);
+
+		replica1.down = false;
+		assertThat(List.of(readOnlyNode(), readOnlyNode())).containsOnly("replica-2");
+
+		readDataSource.checkHealth();
+		assertThat(readDataSource.healthyReplicas()).isEqualTo(2);
+		assertThat(List.of(readOnlyNode(), readOnlyNode())).contains("replica-1");
+	}
+
+	@Test
+	void readsFallBackToThePrimaryWithoutHealthyReplicas() {
+		replica1.down = true;
+		replica2.down = true;
+
+		assertThat(readOnlyNode()).isEqualTo("primary");
+		readDataSource.checkHealth();
+		assertThat(readDataSource.healthyReplicas()).isZero();
+	}
+
+	@Test
+	void writerAndTouchedProductsAreReadFromThePrimaryAfterAWrite() {
+		signIn(new User(7L, "farmer", "x", "ROLE_FARMER"));
+		readYourWrites.onEventsLogged(new EventsLoggedEvent(List.of(Event.createNewEvent(42L, "SHIPPED", null, "Dock 4", 7L, 2L))));
+
+		assertThat(readOnlyNode()).isEqualTo("primary");
+
+		signIn(new User(8L, "restaurant", "x", "ROLE_RESTAURANT"));
+		assertThat(readOnlyNode()).startsWith("replica-");
+		assertThat(readYourWrites.readProduct(42L, this::readOnlyNode)).isEqualTo("primary");
+		assertThat(readYourWrites.readProduct(43L, this::readOnlyNode)).startsWith("replica-");
+	}
+
+	private String readOnlyNode() {
+		return readOnlyTransaction.execute(status -> currentNode());
+	}
+
+	private String currentNode() {
+		return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+	}
+
+	private static void signIn(User user) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+	}
+
+	private static DataSource database(String name) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:read-replica-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(20))");
+		jdbcTemplate.update("DELETE FROM node");
+		jdbcTemplate.update("INSERT INTO node (name) VALUES (?)", name);
+		return dataSource;
+	}
+
+	// A replica that can be taken offline: getConnection fails while down is set
+	private static final class SwitchableDataSource extends DelegatingDataSource {
+		private volatile boolean down;
+
+		private SwitchableDataSource(DataSource target) {
+			super(target);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (down) {
+				throw new SQLTransientConnectionException("Replica is down.");
+			}
+			return super.getConnection();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class RecallControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void exposureFollowsProductsThroughSharedLocationsHopByHop() throws Exception {
+		String admin = "admin-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(admin, passwordEncoder.encode("secret"), "ROLE_ADMIN"));
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String suffix = UUID.randomUUID().toString();
+		String warehouse = "Warehouse " + suffix;
+		String depot = "Depot " + suffix;
+		String shop = "Shop " + suffix;
+
+		// contaminated -> depot -> carrier -> shop -> shopped; bystander never shares a location
+		Product contaminated = productService.createProduct("Spinach", "Farm", warehouse, farmer.getId());
+		eventService.logEvent(contaminated.getId(), "SHIPPED", null, depot, farmer.getId());
+		Product carrier = productService.createProduct("Lettuce", "Farm", depot, farmer.getId());
+		eventService.logEvent(carrier.getId(), "SHIPPED", null, shop, farmer.getId());
+		Product shopped = productService.createProduct("Kale", "Farm", shop, farmer.getId());
+		Product bystander = productService.createProduct("Chard", "Farm", "Field " + suffix, farmer.getId());
+
+		String window = "&from=" + LocalDateTime.now().minusHours(1) + "&to=" + LocalDateTime.now().plusHours(1);
+		Map<Long, JsonNode> exposures = exposures(admin, "/api/recalls/exposure?location=" + warehouse + window + "&hops=2");
+
+		assertThat(exposures).containsOnlyKeys(contaminated.getId(), carrier.getId(), shopped.getId());
+		assertThat(exposures.get(contaminated.getId()).get("hops").asInt()).isZero();
+		assertThat(exposures.get(carrier.getId()).get("hops").asInt()).isEqualTo(1);
+		assertThat(exposures.get(carrier.getId()).get("location").asText()).isEqualTo(depot);
+		assertThat(exposures.get(shopped.getId()).get("hops").asInt()).isEqualTo(2);
+		assertThat(exposures).doesNotContainKey(bystander.getId());
+
+		assertThat(exposures(admin, "/api/recalls/exposure?location=" + warehouse + window + "&hops=1"))
+				.containsOnlyKeys(contaminated.getId(), carrier.getId());
+		assertThat(exposures(admin, "/api/recalls/exposure?location=" + warehouse
+				+ "&from=" + LocalDateTime.now().plusHours(1) + "&to=" + LocalDateTime.now().plusHours(2))).isEmpty();
+	}
+
+	@Test
+	void recallsAreForAdminsAndValidateTheirParameters() throws Exception {
+		String admin = "admin-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(admin, passwordEncoder.encode("secret"), "ROLE_ADMIN"));
+		String farmer = "farmer-" + UUID.randomUUID();
+		userRepository.save(User.createNewUser(farmer, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String window = "&from=2026-01-01T00:00:00&to=2026-02-01T00:00:00";
+
+		mockMvc.perform(get("/api/recalls/exposure?location=Barn" + window).header(HttpHeaders.AUTHORIZATION, basic(farmer)))
+				.andExpect(status().isForbidden());
+		// Registration does not hand out ADMIN, so a self-made admin has no account at all
+		String selfMade = "admin-" + UUID.randomUUID();
+		mockMvc.perform(post("/api/register").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"username\": \"" + selfMade + "\", \"password\": \"secret\", \"role\": \"ADMIN\"}"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/api/recalls/exposure?location=Barn" + window).header(HttpHeaders.AUTHORIZATION, basic(selfMade)))
+				.andExpect(status().isUnauthorized());
+		mockMvc.perform(get("/api/recalls/exposure?location=Barn" + window + "&hops=99").header(HttpHeaders.AUTHORIZATION, basic(admin)))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/api/recalls/exposure?location=Barn&from=2026-02-01T00:00:00&to=2026-01-01T00:00:00")
+						.header(HttpHeaders.AUTHORIZATION, basic(admin)))
+				.andExpect(status().isBadRequest());
+	}
+
+	private Map<Long, JsonNode> exposures(String username, String url) throws Exception {
+		MvcResult started = mockMvc.perform(get(url).header(HttpHeaders.AUTHORIZATION, basic(username)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		Map<Long, JsonNode> byProduct = new HashMap<>();
+		for (String line : body.lines().toList()) {
+			JsonNode exposure = objectMapper.readTree(line);
+			assertThat(byProduct.put(exposure.get("productId").asLong(), exposure)).isNull(); // Each product once
+		}
+		return byProduct;
+	}
+
+	private static String basic(String username) {
+		return "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
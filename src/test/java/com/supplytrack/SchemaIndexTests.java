@@ -0,0 +1,96 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Guards the migration indexes: each hot repository query must be planned against its index
+@SpringBootTest
+@ActiveProfiles("test")
+class SchemaIndexTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void traceQueriesUseProductTimestampIndex() {
+		MapSqlParameterSource params = new MapSqlParameterSource().addValue("productId", 1L).addValue("limit", 50);
+		assertThat(explain(EventJdbcRepository.SELECT_TRACE, 1L)).contains("idx_events_product_timestamp: product_id =");
+		assertThat(explain(EventJdbcRepository.SELECT_TRACE_FIRST_PAGE, params)).contains("idx_events_product_timestamp: product_id =");
+		params.addValue("timestamp", Timestamp.valueOf("2026-01-01 00:00:00")).addValue("id", 10L);
+		assertThat(explain(EventJdbcRepository.SELECT_TRACE_PAGE_AFTER, params)).contains("idx_events_product_timestamp: product_id =");
+		assertThat(indexColumns("idx_events_product_timestamp")).containsExactly("product_id", "timestamp", "id");
+	}
+
+	@Test
+	void ownerStreamResumeUsesActorIndex() {
+		MapSqlParameterSource params = new MapSqlParameterSource()
+				.addValue("actorUserId", 1L).addValue("id", 10L).addValue("limit", 50);
+		assertThat(explain(EventJdbcRepository.SELECT_ACTOR_EVENTS_AFTER_ID, params)).contains("idx_events_actor_id");
+	}
+
+	@Test
+	void recallRangeScansUseLocationIndexes() {
+		String plan = explain("SELECT product_id, MIN(timestamp) FROM events WHERE location_id = 1 "
+				+ "AND timestamp >= TIMESTAMP '2026-01-01 00:00:00' AND timestamp < TIMESTAMP '2026-02-01 00:00:00' GROUP BY product_id");
+		assertThat(plan).contains("idx_events_location_timestamp");
+		plan = explain("SELECT product_id, first_seen FROM product_visits WHERE location = 'Depot' AND last_seen >= TIMESTAMP '2026-01-01 00:00:00'");
+		assertThat(plan).contains("idx_product_visits_location_last_seen");
+	}
+
+	@Test
+	void statusAndLocationIndexesAreOnDictionaryIds() {
+		assertThat(indexColumns("idx_events_location_timestamp")).containsExactly("location_id", "timestamp", "product_id");
+		assertThat(indexColumns("idx_products_owner_status_created")).containsExactly("owner_user_id", "current_status_id", "created_date", "id");
+		assertThat(indexColumns("idx_products_owner_location_created")).containsExactly("owner_user_id", "current_location_id", "created_date", "id");
+	}
+
+	@Test
+	void ownerProductListUsesOwnerIndex() {
+		String plan = explain(ProductJdbcRepository.SELECT_BY_OWNER, new MapSqlParameterSource("ownerUserId", 1L));
+		assertThat(plan).contains("idx_products_owner_created: owner_user_id =");
+	}
+
+	@Test
+	void ownerListVersionReadsOnlyTheOwnersStripes() {
+		String plan = explain(ProductJdbcRepository.SELECT_LIST_VERSION, new MapSqlParameterSource("id", 1L));
+		assertThat(plan).containsPattern("PRIMARY_KEY_\\w+: owner_user_id =");
+	}
+
+	@Test
+	void findByUsernameUsesUniqueUsernameIndex() {
+		String plan = explain("SELECT * FROM users WHERE username = 'farmer1'");
+		assertThat(plan).contains("ux_users_username");
+	}
+
+	@Test
+	void usernameIsUnique() {
+		Integer unique = jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM information_schema.indexes WHERE index_name = 'ux_users_username' AND index_type_name = 'UNIQUE INDEX'",
+				Integer.class);
+		assertThat(unique).isEqualTo(1);
+	}
+
+	private List<String> indexColumns(String indexName) {
+		return jdbcTemplate.queryForList(
+				"SELECT column_name FROM information_schema.index_columns WHERE index_name = ? ORDER BY ordinal_position",
+				String.class, indexName);
+	}
+
+	private String explain(String sql, Object... args) {
+		return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, args));
+	}
+
+	private String explain(String sql, MapSqlParameterSource params) {
+		return String.join("\n", new NamedParameterJdbcTemplate(jdbcTemplate).queryForList("EXPLAIN " + sql, params, String.class));
+	}
+}
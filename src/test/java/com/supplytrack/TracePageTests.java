@@ -0,0 +1,130 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class TracePageTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void nextCursorWalksTheWholeHistoryOnceInOrder() throws Exception {
+		User farmer = register();
+		long crate = productWithEvents(farmer, 1200);
+
+		List<Long> seqs = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			MockHttpServletRequestBuilder request = get("/api/products/" + crate + "/trace").param("limit", "500")
+					.header(HttpHeaders.AUTHORIZATION, basic(farmer));
+			if (cursor != null) {
+				request.param("cursor", cursor);
+			}
+			JsonNode page = trace(request, status().isOk());
+			assertThat(page.get("product").get("id").asLong()).isEqualTo(crate);
+			assertThat(page.get("eventHistory").size()).isLessThanOrEqualTo(500);
+			page.get("eventHistory").forEach(event -> seqs.add(event.get("seq").asLong()));
+			cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+			assertThat(++pages).isLessThan(10);
+		} while (cursor != null);
+
+		// Events of one batch share a timestamp, so the id tie-break is what keeps the pages apart
+		assertThat(pages).isEqualTo(3);
+		assertThat(seqs).containsExactlyElementsOf(LongStream.rangeClosed(1, 1200).boxed().toList());
+	}
+
+	@Test
+	void limitIsClampedToTheMaximumPageSize() throws Exception {
+		User farmer = register();
+		long crate = productWithEvents(farmer, 1200);
+
+		JsonNode page = trace(get("/api/products/" + crate + "/trace").param("limit", "5000")
+				.header(HttpHeaders.AUTHORIZATION, basic(farmer)), status().isOk());
+
+		assertThat(page.get("eventHistory")).hasSize(1000);
+		assertThat(page.get("nextCursor").isNull()).isFalse();
+	}
+
+	@Test
+	void malformedCursorAndNonPositiveLimitAre400() throws Exception {
+		User farmer = register();
+		long crate = productWithEvents(farmer, 3);
+
+		assertThat(trace(get("/api/products/" + crate + "/trace").param("cursor", "not-a-cursor")
+				.header(HttpHeaders.AUTHORIZATION, basic(farmer)), status().isBadRequest())
+				.get("message").asText()).contains("Invalid cursor");
+		assertThat(trace(get("/api/products/" + crate + "/trace").param("limit", "0")
+				.header(HttpHeaders.AUTHORIZATION, basic(farmer)), status().isBadRequest())
+				.get("message").asText()).isEqualTo("limit must be positive.");
+		assertThat(trace(get("/api/products/" + crate + "/trace").param("limit", "-1")
+				.header(HttpHeaders.AUTHORIZATION, basic(farmer)), status().isBadRequest())
+				.get("message").asText()).isEqualTo("limit must be positive.");
+	}
+
+	// A product with the given number of events in its history, the HARVESTED one included
+	private long productWithEvents(User farmer, int events) {
+		long crate = productService.createProduct("Crate", "Orchard", "Barn", farmer.getId()).getId();
+		List<EventService.BatchEvent> moves = new ArrayList<>();
+		for (int i = 1; i < events; i++) {
+			moves.add(new EventService.BatchEvent(crate, "MOVED", null, "Bay " + (i % 50), farmer.getId(), null));
+		}
+		eventService.logEvents(moves);
+		return crate;
+	}
+
+	private JsonNode trace(MockHttpServletRequestBuilder request, ResultMatcher expectedStatus) throws Exception {
+		String body = mockMvc.perform(request)
+				.andExpect(expectedStatus)
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		return objectMapper.readTree(body);
+	}
+
+	private User register() {
+		return userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), passwordEncoder.encode("secret"), "ROLE_FARMER"));
+	}
+
+	private static String basic(User user) {
+		return "Basic " + Base64.getEncoder().encodeToString((user.getUsername() + ":secret").getBytes(StandardCharsets.UTF_8));
+	}
+}
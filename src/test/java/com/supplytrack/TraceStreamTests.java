@@ -0,0 +1,65 @@
+package com.supplytrack;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class TraceStreamTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void streamWritesOneEventPerLineAndUnknownProductIs404() throws Exception {
+		String username = "farmer-" + UUID.randomUUID();
+		User farmer = userRepository.save(User.createNewUser(username, passwordEncoder.encode("secret"), "ROLE_FARMER"));
+		String auth = "Basic " + Base64.getEncoder().encodeToString((username + ":secret").getBytes(StandardCharsets.UTF_8));
+		Product product = productService.createProduct("Apricots", "Orchard", "Barn", farmer.getId());
+		eventService.logEvent(product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+
+		MvcResult started = mockMvc.perform(get("/api/products/" + product.getId() + "/trace/stream").header(HttpHeaders.AUTHORIZATION, auth))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		assertThat(body.lines()).hasSize(2);
+		assertThat(body.lines().toList().get(1)).contains("\"eventType\":\"SHIPPED\"").contains("\"seq\":2");
+
+		MvcResult missing = mockMvc.perform(get("/api/products/0/trace/stream").header(HttpHeaders.AUTHORIZATION, auth))
+				.andReturn();
+		assertThat(mockMvc.perform(asyncDispatch(missing)).andExpect(status().isNotFound())
+				.andReturn().getResponse().getContentAsString()).contains("not found");
+	}
+}
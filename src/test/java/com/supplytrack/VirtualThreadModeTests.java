@@ -0,0 +1,72 @@
+package com.supplytrack;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "spring.threads.virtual.enabled=true")
+@ActiveProfiles("test")
+class VirtualThreadModeTests {
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${spring.datasource.url}")
+	private String url;
+
+	@Test
+	void dataSourceIsGuardedAndStillServesQueries() {
+		assertThat(dataSource).isInstanceOf(JdbcAdmissionGuard.class);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products", Long.class)).isNotNull();
+	}
+
+	@Test
+	void guardRejectsWhenNoWaitingSlotIsFree() {
+		JdbcAdmissionGuard full = new JdbcAdmissionGuard(dataSource, 0);
+		assertThatThrownBy(full::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+	}
+
+	@Test
+	void withReplicasThePoolsAreGuardedRatherThanTheRoutingProxy() throws Exception {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("spring.threads.virtual.enabled", "true")
+				.withProperty("supplytrack.jdbc.max-waiting", "0");
+		DataSourceProperties properties = new DataSourceProperties();
+		properties.setUrl(url);
+		properties.setUsername("sa");
+		properties.afterPropertiesSet();
+		ReadReplicaConfig config = new ReadReplicaConfig();
+		try {
+			DataSource routing = config.dataSource(properties, new ReadYourWrites(List.of(), Duration.ZERO),
+					new SimpleMeterRegistry(), environment, List.of(url), 2, Duration.ZERO);
+
+			assertThat(VirtualThreadConfig.jdbcAdmissionGuardPostProcessor(environment)
+					.postProcessAfterInitialization(routing, "dataSource")).isSameAs(routing);
+			assertThat(((LazyConnectionDataSourceProxy) routing).getTargetDataSource()).isInstanceOf(JdbcAdmissionGuard.class);
+			// No waiting slot on any pool, so the statement fails where the proxy takes its connection
+			assertThatThrownBy(() -> new JdbcTemplate(routing).queryForObject("SELECT 1", Integer.class))
+					.isInstanceOf(TransientDataAccessResourceException.class);
+		} finally {
+			config.closePools();
+		}
+	}
+}
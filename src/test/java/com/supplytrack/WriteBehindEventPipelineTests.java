@@ -0,0 +1,102 @@
+package com.supplytrack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class WriteBehindEventPipelineTests {
+
+	@Autowired
+	private IdempotentEventService idempotentEventService;
+
+	@Autowired
+	private EventService eventService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void spooledEventsAreReplayedOnceAndAcceptedEventsKeepTheirOrder() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Plums", "Orchard", "Barn", farmer.getId());
+		Path spoolFile = tempDir.resolve("spool.ndjson");
+
+		// Left behind by a "crashed" run: one entry was already committed before the crash, one was not
+		WriteBehindEventPipeline.SpooledEvent committed = new WriteBehindEventPipeline.SpooledEvent(
+				"t-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId(), "t-1");
+		WriteBehindEventPipeline.SpooledEvent uncommitted = new WriteBehindEventPipeline.SpooledEvent(
+				"t-2", product.getId(), "RECEIVED", null, "Depot", farmer.getId(), "t-2");
+		idempotentEventService.logEvent("t-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId());
+		try (EventSpool spool = new EventSpool(spoolFile, objectMapper)) {
+			spool.awaitDurable(spool.append(committed));
+			spool.awaitDurable(spool.append(uncommitted));
+		}
+
+		WriteBehindEventPipeline pipeline = new WriteBehindEventPipeline(idempotentEventService, objectMapper,
+				new SimpleMeterRegistry(), spoolFile, 100, 10, Duration.ofMinutes(5));
+		pipeline.start();
+		String ticket = null;
+		for (int i = 0; i < 20; i++) {
+			ticket = pipeline.accept(product.getId(), "SCANNED", "scan " + i, "Shelf " + i, farmer.getId(), null);
+		}
+		pipeline.stop();
+
+		assertThat(pipeline.getResult(ticket).orElseThrow().getStatus()).isEqualTo(EventService.BatchEventResult.CREATED);
+		List<Event> history = eventService.getEventsForProduct(product.getId());
+		assertThat(history).hasSize(1 + 2 + 20);
+		assertThat(history).extracting(Event::getSeq).isSorted();
+		assertThat(history.get(2).getLocation()).isEqualTo("Depot");
+		assertThat(history.get(history.size() - 1).getLocation()).isEqualTo("Shelf 19");
+		assertThat(Files.size(spoolFile)).isZero();
+	}
+
+	@Test
+	void corruptSpoolLinesAreCountedAndKeptAsideWhileTheRestIsReplayed() throws Exception {
+		User farmer = userRepository.save(User.createNewUser("farmer-" + UUID.randomUUID(), "x", "ROLE_FARMER"));
+		Product product = productService.createProduct("Damsons", "Orchard", "Barn", farmer.getId());
+		Path spoolFile = tempDir.resolve("spool.ndjson");
+
+		String first = objectMapper.writeValueAsString(new WriteBehindEventPipeline.SpooledEvent(
+				"c-1", product.getId(), "SHIPPED", null, "Truck", farmer.getId(), "c-1"));
+		String second = objectMapper.writeValueAsString(new WriteBehindEventPipeline.SpooledEvent(
+				"c-2", product.getId(), "RECEIVED", null, "Depot", farmer.getId(), "c-2"));
+		// A damaged line in the middle, and a last append that was cut off by the crash
+		Files.writeString(spoolFile, first + "\n{\"ticket\":\"c-x\",\u0000garbage\n" + second + "\n{\"ticket\":\"c-3\",\"prod",
+				StandardCharsets.UTF_8);
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		WriteBehindEventPipeline pipeline = new WriteBehindEventPipeline(idempotentEventService, objectMapper,
+				meterRegistry, spoolFile, 100, 10, Duration.ofMinutes(5));
+		pipeline.start();
+		pipeline.stop();
+
+		assertThat(meterRegistry.get("supplytrack.ingest.spool.corrupt").counter().count()).isEqualTo(1);
+		assertThat(Files.readString(tempDir.resolve("spool.ndjson.corrupt"))).contains("garbage").doesNotContain("c-3");
+		assertThat(eventService.getEventsForProduct(product.getId())).extracting(Event::getLocation)
+				.containsExactly("Barn", "Truck", "Depot");
+	}
+}